@@ -1,7 +1,12 @@
 package com.github.youtubeify;
 
+import com.github.youtubeify.auth.SpotifyAuthManager;
+import com.github.youtubeify.auth.YouTubeAuthManager;
+import com.github.youtubeify.cache.MirrorMappingStore;
 import com.github.youtubeify.source.SpotifySourceManager;
 import com.github.youtubeify.source.YouTubeSourceManager;
+import com.github.youtubeify.util.HttpTransport;
+import com.github.youtubeify.util.ResolutionEngine;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import dev.arbjerg.lavalink.api.AudioPlayerManagerConfiguration;
 import dev.arbjerg.lavalink.api.IPlugin;
@@ -11,6 +16,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main plugin class for YouTubeify.
@@ -26,9 +32,33 @@ public class YouTubeifyPlugin implements IPlugin, AudioPlayerManagerConfiguratio
     private final SpotifySourceManager spotifySourceManager;
 
     public YouTubeifyPlugin() {
-        this.youtubeSourceManager = new YouTubeSourceManager();
-        this.spotifySourceManager = new SpotifySourceManager();
-        log.info("YouTubeify plugin initialized");
+        this(HttpTransport.fromEnvironment(), ResolutionEngine.fromEnvironment(), MirrorMappingStore.fromEnvironment());
+    }
+
+    /**
+     * Build the component graph around the given shared components.
+     *
+     * @param transport Shared HTTP transport
+     * @param resolutionEngine Engine that resolves Spotify tracks to YouTube
+     * @param mappingStore Store of resolved Spotify to YouTube matches
+     */
+    YouTubeifyPlugin(HttpTransport transport, ResolutionEngine resolutionEngine, MirrorMappingStore mappingStore) {
+        long startTime = System.nanoTime();
+        
+        // Every component exists once and is shared; no network calls are made until the first load
+        YouTubeAuthManager youtubeAuthManager = new YouTubeAuthManager(transport);
+        SpotifyAuthManager spotifyAuthManager = new SpotifyAuthManager(transport);
+        
+        this.youtubeSourceManager = new YouTubeSourceManager(transport, youtubeAuthManager);
+        this.spotifySourceManager = new SpotifySourceManager(
+                transport,
+                spotifyAuthManager,
+                youtubeSourceManager,
+                resolutionEngine,
+                mappingStore
+        );
+        
+        log.info("YouTubeify plugin initialized in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
     }
 
     @Override
@@ -0,0 +1,135 @@
+package com.github.youtubeify.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Chooses the format a video is played in from the formats of its player response.
+ *
+ * Audio-only formats are ranked by codec first, Opus before anything else since it is played without
+ * transcoding, then by how well their bitrate fits the quality tier: the highest bitrate within the tier,
+ * or the lowest one above it if none fits. Muxed formats, whose video is downloaded only to be thrown away,
+ * are used only when a video has no audio-only format, the one with the lowest bitrate first.
+ *
+ * A format chosen earlier, such as one recorded in an encoded track, is kept as long as the video still has
+ * it and it is of the same kind as the format the policy would choose.
+ */
+public class AudioFormatPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(AudioFormatPolicy.class);
+
+    /**
+     * Target quality of the selected audio.
+     */
+    public enum Tier {
+        /** Around 50 to 70 kbps, for deployments that play many tracks at once */
+        LOW(72_000),
+        /** Up to about 160 kbps, the best YouTube offers for most videos */
+        STANDARD(170_000),
+        /** Highest bitrate available */
+        HIGH(Long.MAX_VALUE);
+
+        private final long maxBitrate;
+
+        Tier(long maxBitrate) {
+            this.maxBitrate = maxBitrate;
+        }
+
+        /**
+         * @return Highest bitrate in bits per second that fits the tier
+         */
+        public long getMaxBitrate() {
+            return maxBitrate;
+        }
+
+        /**
+         * @param name Tier name, case-insensitive
+         * @param defaultTier Tier to use when the name is unknown
+         * @return Tier with the given name or the default
+         */
+        public static Tier fromName(String name, Tier defaultTier) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                log.warn("Unknown audio quality tier {}, using {}", name, defaultTier.name().toLowerCase(Locale.ROOT));
+                return defaultTier;
+            }
+        }
+    }
+
+    private final Tier tier;
+
+    /**
+     * @param tier Target quality of the selected audio
+     */
+    public AudioFormatPolicy(Tier tier) {
+        this.tier = tier;
+    }
+
+    /**
+     * @return Target quality of the selected audio
+     */
+    public Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Select the format to play.
+     *
+     * @param adaptiveFormats Adaptive formats of the player response
+     * @param muxedFormats Muxed formats of the player response
+     * @param preferredItag Format chosen earlier that should be kept if possible, 0 if none
+     * @return Selected format, or null if the video has no playable format
+     */
+    public StreamFormat select(List<StreamFormat> adaptiveFormats, List<StreamFormat> muxedFormats, int preferredItag) {
+        StreamFormat best = null;
+
+        for (StreamFormat format : adaptiveFormats) {
+            if (!format.isAudioOnly()) {
+                continue;
+            } else if (format.getItag() == preferredItag) {
+                return format;
+            } else if (best == null || compareAudio(format, best) < 0) {
+                best = format;
+            }
+        }
+
+        if (best != null) {
+            return best;
+        }
+
+        for (StreamFormat format : muxedFormats) {
+            if (format.getItag() == preferredItag) {
+                return format;
+            } else if (best == null || format.getBitrate() < best.getBitrate()) {
+                best = format;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @return Negative if the first format is preferred over the second
+     */
+    private int compareAudio(StreamFormat first, StreamFormat second) {
+        if (first.isOpus() != second.isOpus()) {
+            return first.isOpus() ? -1 : 1;
+        }
+
+        boolean firstFits = first.getBitrate() <= tier.getMaxBitrate();
+        boolean secondFits = second.getBitrate() <= tier.getMaxBitrate();
+
+        if (firstFits != secondFits) {
+            return firstFits ? -1 : 1;
+        }
+
+        // Within the tier more is better, above it the closest to the tier is
+        return firstFits
+                ? Long.compare(second.getBitrate(), first.getBitrate())
+                : Long.compare(first.getBitrate(), second.getBitrate());
+    }
+}
@@ -0,0 +1,527 @@
+package com.github.youtubeify.auth;
+
+import com.github.youtubeify.util.HttpUtils;
+import com.github.youtubeify.util.json.JsonReader;
+import com.github.youtubeify.util.json.JsonToken;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming extraction of the few fields the plugin needs from InnerTube responses.
+ *
+ * Player, search and browse responses are hundreds of kilobytes of JSON of which only the video details,
+ * the stream formats and the video renderers are used. These are read straight from the response stream
+ * into small typed objects; everything else is skipped without being materialized, and a player response
+ * is not read any further once both of its wanted sections were seen.
+ */
+final class InnertubeParser {
+
+    private static final String[] PLAYER_FIELDS = {"videoDetails", "streamingData"};
+    private static final String[] VIDEO_DETAILS_FIELDS = {"videoId", "title", "author", "lengthSeconds"};
+    private static final String[] STREAMING_DATA_FIELDS = {"formats", "adaptiveFormats"};
+    private static final String[] FORMAT_FIELDS = {"itag", "url", "mimeType", "bitrate", "contentLength", "approxDurationMs"};
+    private static final String[] RENDERER_FIELDS = {"videoId", "title", "ownerText", "shortBylineText", "lengthText"};
+    private static final String[] TEXT_FIELDS = {"simpleText", "runs"};
+    private static final String[] BROWSE_FIELDS = {"header", "contents", "onResponseReceivedActions"};
+    private static final String[] PLAYLIST_ITEM_FIELDS = {"playlistVideoRenderer", "continuationItemRenderer"};
+
+    private static final Object[] SEARCH_CONTENTS_PATH = {
+            "twoColumnSearchResultsRenderer", "primaryContents", "sectionListRenderer", "contents", 0,
+            "itemSectionRenderer", "contents"
+    };
+    private static final Object[] BROWSE_CONTENTS_PATH = {
+            "twoColumnBrowseResultsRenderer", "tabs", 0, "tabRenderer", "content", "sectionListRenderer", "contents", 0,
+            "itemSectionRenderer", "contents", 0, "playlistVideoListRenderer", "contents"
+    };
+    private static final Object[] BROWSE_TITLE_PATH = {"playlistHeaderRenderer", "title"};
+    private static final Object[] CONTINUATION_TOKEN_PATH = {"continuationEndpoint", "continuationCommand", "token"};
+
+    private InnertubeParser() {
+    }
+
+    /**
+     * Read the video details and stream formats of a player response.
+     *
+     * @param body Response body
+     * @return Player response
+     * @throws IOException if the body is not valid JSON
+     */
+    static PlayerResponse parsePlayer(InputStream body) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        Video video = null;
+        List<StreamFormat> formats = Collections.emptyList();
+        List<StreamFormat> adaptiveFormats = Collections.emptyList();
+        boolean streamingDataSeen = false;
+
+        reader.beginObject();
+
+        while ((video == null || !streamingDataSeen) && reader.hasNext()) {
+            int field = reader.selectName(PLAYER_FIELDS);
+
+            if (field == 0 && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                video = readVideoDetails(reader);
+            } else if (field == 1 && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                streamingDataSeen = true;
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+                    int list = reader.selectName(STREAMING_DATA_FIELDS);
+
+                    if (list == 0) {
+                        formats = readFormats(reader);
+                    } else if (list == 1) {
+                        adaptiveFormats = readFormats(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        return new PlayerResponse(video, formats, adaptiveFormats);
+    }
+
+    /**
+     * Read the video results of a search response.
+     *
+     * @param body Response body
+     * @return Videos in the order of the results
+     * @throws IOException if the body is not valid JSON
+     */
+    static List<Video> parseSearch(InputStream body) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        List<Video> videos = new ArrayList<>();
+
+        reader.beginObject();
+
+        if (reader.seekName("contents") && descend(reader, SEARCH_CONTENTS_PATH) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    int depth = reader.getDepth();
+                    reader.beginObject();
+
+                    if (reader.seekName("videoRenderer")) {
+                        addIfPresent(videos, readVideoRenderer(reader));
+                    }
+
+                    reader.exitTo(depth);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+
+        return videos;
+    }
+
+    /**
+     * Read a page of a playlist, either the first page of a browse response or the page of a continuation
+     * response.
+     *
+     * @param body Response body
+     * @return Playlist page
+     * @throws IOException if the body is not valid JSON
+     */
+    static BrowsePage parseBrowse(InputStream body) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        BrowsePage page = new BrowsePage();
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            int field = reader.selectName(BROWSE_FIELDS);
+
+            if (field == 0) {
+                if (descend(reader, BROWSE_TITLE_PATH)) {
+                    page.title = readText(reader);
+                }
+            } else if (field == 1) {
+                if (descend(reader, BROWSE_CONTENTS_PATH)) {
+                    readPlaylistItems(reader, page);
+                }
+            } else if (field == 2 && page.videos == null && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+
+                while (page.videos == null && reader.hasNext()) {
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        int depth = reader.getDepth();
+                        reader.beginObject();
+
+                        if (reader.seekName("appendContinuationItemsAction") && descend(reader, "continuationItems")) {
+                            readPlaylistItems(reader, page);
+                        }
+
+                        reader.exitTo(depth);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            } else {
+                reader.skipValue();
+            }
+
+            // Back to the members of the response object, whatever was left unread on the way
+            reader.exitTo(1);
+        }
+
+        return page;
+    }
+
+    private static Video readVideoDetails(JsonReader reader) throws IOException {
+        String videoId = null;
+        String title = null;
+        String author = null;
+        long lengthSeconds = 0;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            switch (reader.selectName(VIDEO_DETAILS_FIELDS)) {
+                case 0:
+                    videoId = reader.nextString();
+                    break;
+                case 1:
+                    title = reader.nextString();
+                    break;
+                case 2:
+                    author = reader.nextString();
+                    break;
+                case 3:
+                    lengthSeconds = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if (videoId == null || title == null || author == null) {
+            throw new IOException("Player response has incomplete video details");
+        }
+
+        return new Video(videoId, title, author, lengthSeconds);
+    }
+
+    private static List<StreamFormat> readFormats(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return Collections.emptyList();
+        }
+
+        List<StreamFormat> formats = new ArrayList<>();
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            int itag = 0;
+            String url = null;
+            String mimeType = null;
+            long bitrate = 0;
+            long contentLength = 0;
+            long approxDurationMs = 0;
+
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                switch (reader.selectName(FORMAT_FIELDS)) {
+                    case 0:
+                        itag = reader.nextInt();
+                        break;
+                    case 1:
+                        url = reader.nextString();
+                        break;
+                    case 2:
+                        mimeType = reader.nextString();
+                        break;
+                    case 3:
+                        bitrate = reader.nextLong();
+                        break;
+                    case 4:
+                        contentLength = reader.nextLong();
+                        break;
+                    case 5:
+                        approxDurationMs = reader.nextLong();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+
+            // Formats with a ciphered signature instead of a URL can not be played directly
+            if (url != null && mimeType != null) {
+                formats.add(new StreamFormat(itag, url, mimeType, bitrate, contentLength, approxDurationMs));
+            }
+        }
+
+        reader.endArray();
+        return formats;
+    }
+
+    private static void readPlaylistItems(JsonReader reader, BrowsePage page) throws IOException {
+        page.videos = new ArrayList<>();
+
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            return;
+        }
+
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            int depth = reader.getDepth();
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                int field = reader.selectName(PLAYLIST_ITEM_FIELDS);
+
+                if (field == 0) {
+                    addIfPresent(page.videos, readVideoRenderer(reader));
+                } else if (field == 1) {
+                    int itemDepth = reader.getDepth();
+
+                    if (descend(reader, CONTINUATION_TOKEN_PATH)) {
+                        page.continuation = reader.nextString();
+                    }
+
+                    reader.exitTo(itemDepth);
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.exitTo(depth);
+        }
+
+        reader.endArray();
+    }
+
+    /**
+     * Read a video or playlist video renderer.
+     *
+     * @return Video, or null if the renderer has no video ID
+     */
+    private static Video readVideoRenderer(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String videoId = null;
+        String title = null;
+        String ownerText = null;
+        String bylineText = null;
+        String lengthText = null;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            switch (reader.selectName(RENDERER_FIELDS)) {
+                case 0:
+                    videoId = reader.nextString();
+                    break;
+                case 1:
+                    title = readText(reader);
+                    break;
+                case 2:
+                    ownerText = readText(reader);
+                    break;
+                case 3:
+                    bylineText = readText(reader);
+                    break;
+                case 4:
+                    lengthText = readText(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if (videoId == null) {
+            return null;
+        }
+
+        String author = ownerText != null ? ownerText : bylineText;
+        long lengthSeconds = 0;
+
+        try {
+            // Livestreams have no length
+            lengthSeconds = lengthText != null ? HttpUtils.timeTextToSeconds(lengthText) : 0;
+        } catch (NumberFormatException ignored) {
+            // Unusual length text, treat the length as unknown
+        }
+
+        return new Video(videoId, title != null ? title : "Unknown", author != null ? author : "Unknown", lengthSeconds);
+    }
+
+    /**
+     * Read a text object, which holds either a simple text or a list of runs.
+     *
+     * @return Simple text, or the text of the first run, or null if there is neither
+     */
+    private static String readText(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String simpleText = null;
+        String runText = null;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            int field = reader.selectName(TEXT_FIELDS);
+
+            if (field == 0) {
+                simpleText = reader.nextString();
+            } else if (field == 1 && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                int depth = reader.getDepth();
+                reader.beginArray();
+
+                if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+
+                    if (reader.seekName("text")) {
+                        runText = reader.nextString();
+                    }
+                }
+
+                reader.exitTo(depth);
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+        return simpleText != null ? simpleText : runText;
+    }
+
+    /**
+     * Descend from the current value along a path of member names and array indexes.
+     *
+     * @param path Member names and array indexes
+     * @return True if the reader is positioned at the value at the end of the path, false if the path
+     * does not exist, in which case the reader is left somewhere inside the current value
+     */
+    private static boolean descend(JsonReader reader, Object... path) throws IOException {
+        for (Object step : path) {
+            if (step instanceof String) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    return false;
+                }
+
+                reader.beginObject();
+
+                if (!reader.seekName((String) step)) {
+                    return false;
+                }
+            } else {
+                if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    return false;
+                }
+
+                reader.beginArray();
+
+                for (int i = (Integer) step; i > 0 && reader.hasNext(); i--) {
+                    reader.skipValue();
+                }
+
+                if (!reader.hasNext()) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static void addIfPresent(List<Video> videos, Video video) {
+        if (video != null) {
+            videos.add(video);
+        }
+    }
+
+    /**
+     * Basic details of a video.
+     */
+    static class Video {
+
+        final String videoId;
+        final String title;
+        final String author;
+        final long lengthSeconds;
+
+        Video(String videoId, String title, String author, long lengthSeconds) {
+            this.videoId = videoId;
+            this.title = title;
+            this.author = author;
+            this.lengthSeconds = lengthSeconds;
+        }
+
+        /**
+         * @return Video details in the standardized format of the auth manager
+         */
+        JSONObject toJson() {
+            JSONObject result = new JSONObject();
+            result.put("videoId", videoId);
+            result.put("title", title);
+            result.put("author", author);
+            result.put("lengthSeconds", lengthSeconds);
+            return result;
+        }
+    }
+
+    /**
+     * The parts of a player response the plugin uses.
+     */
+    static class PlayerResponse {
+
+        /** Video details, null if the response has none */
+        final Video video;
+        final List<StreamFormat> formats;
+        final List<StreamFormat> adaptiveFormats;
+
+        PlayerResponse(Video video, List<StreamFormat> formats, List<StreamFormat> adaptiveFormats) {
+            this.video = video;
+            this.formats = formats;
+            this.adaptiveFormats = adaptiveFormats;
+        }
+    }
+
+    /**
+     * A page of playlist videos.
+     */
+    static class BrowsePage {
+
+        /** Playlist title, null if the response has no header */
+        String title;
+        /** Videos of the page, null if the response has no list of playlist items */
+        List<Video> videos;
+        /** Token of the next page, null on the last page */
+        String continuation;
+    }
+}
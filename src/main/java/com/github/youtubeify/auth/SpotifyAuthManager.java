@@ -1,12 +1,13 @@
 package com.github.youtubeify.auth;
 
+import com.github.youtubeify.util.AsyncLimiter;
+import com.github.youtubeify.util.ConfigUtils;
+import com.github.youtubeify.util.HttpTransport;
 import com.github.youtubeify.util.HttpUtils;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -14,7 +15,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -26,23 +33,34 @@ public class SpotifyAuthManager {
 
     private static final String TOKEN_URL = "https://accounts.spotify.com/api/token";
     private static final String API_BASE_URL = "https://api.spotify.com/v1";
+    private static final int MAX_TRACKS_PER_REQUEST = 50;
+    private static final int MAX_ALBUMS_PER_REQUEST = 20;
+    private static final int MAX_ARTISTS_PER_REQUEST = 50;
+    private static final int DEFAULT_BATCH_PARALLELISM = 4;
     
-    private String accessToken;
-    private long tokenExpiry;
+    private volatile String accessToken;
+    private volatile long tokenExpiry;
     
     private final String clientId;
     private final String clientSecret;
-    private final CloseableHttpClient httpClient;
+    private final HttpTransport transport;
+    private final AsyncLimiter batchLimiter;
 
-    public SpotifyAuthManager() {
+    /**
+     * @param transport Shared HTTP transport used for all API calls
+     */
+    public SpotifyAuthManager(HttpTransport transport) {
         this.clientId = System.getenv("SPOTIFY_CLIENT_ID");
         this.clientSecret = System.getenv("SPOTIFY_CLIENT_SECRET");
-        this.httpClient = HttpClients.createDefault();
+        this.transport = transport;
+        this.batchLimiter = new AsyncLimiter(
+                ConfigUtils.getInt("YOUTUBEIFY_SPOTIFY_BATCH_PARALLELISM", DEFAULT_BATCH_PARALLELISM),
+                transport.getBlockingExecutor()
+        );
         
+        // The access token is requested with the first API call rather than at startup
         if (clientId == null || clientSecret == null) {
             log.warn("Spotify client credentials not found in environment variables");
-        } else {
-            authenticate();
         }
     }
 
@@ -67,7 +85,7 @@ public class SpotifyAuthManager {
             request.addHeader("Content-Type", "application/x-www-form-urlencoded");
             request.setEntity(new StringEntity("grant_type=client_credentials"));
             
-            try (CloseableHttpResponse response = httpClient.execute(request)) {
+            try (CloseableHttpResponse response = transport.execute(request)) {
                 String responseBody = EntityUtils.toString(response.getEntity());
                 
                 if (response.getStatusLine().getStatusCode() == 200) {
@@ -92,7 +110,7 @@ public class SpotifyAuthManager {
     /**
      * Check if the current token is valid, refresh if needed.
      */
-    private void ensureValidToken() {
+    private synchronized void ensureValidToken() {
         if (accessToken == null || System.currentTimeMillis() >= tokenExpiry) {
             log.info("Refreshing Spotify access token");
             authenticate();
@@ -107,26 +125,39 @@ public class SpotifyAuthManager {
      * @throws IOException if an error occurs during the API call
      */
     public JSONObject getTrack(String trackId) throws IOException {
-        ensureValidToken();
-        
-        if (accessToken == null) {
-            log.error("Cannot get track: no valid Spotify access token");
-            return null;
-        }
-        
-        HttpGet request = new HttpGet(API_BASE_URL + "/tracks/" + trackId);
-        request.addHeader("Authorization", "Bearer " + accessToken);
-        
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                return new JSONObject(responseBody);
-            } else {
-                log.error("Failed to get Spotify track {}: {}", trackId, responseBody);
-                return null;
-            }
-        }
+        return getApiObject("/tracks/" + trackId, "track " + trackId);
+    }
+
+    /**
+     * Get track information from Spotify API, without blocking.
+     *
+     * @param trackId Spotify track ID
+     * @return Future of the track information, completed with null if it could not be fetched
+     */
+    public CompletableFuture<JSONObject> getTrackAsync(String trackId) {
+        return getApiObjectAsync("/tracks/" + trackId, "track " + trackId);
+    }
+
+    /**
+     * Get information about several tracks from Spotify API. The IDs are requested in batches of 50,
+     * which are sent in parallel.
+     *
+     * @param trackIds Spotify track IDs
+     * @return Track information in the order of the IDs, with null for tracks that could not be fetched
+     * @throws IOException if an error occurs during the API calls
+     */
+    public List<JSONObject> getTracks(List<String> trackIds) throws IOException {
+        return getApiObjects("/tracks", "tracks", trackIds, MAX_TRACKS_PER_REQUEST);
+    }
+
+    /**
+     * Get information about several tracks from Spotify API, without blocking.
+     *
+     * @param trackIds Spotify track IDs
+     * @return Future of the track information in the order of the IDs, with null for tracks that could not be fetched
+     */
+    public CompletableFuture<List<JSONObject>> getTracksAsync(List<String> trackIds) {
+        return getApiObjectsAsync("/tracks", "tracks", trackIds, MAX_TRACKS_PER_REQUEST);
     }
 
     /**
@@ -137,26 +168,64 @@ public class SpotifyAuthManager {
      * @throws IOException if an error occurs during the API call
      */
     public JSONObject getAlbum(String albumId) throws IOException {
-        ensureValidToken();
-        
-        if (accessToken == null) {
-            log.error("Cannot get album: no valid Spotify access token");
-            return null;
-        }
-        
-        HttpGet request = new HttpGet(API_BASE_URL + "/albums/" + albumId);
-        request.addHeader("Authorization", "Bearer " + accessToken);
-        
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                return new JSONObject(responseBody);
-            } else {
-                log.error("Failed to get Spotify album {}: {}", albumId, responseBody);
-                return null;
-            }
-        }
+        return getApiObject("/albums/" + albumId, "album " + albumId);
+    }
+
+    /**
+     * Get album information from Spotify API, without blocking.
+     *
+     * @param albumId Spotify album ID
+     * @return Future of the album information, completed with null if it could not be fetched
+     */
+    public CompletableFuture<JSONObject> getAlbumAsync(String albumId) {
+        return getApiObjectAsync("/albums/" + albumId, "album " + albumId);
+    }
+
+    /**
+     * Get information about several albums from Spotify API. The IDs are requested in batches of 20,
+     * which are sent in parallel.
+     *
+     * @param albumIds Spotify album IDs
+     * @return Album information in the order of the IDs, with null for albums that could not be fetched
+     * @throws IOException if an error occurs during the API calls
+     */
+    public List<JSONObject> getAlbums(List<String> albumIds) throws IOException {
+        return getApiObjects("/albums", "albums", albumIds, MAX_ALBUMS_PER_REQUEST);
+    }
+
+    /**
+     * Get information about several albums from Spotify API, without blocking.
+     *
+     * @param albumIds Spotify album IDs
+     * @return Future of the album information in the order of the IDs, with null for albums that could not be fetched
+     */
+    public CompletableFuture<List<JSONObject>> getAlbumsAsync(List<String> albumIds) {
+        return getApiObjectsAsync("/albums", "albums", albumIds, MAX_ALBUMS_PER_REQUEST);
+    }
+
+    /**
+     * Get a page of the tracks of an album from Spotify API.
+     *
+     * @param albumId Spotify album ID
+     * @param offset Index of the first item to return
+     * @param limit Maximum number of items to return
+     * @return Paging object with the album tracks as JSONObject
+     * @throws IOException if an error occurs during the API call
+     */
+    public JSONObject getAlbumTracks(String albumId, int offset, int limit) throws IOException {
+        return getApiObject("/albums/" + albumId + "/tracks?offset=" + offset + "&limit=" + limit, "album tracks " + albumId + " at offset " + offset);
+    }
+
+    /**
+     * Get a page of the tracks of an album from Spotify API, without blocking.
+     *
+     * @param albumId Spotify album ID
+     * @param offset Index of the first item to return
+     * @param limit Maximum number of items to return
+     * @return Future of the paging object with the album tracks, completed with null if it could not be fetched
+     */
+    public CompletableFuture<JSONObject> getAlbumTracksAsync(String albumId, int offset, int limit) {
+        return getApiObjectAsync("/albums/" + albumId + "/tracks?offset=" + offset + "&limit=" + limit, "album tracks " + albumId + " at offset " + offset);
     }
 
     /**
@@ -167,26 +236,42 @@ public class SpotifyAuthManager {
      * @throws IOException if an error occurs during the API call
      */
     public JSONObject getPlaylist(String playlistId) throws IOException {
-        ensureValidToken();
-        
-        if (accessToken == null) {
-            log.error("Cannot get playlist: no valid Spotify access token");
-            return null;
-        }
-        
-        HttpGet request = new HttpGet(API_BASE_URL + "/playlists/" + playlistId);
-        request.addHeader("Authorization", "Bearer " + accessToken);
-        
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                return new JSONObject(responseBody);
-            } else {
-                log.error("Failed to get Spotify playlist {}: {}", playlistId, responseBody);
-                return null;
-            }
-        }
+        return getApiObject("/playlists/" + playlistId, "playlist " + playlistId);
+    }
+
+    /**
+     * Get playlist information from Spotify API, without blocking.
+     *
+     * @param playlistId Spotify playlist ID
+     * @return Future of the playlist information, completed with null if it could not be fetched
+     */
+    public CompletableFuture<JSONObject> getPlaylistAsync(String playlistId) {
+        return getApiObjectAsync("/playlists/" + playlistId, "playlist " + playlistId);
+    }
+
+    /**
+     * Get a page of the tracks of a playlist from Spotify API.
+     *
+     * @param playlistId Spotify playlist ID
+     * @param offset Index of the first item to return
+     * @param limit Maximum number of items to return
+     * @return Paging object with the playlist tracks as JSONObject
+     * @throws IOException if an error occurs during the API call
+     */
+    public JSONObject getPlaylistTracks(String playlistId, int offset, int limit) throws IOException {
+        return getApiObject("/playlists/" + playlistId + "/tracks?offset=" + offset + "&limit=" + limit, "playlist tracks " + playlistId + " at offset " + offset);
+    }
+
+    /**
+     * Get a page of the tracks of a playlist from Spotify API, without blocking.
+     *
+     * @param playlistId Spotify playlist ID
+     * @param offset Index of the first item to return
+     * @param limit Maximum number of items to return
+     * @return Future of the paging object with the playlist tracks, completed with null if it could not be fetched
+     */
+    public CompletableFuture<JSONObject> getPlaylistTracksAsync(String playlistId, int offset, int limit) {
+        return getApiObjectAsync("/playlists/" + playlistId + "/tracks?offset=" + offset + "&limit=" + limit, "playlist tracks " + playlistId + " at offset " + offset);
     }
 
     /**
@@ -197,26 +282,39 @@ public class SpotifyAuthManager {
      * @throws IOException if an error occurs during the API call
      */
     public JSONObject getArtist(String artistId) throws IOException {
-        ensureValidToken();
-        
-        if (accessToken == null) {
-            log.error("Cannot get artist: no valid Spotify access token");
-            return null;
-        }
-        
-        HttpGet request = new HttpGet(API_BASE_URL + "/artists/" + artistId);
-        request.addHeader("Authorization", "Bearer " + accessToken);
-        
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                return new JSONObject(responseBody);
-            } else {
-                log.error("Failed to get Spotify artist {}: {}", artistId, responseBody);
-                return null;
-            }
-        }
+        return getApiObject("/artists/" + artistId, "artist " + artistId);
+    }
+
+    /**
+     * Get artist information from Spotify API, without blocking.
+     *
+     * @param artistId Spotify artist ID
+     * @return Future of the artist information, completed with null if it could not be fetched
+     */
+    public CompletableFuture<JSONObject> getArtistAsync(String artistId) {
+        return getApiObjectAsync("/artists/" + artistId, "artist " + artistId);
+    }
+
+    /**
+     * Get information about several artists from Spotify API. The IDs are requested in batches of 50,
+     * which are sent in parallel.
+     *
+     * @param artistIds Spotify artist IDs
+     * @return Artist information in the order of the IDs, with null for artists that could not be fetched
+     * @throws IOException if an error occurs during the API calls
+     */
+    public List<JSONObject> getArtists(List<String> artistIds) throws IOException {
+        return getApiObjects("/artists", "artists", artistIds, MAX_ARTISTS_PER_REQUEST);
+    }
+
+    /**
+     * Get information about several artists from Spotify API, without blocking.
+     *
+     * @param artistIds Spotify artist IDs
+     * @return Future of the artist information in the order of the IDs, with null for artists that could not be fetched
+     */
+    public CompletableFuture<List<JSONObject>> getArtistsAsync(List<String> artistIds) {
+        return getApiObjectsAsync("/artists", "artists", artistIds, MAX_ARTISTS_PER_REQUEST);
     }
 
     /**
@@ -227,27 +325,22 @@ public class SpotifyAuthManager {
      * @throws IOException if an error occurs during the API call
      */
     public JSONArray getArtistTopTracks(String artistId) throws IOException {
-        ensureValidToken();
-        
-        if (accessToken == null) {
-            log.error("Cannot get artist top tracks: no valid Spotify access token");
-            return new JSONArray();
-        }
-        
-        HttpGet request = new HttpGet(API_BASE_URL + "/artists/" + artistId + "/top-tracks?market=US");
-        request.addHeader("Authorization", "Bearer " + accessToken);
-        
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
-                return json.getJSONArray("tracks");
-            } else {
-                log.error("Failed to get Spotify artist top tracks {}: {}", artistId, responseBody);
-                return new JSONArray();
-            }
-        }
+        return extractTopTracks(getApiObject("/artists/" + artistId + "/top-tracks?market=US", "artist top tracks " + artistId));
+    }
+
+    /**
+     * Get artist's top tracks from Spotify API, without blocking.
+     *
+     * @param artistId Spotify artist ID
+     * @return Future of the top tracks
+     */
+    public CompletableFuture<JSONArray> getArtistTopTracksAsync(String artistId) {
+        return getApiObjectAsync("/artists/" + artistId + "/top-tracks?market=US", "artist top tracks " + artistId)
+                .thenApply(SpotifyAuthManager::extractTopTracks);
+    }
+
+    private static JSONArray extractTopTracks(JSONObject json) {
+        return json != null ? json.getJSONArray("tracks") : new JSONArray();
     }
 
     /**
@@ -258,26 +351,173 @@ public class SpotifyAuthManager {
      * @throws IOException if an error occurs during the API call
      */
     public JSONObject searchTracks(String query) throws IOException {
-        ensureValidToken();
+        return getApiObject("/search?q=" + HttpUtils.encodeUrl(query) + "&type=track&limit=10", "search results");
+    }
+
+    /**
+     * Search for tracks on Spotify, without blocking.
+     *
+     * @param query Search query
+     * @return Future of the search results, completed with null if the search failed
+     */
+    public CompletableFuture<JSONObject> searchTracksAsync(String query) {
+        return getApiObjectAsync("/search?q=" + HttpUtils.encodeUrl(query) + "&type=track&limit=10", "search results");
+    }
+
+    /**
+     * Get an object from the Spotify API.
+     *
+     * @param path Path of the object relative to the API base URL
+     * @param description Description of the object for log messages
+     * @return Object, or null if it could not be fetched
+     * @throws IOException if an error occurs during the API call
+     */
+    private JSONObject getApiObject(String path, String description) throws IOException {
+        String token = getAccessToken();
         
-        if (accessToken == null) {
-            log.error("Cannot search tracks: no valid Spotify access token");
+        if (token == null) {
+            log.error("Cannot get {}: no valid Spotify access token", description);
             return null;
         }
         
-        String encodedQuery = HttpUtils.encodeUrl(query);
-        HttpGet request = new HttpGet(API_BASE_URL + "/search?q=" + encodedQuery + "&type=track&limit=10");
-        request.addHeader("Authorization", "Bearer " + accessToken);
+        return transport.execute(createApiRequest(path, token), (statusCode, responseBody) ->
+                parseApiObject(statusCode, responseBody, description));
+    }
+
+    /**
+     * Get an object from the Spotify API without blocking. The access token is only refreshed on the
+     * blocking executor of the transport when it has expired.
+     *
+     * @param path Path of the object relative to the API base URL
+     * @param description Description of the object for log messages
+     * @return Future of the object, completed with null if it could not be fetched
+     */
+    private CompletableFuture<JSONObject> getApiObjectAsync(String path, String description) {
+        return getAccessTokenAsync().thenCompose(token -> {
+            if (token == null) {
+                log.error("Cannot get {}: no valid Spotify access token", description);
+                return CompletableFuture.completedFuture(null);
+            }
+            
+            return transport.executeAsync(createApiRequest(path, token), (statusCode, responseBody) ->
+                    parseApiObject(statusCode, responseBody, description));
+        });
+    }
+
+    /**
+     * Get several objects from a multi-ID endpoint of the Spotify API. A set of IDs that fits in one
+     * request is fetched on the calling thread, larger sets are split and fetched in parallel.
+     *
+     * @param path Path of the endpoint relative to the API base URL
+     * @param key Name of the array of objects in the response
+     * @param ids IDs of the objects
+     * @param maxPerRequest Maximum number of IDs the endpoint accepts
+     * @return Objects in the order of the IDs, with null for objects that could not be fetched
+     * @throws IOException if an error occurs during the API calls
+     */
+    private List<JSONObject> getApiObjects(String path, String key, List<String> ids, int maxPerRequest) throws IOException {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        } else if (ids.size() <= maxPerRequest) {
+            return extractObjects(getApiObject(batchPath(path, ids), batchDescription(key, ids)), key, ids.size());
+        }
+        
+        CompletableFuture<List<JSONObject>> future = getApiObjectsAsync(path, key, ids, maxPerRequest);
+        
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading Spotify " + key);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            
+            throw new IOException("Failed to load Spotify " + key, e.getCause());
+        }
+    }
+
+    /**
+     * Get several objects from a multi-ID endpoint of the Spotify API without blocking. The IDs are split
+     * into batches of the largest size the endpoint accepts. The batches of all calls share one limit on the
+     * number of requests in flight, so a large queue restore does not run into the rate limit of the API.
+     *
+     * @param path Path of the endpoint relative to the API base URL
+     * @param key Name of the array of objects in the response
+     * @param ids IDs of the objects
+     * @param maxPerRequest Maximum number of IDs the endpoint accepts
+     * @return Future of the objects in the order of the IDs, with null for objects that could not be fetched
+     */
+    private CompletableFuture<List<JSONObject>> getApiObjectsAsync(String path, String key, List<String> ids, int maxPerRequest) {
+        List<CompletableFuture<List<JSONObject>>> batches = new ArrayList<>();
+        
+        for (int start = 0; start < ids.size(); start += maxPerRequest) {
+            List<String> batch = ids.subList(start, Math.min(ids.size(), start + maxPerRequest));
+            
+            batches.add(batchLimiter.submit(() -> getApiObjectAsync(batchPath(path, batch), batchDescription(key, batch)))
+                    .thenApply(json -> extractObjects(json, key, batch.size())));
+        }
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<JSONObject> objects = new ArrayList<>(ids.size());
             
-            if (response.getStatusLine().getStatusCode() == 200) {
-                return new JSONObject(responseBody);
-            } else {
-                log.error("Failed to search Spotify tracks: {}", responseBody);
-                return null;
+            for (CompletableFuture<List<JSONObject>> batch : batches) {
+                objects.addAll(batch.join());
             }
+            
+            return objects;
+        });
+    }
+
+    private static String batchPath(String path, List<String> ids) {
+        return path + "?ids=" + String.join(",", ids);
+    }
+
+    private static String batchDescription(String key, List<String> ids) {
+        return ids.size() + " " + key + " starting with " + ids.get(0);
+    }
+
+    private static List<JSONObject> extractObjects(JSONObject json, String key, int count) {
+        JSONArray array = json != null ? json.optJSONArray(key) : null;
+        List<JSONObject> objects = new ArrayList<>(count);
+        
+        // Unknown IDs are returned as null entries, so positions still match the requested IDs
+        for (int i = 0; i < count; i++) {
+            objects.add(array != null && i < array.length() ? array.optJSONObject(i) : null);
+        }
+        
+        return objects;
+    }
+
+    private String getAccessToken() {
+        ensureValidToken();
+        return accessToken;
+    }
+
+    private CompletableFuture<String> getAccessTokenAsync() {
+        String token = accessToken;
+        
+        if (token != null && System.currentTimeMillis() < tokenExpiry) {
+            return CompletableFuture.completedFuture(token);
+        }
+        
+        return CompletableFuture.supplyAsync(this::getAccessToken, transport.getBlockingExecutor());
+    }
+
+    private static HttpGet createApiRequest(String path, String token) {
+        HttpGet request = new HttpGet(API_BASE_URL + path);
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    private static JSONObject parseApiObject(int statusCode, String responseBody, String description) {
+        if (statusCode == 200) {
+            return new JSONObject(responseBody);
+        } else {
+            log.error("Failed to get Spotify {}: {}", description, responseBody);
+            return null;
         }
     }
 }
@@ -0,0 +1,87 @@
+package com.github.youtubeify.auth;
+
+/**
+ * A media format of a video as listed in the streaming data of an InnerTube player response.
+ */
+public class StreamFormat {
+
+    private final int itag;
+    private final String url;
+    private final String mimeType;
+    private final long bitrate;
+    private final long contentLength;
+    private final long approxDurationMs;
+
+    /**
+     * @param itag YouTube format identifier
+     * @param url Stream URL
+     * @param mimeType MIME type including the codecs parameter
+     * @param bitrate Bitrate in bits per second, 0 if unknown
+     * @param contentLength Size of the stream in bytes, 0 if unknown
+     * @param approxDurationMs Duration of the stream in milliseconds, 0 if unknown
+     */
+    public StreamFormat(int itag, String url, String mimeType, long bitrate, long contentLength, long approxDurationMs) {
+        this.itag = itag;
+        this.url = url;
+        this.mimeType = mimeType;
+        this.bitrate = bitrate;
+        this.contentLength = contentLength;
+        this.approxDurationMs = approxDurationMs;
+    }
+
+    /**
+     * @return YouTube format identifier
+     */
+    public int getItag() {
+        return itag;
+    }
+
+    /**
+     * @return Stream URL
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return MIME type including the codecs parameter
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return Bitrate in bits per second, 0 if unknown
+     */
+    public long getBitrate() {
+        return bitrate;
+    }
+
+    /**
+     * @return Size of the stream in bytes, 0 if unknown
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return Duration of the stream in milliseconds, 0 if unknown
+     */
+    public long getApproxDurationMs() {
+        return approxDurationMs;
+    }
+
+    /**
+     * @return True if the format contains audio only
+     */
+    public boolean isAudioOnly() {
+        return mimeType.startsWith("audio/");
+    }
+
+    /**
+     * @return True if the audio is Opus, which is played without transcoding
+     */
+    public boolean isOpus() {
+        return mimeType.contains("opus");
+    }
+}
@@ -1,20 +1,40 @@
 package com.github.youtubeify.auth;
 
+import com.github.youtubeify.cache.CacheStats;
+import com.github.youtubeify.cache.SingleFlight;
+import com.github.youtubeify.cache.StreamInfoCache;
+import com.github.youtubeify.cache.TinyLfuCache;
+import com.github.youtubeify.util.ConfigUtils;
+import com.github.youtubeify.util.FutureUtils;
+import com.github.youtubeify.util.HttpTransport;
 import com.github.youtubeify.util.HttpUtils;
+import com.github.youtubeify.util.NamedThreadFactory;
+import com.github.youtubeify.util.TrackUtils;
+import com.github.youtubeify.util.VirtualThreads;
+import com.github.youtubeify.util.json.EmbeddedJsonInputStream;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Manager for YouTube authentication and API calls.
@@ -31,24 +51,64 @@ public class YouTubeAuthManager {
     private static final String INNERTUBE_CONTEXT = "{\"client\":{\"clientName\":\"WEB\",\"clientVersion\":\"2.20230120.00.00\"}}";
     private static final String INNERTUBE_BASE_URL = "https://www.youtube.com/youtubei/v1";
     private static final String DATA_API_BASE_URL = "https://www.googleapis.com/youtube/v3";
+    private static final long LIVE_DETAILS_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long EMPTY_SEARCH_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final int DATA_API_PAGE_SIZE = 50;
+    private static final long PAGE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(15);
     
     private final String apiKey;
-    private final CloseableHttpClient httpClient;
+    private final HttpTransport transport;
+    private final TinyLfuCache<String, JSONObject> videoDetailsCache;
+    private final StreamInfoCache streamInfoCache;
+    private final TinyLfuCache<String, JSONArray> searchCache;
+    private final SingleFlight<String, JSONArray> searchFlight;
+    private final ExecutorService pagingExecutor;
+    private final int playlistLoadLimit;
+    private final AudioFormatPolicy formatPolicy;
     private String innertubeContext;
-    private Map<String, String> cookies;
+    private volatile Map<String, String> cookies;
+    private volatile boolean sessionInitialized;
 
-    public YouTubeAuthManager() {
+    /**
+     * @param transport Shared HTTP transport used for all API calls
+     */
+    public YouTubeAuthManager(HttpTransport transport) {
         this.apiKey = System.getenv("YOUTUBE_API_KEY");
-        this.httpClient = HttpClients.createDefault();
+        this.transport = transport;
         this.cookies = new HashMap<>();
         this.innertubeContext = INNERTUBE_CONTEXT;
+        this.videoDetailsCache = new TinyLfuCache<>(
+                ConfigUtils.getLong("YOUTUBEIFY_VIDEO_CACHE_MB", 16) * 1024 * 1024,
+                ConfigUtils.getInt("YOUTUBEIFY_VIDEO_CACHE_ENTRIES", 50000),
+                TimeUnit.MINUTES.toMillis(ConfigUtils.getLong("YOUTUBEIFY_VIDEO_CACHE_TTL_MINUTES", 360)),
+                (videoId, details) -> estimateWeight(details)
+        );
+        this.streamInfoCache = new StreamInfoCache(
+                ConfigUtils.getInt("YOUTUBEIFY_STREAM_CACHE_ENTRIES", 5000),
+                TimeUnit.SECONDS.toMillis(ConfigUtils.getLong("YOUTUBEIFY_STREAM_CACHE_MARGIN_SECONDS", 300)),
+                TimeUnit.MINUTES.toMillis(30)
+        );
+        
+        // Search results are weighed by count, so the bound is the number of cached queries
+        int searchCacheEntries = ConfigUtils.getInt("YOUTUBEIFY_SEARCH_CACHE_ENTRIES", 20000);
+        this.searchCache = new TinyLfuCache<>(
+                searchCacheEntries,
+                searchCacheEntries,
+                TimeUnit.MINUTES.toMillis(ConfigUtils.getLong("YOUTUBEIFY_SEARCH_CACHE_TTL_MINUTES", 60)),
+                (key, results) -> 1
+        );
+        this.searchFlight = new SingleFlight<>();
+        ExecutorService virtualExecutor = VirtualThreads.newExecutor("youtubeify-paging");
+        this.pagingExecutor = virtualExecutor != null
+                ? virtualExecutor
+                : Executors.newCachedThreadPool(new NamedThreadFactory("youtubeify-paging"));
+        this.playlistLoadLimit = ConfigUtils.getInt("YOUTUBEIFY_PLAYLIST_LOAD_LIMIT", 5000);
+        this.formatPolicy = new AudioFormatPolicy(AudioFormatPolicy.Tier.fromName(
+                ConfigUtils.getString("YOUTUBEIFY_AUDIO_QUALITY", "standard"), AudioFormatPolicy.Tier.STANDARD));
         
         if (apiKey == null) {
             log.warn("YouTube API key not found in environment variables, falling back to alternative methods");
         }
-        
-        // Initialize session cookies
-        initSession();
     }
 
     /**
@@ -58,7 +118,7 @@ public class YouTubeAuthManager {
         try {
             HttpGet request = new HttpGet("https://www.youtube.com");
             
-            try (CloseableHttpResponse response = httpClient.execute(request)) {
+            try (CloseableHttpResponse response = transport.execute(request)) {
                 // Store cookies for future requests
                 cookies = HttpUtils.extractCookies(response);
                 log.debug("Initialized YouTube session with {} cookies", cookies.size());
@@ -68,26 +128,124 @@ public class YouTubeAuthManager {
         }
     }
 
+    /**
+     * Get the session cookies, initializing the session on first use rather than at startup.
+     *
+     * @return Session cookies, empty if the session could not be initialized
+     */
+    private Map<String, String> getSessionCookies() {
+        if (!sessionInitialized) {
+            synchronized (this) {
+                if (!sessionInitialized) {
+                    initSession();
+                    sessionInitialized = true;
+                }
+            }
+        }
+        
+        return cookies;
+    }
+
+    /**
+     * Run an asynchronous call that needs the session cookies once the session is initialized. The first
+     * initialization is a blocking request under the manager's lock, so it runs on the blocking executor and
+     * the request of the call is only built after it, never on the calling thread.
+     *
+     * @param call Call that builds and sends its request
+     * @param <T> Result type
+     * @return Future of the result of the call
+     */
+    private <T> CompletableFuture<T> withSessionAsync(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Map<String, String>> session = sessionInitialized
+                ? CompletableFuture.completedFuture(cookies)
+                : CompletableFuture.supplyAsync(this::getSessionCookies, transport.getBlockingExecutor());
+        
+        return session.thenCompose(sessionCookies -> call.get());
+    }
+
     /**
      * Refresh authentication by getting new session cookies.
      */
-    public void refreshAuth() {
+    public synchronized void refreshAuth() {
         log.info("Refreshing YouTube authentication session");
         initSession();
+        sessionInitialized = true;
     }
 
     /**
-     * Get video details using the best available method.
+     * Get video details, served from the metadata cache when possible.
+     * The returned object may be shared with other callers and must not be modified.
      *
      * @param videoId YouTube video ID
      * @return Video details as JSONObject
      * @throws IOException if an error occurs during the API call
      */
     public JSONObject getVideoDetails(String videoId) throws IOException {
+        JSONObject cached = videoDetailsCache.get(videoId);
+        
+        if (cached != null) {
+            return cached;
+        }
+        
+        return cacheVideoDetails(videoId, fetchVideoDetails(videoId));
+    }
+
+    /**
+     * Get video details without blocking, served from the metadata cache when possible.
+     * The resulting object may be shared with other callers and must not be modified.
+     *
+     * @param videoId YouTube video ID
+     * @return Future of the video details
+     */
+    public CompletableFuture<JSONObject> getVideoDetailsAsync(String videoId) {
+        JSONObject cached = videoDetailsCache.get(videoId);
+        
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        
+        return fetchVideoDetailsAsync(videoId).thenApply(details -> cacheVideoDetails(videoId, details));
+    }
+
+    /**
+     * @return Counters of the video details cache
+     */
+    public CacheStats getVideoDetailsCacheStats() {
+        return videoDetailsCache.getStats();
+    }
+
+    private JSONObject cacheVideoDetails(String videoId, JSONObject details) {
+        if (details != null) {
+            // Livestreams report no length and their details change, so keep them only briefly
+            if (details.optLong("lengthSeconds") == 0) {
+                videoDetailsCache.put(videoId, details, LIVE_DETAILS_TTL_MS);
+            } else {
+                videoDetailsCache.put(videoId, details);
+            }
+        }
+        
+        return details;
+    }
+
+    private static int estimateWeight(JSONObject details) {
+        // Rough heap footprint of the standardized details object
+        return 256 + 2 * (details.optString("videoId").length()
+                + details.optString("title").length()
+                + details.optString("author").length());
+    }
+
+    /**
+     * Get video details using the best available method.
+     *
+     * @param videoId YouTube video ID
+     * @return Video details as JSONObject
+     * @throws IOException if an error occurs during the API call
+     */
+    private JSONObject fetchVideoDetails(String videoId) throws IOException {
         if (apiKey != null) {
             // Try YouTube Data API first
             try {
-                return getVideoDetailsFromDataApi(videoId);
+                return transport.execute(createDataApiVideoRequest(videoId), (status, body) -> parseDataApiVideo(videoId, status, body));
             } catch (Exception e) {
                 log.warn("Failed to get video details from Data API, falling back to InnerTube API", e);
             }
@@ -95,74 +253,92 @@ public class YouTubeAuthManager {
         
         // Fall back to InnerTube API
         try {
-            return getVideoDetailsFromInnertubeApi(videoId);
+            return transport.executeStreaming(createPlayerRequest(videoId), YouTubeAuthManager::parseInnertubeVideo);
         } catch (Exception e) {
             log.warn("Failed to get video details from InnerTube API, falling back to web scraping", e);
             
             // Fall back to web scraping
-            return getVideoDetailsFromWebPage(videoId);
+            return transport.executeStreaming(createWatchPageRequest(videoId), YouTubeAuthManager::parseWatchPageVideo, false);
         }
     }
 
     /**
-     * Get video details from YouTube Data API.
+     * Get video details using the best available method, without blocking.
      *
      * @param videoId YouTube video ID
-     * @return Video details as JSONObject
-     * @throws IOException if an error occurs during the API call
+     * @return Future of the video details
      */
-    private JSONObject getVideoDetailsFromDataApi(String videoId) throws IOException {
-        String url = DATA_API_BASE_URL + "/videos?id=" + videoId + "&part=snippet,contentDetails,statistics&key=" + apiKey;
+    private CompletableFuture<JSONObject> fetchVideoDetailsAsync(String videoId) {
+        Supplier<CompletableFuture<JSONObject>> innertube = () -> withSessionAsync(() -> FutureUtils.withFallback(
+                transport.executeStreamingAsync(createPlayerRequest(videoId), YouTubeAuthManager::parseInnertubeVideo),
+                e -> log.warn("Failed to get video details from InnerTube API, falling back to web scraping", e),
+                () -> transport.executeStreamingAsync(createWatchPageRequest(videoId), YouTubeAuthManager::parseWatchPageVideo, false)
+        ));
         
-        HttpGet request = new HttpGet(url);
-        
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
-                JSONArray items = json.getJSONArray("items");
-                
-                if (items.length() > 0) {
-                    JSONObject item = items.getJSONObject(0);
-                    JSONObject snippet = item.getJSONObject("snippet");
-                    JSONObject contentDetails = item.getJSONObject("contentDetails");
-                    
-                    // Convert to a standardized format
-                    JSONObject result = new JSONObject();
-                    result.put("videoId", videoId);
-                    result.put("title", snippet.getString("title"));
-                    result.put("author", snippet.getString("channelTitle"));
-                    
-                    // Convert ISO 8601 duration to seconds
-                    String duration = contentDetails.getString("duration");
-                    long seconds = HttpUtils.isoDurationToSeconds(duration);
-                    result.put("lengthSeconds", seconds);
-                    
-                    return result;
-                }
-            }
-            
-            throw new IOException("Failed to get video details from Data API: " + responseBody);
+        if (apiKey == null) {
+            return innertube.get();
         }
+        
+        return FutureUtils.withFallback(
+                transport.executeAsync(createDataApiVideoRequest(videoId), (status, body) -> parseDataApiVideo(videoId, status, body)),
+                e -> log.warn("Failed to get video details from Data API, falling back to InnerTube API", e),
+                innertube
+        );
+    }
+
+    private HttpUriRequest createDataApiVideoRequest(String videoId) {
+        String url = DATA_API_BASE_URL + "/videos?id=" + videoId + "&part=snippet,contentDetails,statistics&key=" + apiKey;
+        
+        return new HttpGet(url);
     }
 
     /**
-     * Get video details from YouTube InnerTube API.
+     * Parse video details from a YouTube Data API response.
      *
      * @param videoId YouTube video ID
+     * @param statusCode HTTP status code
+     * @param responseBody Response body
      * @return Video details as JSONObject
-     * @throws IOException if an error occurs during the API call
+     * @throws IOException if the response contains no video details
      */
-    private JSONObject getVideoDetailsFromInnertubeApi(String videoId) throws IOException {
+    private static JSONObject parseDataApiVideo(String videoId, int statusCode, String responseBody) throws IOException {
+        if (statusCode == 200) {
+            JSONObject json = new JSONObject(responseBody);
+            JSONArray items = json.getJSONArray("items");
+            
+            if (items.length() > 0) {
+                JSONObject item = items.getJSONObject(0);
+                JSONObject snippet = item.getJSONObject("snippet");
+                JSONObject contentDetails = item.getJSONObject("contentDetails");
+                
+                // Convert to a standardized format
+                JSONObject result = new JSONObject();
+                result.put("videoId", videoId);
+                result.put("title", snippet.getString("title"));
+                result.put("author", snippet.getString("channelTitle"));
+                
+                // Convert ISO 8601 duration to seconds
+                String duration = contentDetails.getString("duration");
+                long seconds = HttpUtils.isoDurationToSeconds(duration);
+                result.put("lengthSeconds", seconds);
+                
+                return result;
+            }
+        }
+        
+        throw new IOException("Failed to get video details from Data API: " + responseBody);
+    }
+
+    private HttpUriRequest createPlayerRequest(String videoId) {
         String url = INNERTUBE_BASE_URL + "/player?key=" + INNERTUBE_API_KEY;
         
         HttpPost request = new HttpPost(url);
         request.addHeader("Content-Type", "application/json");
         
         // Add cookies if available
-        if (!cookies.isEmpty()) {
-            request.addHeader("Cookie", HttpUtils.formatCookies(cookies));
+        Map<String, String> sessionCookies = getSessionCookies();
+        if (!sessionCookies.isEmpty()) {
+            request.addHeader("Cookie", HttpUtils.formatCookies(sessionCookies));
         }
         
         // Create payload
@@ -170,71 +346,69 @@ public class YouTubeAuthManager {
         payload.put("videoId", videoId);
         payload.put("context", new JSONObject(innertubeContext));
         
-        request.setEntity(new StringEntity(payload.toString()));
+        request.setEntity(new StringEntity(payload.toString(), ContentType.APPLICATION_JSON));
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
-                
-                // Extract basic video details
-                JSONObject videoDetails = json.getJSONObject("videoDetails");
-                
-                // Convert to a standardized format
-                JSONObject result = new JSONObject();
-                result.put("videoId", videoDetails.getString("videoId"));
-                result.put("title", videoDetails.getString("title"));
-                result.put("author", videoDetails.getString("author"));
-                result.put("lengthSeconds", Long.parseLong(videoDetails.getString("lengthSeconds")));
-                
-                return result;
-            }
-            
-            throw new IOException("Failed to get video details from InnerTube API: " + responseBody);
-        }
+        return request;
     }
 
     /**
-     * Get video details by scraping the YouTube web page.
+     * Parse video details from an InnerTube player response.
      *
-     * @param videoId YouTube video ID
+     * @param statusCode HTTP status code
+     * @param body Response body
      * @return Video details as JSONObject
-     * @throws IOException if an error occurs during the API call
+     * @throws IOException if the response contains no video details
      */
-    private JSONObject getVideoDetailsFromWebPage(String videoId) throws IOException {
+    private static JSONObject parseInnertubeVideo(int statusCode, InputStream body) throws IOException {
+        if (statusCode == 200) {
+            InnertubeParser.Video video = InnertubeParser.parsePlayer(body).video;
+            
+            if (video != null) {
+                return video.toJson();
+            }
+        }
+        
+        throw new IOException("Failed to get video details from InnerTube API (status " + statusCode + ")");
+    }
+
+    private HttpUriRequest createWatchPageRequest(String videoId) {
         String url = "https://www.youtube.com/watch?v=" + videoId;
         
         HttpGet request = new HttpGet(url);
         
         // Add cookies if available
-        if (!cookies.isEmpty()) {
-            request.addHeader("Cookie", HttpUtils.formatCookies(cookies));
+        Map<String, String> sessionCookies = getSessionCookies();
+        if (!sessionCookies.isEmpty()) {
+            request.addHeader("Cookie", HttpUtils.formatCookies(sessionCookies));
         }
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
+        return request;
+    }
+
+    /**
+     * Parse video details from the YouTube watch page. The page is only read up to the end of the
+     * embedded player response; the caller drops the rest.
+     *
+     * @param statusCode HTTP status code
+     * @param body Page HTML
+     * @return Video details as JSONObject
+     * @throws IOException if the page contains no video details
+     */
+    private static JSONObject parseWatchPageVideo(int statusCode, InputStream body) throws IOException {
+        if (statusCode == 200) {
+            // Look for ytInitialPlayerResponse in the page
+            EmbeddedJsonInputStream playerResponse = new EmbeddedJsonInputStream(body, "ytInitialPlayerResponse");
             
-            if (response.getStatusLine().getStatusCode() == 200) {
-                // Look for ytInitialPlayerResponse in the page
-                Map<String, Object> initialData = HttpUtils.extractInitialData(responseBody, "ytInitialPlayerResponse");
+            if (playerResponse.find()) {
+                InnertubeParser.Video video = InnertubeParser.parsePlayer(playerResponse).video;
                 
-                if (initialData != null && initialData.containsKey("videoDetails")) {
-                    Map<String, Object> videoDetails = (Map<String, Object>) initialData.get("videoDetails");
-                    
-                    // Convert to a standardized format
-                    JSONObject result = new JSONObject();
-                    result.put("videoId", videoDetails.get("videoId"));
-                    result.put("title", videoDetails.get("title"));
-                    result.put("author", videoDetails.get("author"));
-                    result.put("lengthSeconds", Long.parseLong(videoDetails.get("lengthSeconds").toString()));
-                    
-                    return result;
+                if (video != null) {
+                    return video.toJson();
                 }
             }
-            
-            throw new IOException("Failed to get video details from web page");
         }
+        
+        throw new IOException("Failed to get video details from web page");
     }
 
     /**
@@ -259,49 +433,53 @@ public class YouTubeAuthManager {
     }
 
     /**
-     * Get playlist details from YouTube Data API.
+     * Get playlist details from YouTube Data API, following the page tokens until all items
+     * or the configured number of items are loaded.
      *
      * @param playlistId YouTube playlist ID
      * @return Playlist details as JSONObject
      * @throws IOException if an error occurs during the API call
      */
     private JSONObject getPlaylistDetailsFromDataApi(String playlistId) throws IOException {
-        // Get playlist info
+        // The playlist info and the first page of items are independent, so request them at the same time
         String playlistUrl = DATA_API_BASE_URL + "/playlists?id=" + playlistId + "&part=snippet&key=" + apiKey;
-        HttpGet playlistRequest = new HttpGet(playlistUrl);
+        Future<JSONObject> playlistFuture = pagingExecutor.submit(
+                () -> executeForJson(new HttpGet(playlistUrl), "Failed to get playlist details"));
+        Future<JSONObject> pageFuture = fetchPlaylistItemsPage(playlistId, null);
+        
+        JSONArray videos = new JSONArray();
+        JSONArray playlistItems;
         
-        JSONObject playlistInfo;
-        try (CloseableHttpResponse response = httpClient.execute(playlistRequest)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
+        try {
+            boolean firstPage = true;
             
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
-                JSONArray items = json.getJSONArray("items");
+            while (pageFuture != null) {
+                JSONObject json;
                 
-                if (items.length() > 0) {
-                    playlistInfo = items.getJSONObject(0).getJSONObject("snippet");
-                } else {
-                    throw new IOException("Playlist not found");
+                try {
+                    json = awaitPage(pageFuture);
+                } catch (IOException e) {
+                    if (firstPage || e instanceof InterruptedIOException) {
+                        throw e;
+                    }
+                    
+                    // Keep the videos loaded so far rather than failing the whole playlist, like the InnerTube path
+                    log.warn("Failed to load further pages of playlist {}, returning {} videos", playlistId, videos.length(), e);
+                    break;
+                } finally {
+                    pageFuture = null;
                 }
-            } else {
-                throw new IOException("Failed to get playlist details: " + responseBody);
-            }
-        }
-        
-        // Get playlist items
-        String itemsUrl = DATA_API_BASE_URL + "/playlistItems?playlistId=" + playlistId 
-                + "&part=snippet,contentDetails&maxResults=50&key=" + apiKey;
-        HttpGet itemsRequest = new HttpGet(itemsUrl);
-        
-        JSONArray videos = new JSONArray();
-        try (CloseableHttpResponse response = httpClient.execute(itemsRequest)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
+                
+                firstPage = false;
                 JSONArray items = json.getJSONArray("items");
                 
-                for (int i = 0; i < items.length(); i++) {
+                // Request the next page before converting this one
+                String nextPageToken = json.optString("nextPageToken", null);
+                if (nextPageToken != null && videos.length() + items.length() < playlistLoadLimit) {
+                    pageFuture = fetchPlaylistItemsPage(playlistId, nextPageToken);
+                }
+                
+                for (int i = 0; i < items.length() && videos.length() < playlistLoadLimit; i++) {
                     JSONObject item = items.getJSONObject(i);
                     JSONObject snippet = item.getJSONObject("snippet");
                     String videoId = item.getJSONObject("contentDetails").getString("videoId");
@@ -316,11 +494,24 @@ public class YouTubeAuthManager {
                     
                     videos.put(videoDetails);
                 }
-            } else {
-                throw new IOException("Failed to get playlist items: " + responseBody);
             }
+            
+            playlistItems = awaitPage(playlistFuture).getJSONArray("items");
+        } finally {
+            // Whatever is still running is not needed any more, either because it is done or because the load failed
+            if (pageFuture != null) {
+                pageFuture.cancel(true);
+            }
+            
+            playlistFuture.cancel(true);
         }
         
+        if (playlistItems.length() == 0) {
+            throw new IOException("Playlist not found");
+        }
+        
+        JSONObject playlistInfo = playlistItems.getJSONObject(0).getJSONObject("snippet");
+        
         // Assemble result
         JSONObject result = new JSONObject();
         result.put("playlistId", playlistId);
@@ -330,205 +521,291 @@ public class YouTubeAuthManager {
         return result;
     }
 
+    private Future<JSONObject> fetchPlaylistItemsPage(String playlistId, String pageToken) {
+        String itemsUrl = DATA_API_BASE_URL + "/playlistItems?playlistId=" + playlistId 
+                + "&part=snippet,contentDetails&maxResults=" + DATA_API_PAGE_SIZE + "&key=" + apiKey
+                + (pageToken != null ? "&pageToken=" + pageToken : "");
+        
+        return pagingExecutor.submit(() -> executeForJson(new HttpGet(itemsUrl), "Failed to get playlist items"));
+    }
+
     /**
-     * Get playlist details from YouTube InnerTube API.
+     * Get playlist details from YouTube InnerTube API, following the continuation tokens until all videos
+     * or the configured number of videos are loaded.
      *
      * @param playlistId YouTube playlist ID
      * @return Playlist details as JSONObject
      * @throws IOException if an error occurs during the API call
      */
     private JSONObject getPlaylistDetailsFromInnertubeApi(String playlistId) throws IOException {
-        String url = INNERTUBE_BASE_URL + "/browse?key=" + INNERTUBE_API_KEY;
+        JSONObject payload = new JSONObject();
+        payload.put("browseId", "VL" + playlistId);
         
-        HttpPost request = new HttpPost(url);
-        request.addHeader("Content-Type", "application/json");
+        InnertubeParser.BrowsePage page = executeBrowse(payload, "Failed to get playlist details from InnerTube API");
         
-        // Add cookies if available
-        if (!cookies.isEmpty()) {
-            request.addHeader("Cookie", HttpUtils.formatCookies(cookies));
-        }
+        String title = page.title != null ? page.title : "YouTube Playlist";
         
-        // Create payload
-        JSONObject payload = new JSONObject();
-        payload.put("browseId", "VL" + playlistId);
-        payload.put("context", new JSONObject(innertubeContext));
+        if (page.videos == null) {
+            log.warn("Could not extract videos of playlist {}", playlistId);
+        }
         
-        request.setEntity(new StringEntity(payload.toString()));
+        JSONArray videos = new JSONArray();
+        Future<InnertubeParser.BrowsePage> continuationFuture = null;
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
-                
-                // Extract basic playlist details
-                String title = "YouTube Playlist";
-                try {
-                    if (json.has("header")) {
-                        title = json.getJSONObject("header")
-                                .getJSONObject("playlistHeaderRenderer")
-                                .getJSONObject("title")
-                                .getString("simpleText");
-                    }
-                } catch (Exception e) {
-                    log.warn("Could not extract playlist title", e);
+        try {
+            while (page != null && page.videos != null) {
+                // Request the next page before converting this one, so both overlap
+                if (page.continuation != null && videos.length() + page.videos.size() < playlistLoadLimit) {
+                    continuationFuture = fetchPlaylistContinuation(page.continuation);
                 }
                 
-                // Extract videos
-                JSONArray videos = new JSONArray();
-                try {
-                    JSONArray contents = json.getJSONObject("contents")
-                            .getJSONObject("twoColumnBrowseResultsRenderer")
-                            .getJSONArray("tabs").getJSONObject(0)
-                            .getJSONObject("tabRenderer")
-                            .getJSONObject("content")
-                            .getJSONObject("sectionListRenderer")
-                            .getJSONArray("contents").getJSONObject(0)
-                            .getJSONObject("itemSectionRenderer")
-                            .getJSONArray("contents").getJSONObject(0)
-                            .getJSONObject("playlistVideoListRenderer")
-                            .getJSONArray("contents");
-                    
-                    for (int i = 0; i < contents.length(); i++) {
-                        if (contents.getJSONObject(i).has("playlistVideoRenderer")) {
-                            JSONObject renderer = contents.getJSONObject(i).getJSONObject("playlistVideoRenderer");
-                            String videoId = renderer.getString("videoId");
-                            
-                            String videoTitle = "Unknown";
-                            try {
-                                videoTitle = renderer.getJSONObject("title").getString("simpleText");
-                            } catch (Exception e) {
-                                try {
-                                    videoTitle = renderer.getJSONObject("title").getJSONArray("runs")
-                                            .getJSONObject(0).getString("text");
-                                } catch (Exception e2) {
-                                    log.warn("Could not extract video title", e2);
-                                }
-                            }
-                            
-                            String videoAuthor = "Unknown";
-                            try {
-                                videoAuthor = renderer.getJSONObject("shortBylineText").getJSONArray("runs")
-                                        .getJSONObject(0).getString("text");
-                            } catch (Exception e) {
-                                log.warn("Could not extract video author", e);
-                            }
-                            
-                            long lengthSeconds = 0;
-                            try {
-                                String lengthText = renderer.getJSONObject("lengthText").getString("simpleText");
-                                lengthSeconds = HttpUtils.timeTextToSeconds(lengthText);
-                            } catch (Exception e) {
-                                log.warn("Could not extract video length", e);
-                            }
-                            
-                            JSONObject videoDetails = new JSONObject();
-                            videoDetails.put("videoId", videoId);
-                            videoDetails.put("title", videoTitle);
-                            videoDetails.put("author", videoAuthor);
-                            videoDetails.put("lengthSeconds", lengthSeconds);
-                            
-                            videos.put(videoDetails);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.warn("Could not extract playlist videos", e);
+                for (int i = 0; i < page.videos.size() && videos.length() < playlistLoadLimit; i++) {
+                    videos.put(page.videos.get(i).toJson());
                 }
                 
-                // Assemble result
-                JSONObject result = new JSONObject();
-                result.put("playlistId", playlistId);
-                result.put("title", title);
-                result.put("videos", videos);
+                page = null;
                 
-                return result;
+                if (continuationFuture != null) {
+                    page = awaitPage(continuationFuture);
+                    continuationFuture = null;
+                }
+            }
+        } catch (IOException e) {
+            // Keep the videos loaded so far rather than failing the whole playlist
+            log.warn("Failed to load further pages of playlist {}, returning {} videos", playlistId, videos.length(), e);
+        } finally {
+            if (continuationFuture != null) {
+                continuationFuture.cancel(true);
+            }
+        }
+        
+        // Assemble result
+        JSONObject result = new JSONObject();
+        result.put("playlistId", playlistId);
+        result.put("title", title);
+        result.put("videos", videos);
+        
+        return result;
+    }
+
+    private Future<InnertubeParser.BrowsePage> fetchPlaylistContinuation(String continuation) {
+        JSONObject payload = new JSONObject();
+        payload.put("continuation", continuation);
+        
+        return pagingExecutor.submit(() -> executeBrowse(payload, "Failed to get playlist continuation from InnerTube API"));
+    }
+
+    private InnertubeParser.BrowsePage executeBrowse(JSONObject payload, String errorMessage) throws IOException {
+        return transport.executeStreaming(createBrowseRequest(payload), (statusCode, body) -> {
+            if (statusCode == 200) {
+                return InnertubeParser.parseBrowse(body);
             }
             
-            throw new IOException("Failed to get playlist details from InnerTube API: " + responseBody);
+            throw new IOException(errorMessage + " (status " + statusCode + ")");
+        });
+    }
+
+    private HttpPost createBrowseRequest(JSONObject payload) {
+        HttpPost request = new HttpPost(INNERTUBE_BASE_URL + "/browse?key=" + INNERTUBE_API_KEY);
+        
+        // Add cookies if available
+        Map<String, String> sessionCookies = getSessionCookies();
+        if (!sessionCookies.isEmpty()) {
+            request.addHeader("Cookie", HttpUtils.formatCookies(sessionCookies));
+        }
+        
+        payload.put("context", new JSONObject(innertubeContext));
+        request.setEntity(new StringEntity(payload.toString(), ContentType.APPLICATION_JSON));
+        
+        return request;
+    }
+
+    private JSONObject executeForJson(HttpUriRequest request, String errorMessage) throws IOException {
+        return transport.execute(request, (statusCode, responseBody) -> {
+            if (statusCode == 200) {
+                return new JSONObject(responseBody);
+            }
+            
+            throw new IOException(errorMessage + ": " + responseBody);
+        });
+    }
+
+    private static <T> T awaitPage(Future<T> future) throws IOException {
+        try {
+            return future.get(PAGE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading playlist page");
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("Playlist page did not load within " + PAGE_TIMEOUT_MS + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            
+            throw new IOException("Failed to load playlist page", e.getCause());
         }
     }
 
     /**
-     * Search for videos using the best available method.
+     * Search for videos. Queries are normalized first, results are cached per normalized query
+     * and concurrent identical searches share a single upstream request.
+     * The returned array may be shared with other callers and must not be modified.
      *
      * @param query Search query
      * @return Search results as JSONArray
      * @throws IOException if an error occurs during the API call
      */
     public JSONArray searchVideos(String query) throws IOException {
+        String normalizedQuery = TrackUtils.normalizeSearchQuery(query);
+        String cacheKey = normalizedQuery.toLowerCase(Locale.ROOT);
+        
+        JSONArray cached = searchCache.get(cacheKey);
+        
+        if (cached != null) {
+            return cached;
+        }
+        
+        return searchFlight.execute(cacheKey, () -> cacheSearchResults(cacheKey, fetchSearchResults(normalizedQuery)));
+    }
+
+    /**
+     * Search for videos without blocking, with the same normalization, caching and sharing of identical
+     * searches as {@link #searchVideos(String)}.
+     * The resulting array may be shared with other callers and must not be modified.
+     *
+     * @param query Search query
+     * @return Future of the search results
+     */
+    public CompletableFuture<JSONArray> searchVideosAsync(String query) {
+        String normalizedQuery = TrackUtils.normalizeSearchQuery(query);
+        String cacheKey = normalizedQuery.toLowerCase(Locale.ROOT);
+        
+        JSONArray cached = searchCache.get(cacheKey);
+        
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        
+        return searchFlight.executeAsync(cacheKey, () -> fetchSearchResultsAsync(normalizedQuery)
+                .thenApply(results -> cacheSearchResults(cacheKey, results)));
+    }
+
+    /**
+     * @return Counters of the search result cache
+     */
+    public CacheStats getSearchCacheStats() {
+        return searchCache.getStats();
+    }
+
+    private JSONArray cacheSearchResults(String cacheKey, JSONArray results) {
+        // Empty results are more likely to be a transient problem, so retry them sooner
+        if (results.length() == 0) {
+            searchCache.put(cacheKey, results, EMPTY_SEARCH_TTL_MS);
+        } else {
+            searchCache.put(cacheKey, results);
+        }
+        
+        return results;
+    }
+
+    /**
+     * Search for videos using the best available method.
+     *
+     * @param query Search query
+     * @return Search results as JSONArray
+     * @throws IOException if an error occurs during the API call
+     */
+    private JSONArray fetchSearchResults(String query) throws IOException {
         if (apiKey != null) {
             // Try YouTube Data API first
             try {
-                return searchVideosFromDataApi(query);
+                return transport.execute(createDataApiSearchRequest(query), YouTubeAuthManager::parseDataApiSearch);
             } catch (Exception e) {
                 log.warn("Failed to search videos from Data API, falling back to InnerTube API", e);
             }
         }
         
         // Fall back to InnerTube API
-        return searchVideosFromInnertubeApi(query);
+        return transport.executeStreaming(createInnertubeSearchRequest(query), YouTubeAuthManager::parseInnertubeSearch);
     }
 
     /**
-     * Search for videos using YouTube Data API.
+     * Search for videos using the best available method, without blocking.
      *
      * @param query Search query
-     * @return Search results as JSONArray
-     * @throws IOException if an error occurs during the API call
+     * @return Future of the search results
      */
-    private JSONArray searchVideosFromDataApi(String query) throws IOException {
+    private CompletableFuture<JSONArray> fetchSearchResultsAsync(String query) {
+        Supplier<CompletableFuture<JSONArray>> innertube = () -> withSessionAsync(
+                () -> transport.executeStreamingAsync(createInnertubeSearchRequest(query), YouTubeAuthManager::parseInnertubeSearch));
+        
+        if (apiKey == null) {
+            return innertube.get();
+        }
+        
+        return FutureUtils.withFallback(
+                transport.executeAsync(createDataApiSearchRequest(query), YouTubeAuthManager::parseDataApiSearch),
+                e -> log.warn("Failed to search videos from Data API, falling back to InnerTube API", e),
+                innertube
+        );
+    }
+
+    private HttpUriRequest createDataApiSearchRequest(String query) {
         String url = DATA_API_BASE_URL + "/search?q=" + HttpUtils.encodeUrl(query) 
                 + "&part=snippet&type=video&maxResults=10&key=" + apiKey;
         
-        HttpGet request = new HttpGet(url);
-        
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
+        return new HttpGet(url);
+    }
+
+    /**
+     * Parse search results from a YouTube Data API response.
+     *
+     * @param statusCode HTTP status code
+     * @param responseBody Response body
+     * @return Search results as JSONArray
+     * @throws IOException if the search failed
+     */
+    private static JSONArray parseDataApiSearch(int statusCode, String responseBody) throws IOException {
+        if (statusCode == 200) {
+            JSONObject json = new JSONObject(responseBody);
+            JSONArray items = json.getJSONArray("items");
+            JSONArray results = new JSONArray();
             
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
-                JSONArray items = json.getJSONArray("items");
-                JSONArray results = new JSONArray();
+            for (int i = 0; i < items.length(); i++) {
+                JSONObject item = items.getJSONObject(i);
+                JSONObject snippet = item.getJSONObject("snippet");
+                String videoId = item.getJSONObject("id").getString("videoId");
                 
-                for (int i = 0; i < items.length(); i++) {
-                    JSONObject item = items.getJSONObject(i);
-                    JSONObject snippet = item.getJSONObject("snippet");
-                    String videoId = item.getJSONObject("id").getString("videoId");
-                    
-                    JSONObject videoDetails = new JSONObject();
-                    videoDetails.put("videoId", videoId);
-                    videoDetails.put("title", snippet.getString("title"));
-                    videoDetails.put("author", snippet.getString("channelTitle"));
-                    
-                    // We don't have length information from search results, so use a placeholder
-                    videoDetails.put("lengthSeconds", 0);
-                    
-                    results.put(videoDetails);
-                }
+                JSONObject videoDetails = new JSONObject();
+                videoDetails.put("videoId", videoId);
+                videoDetails.put("title", snippet.getString("title"));
+                videoDetails.put("author", snippet.getString("channelTitle"));
                 
-                return results;
+                // We don't have length information from search results, so use a placeholder
+                videoDetails.put("lengthSeconds", 0);
+                
+                results.put(videoDetails);
             }
             
-            throw new IOException("Failed to search videos from Data API: " + responseBody);
+            return results;
         }
+        
+        throw new IOException("Failed to search videos from Data API: " + responseBody);
     }
 
-    /**
-     * Search for videos using YouTube InnerTube API.
-     *
-     * @param query Search query
-     * @return Search results as JSONArray
-     * @throws IOException if an error occurs during the API call
-     */
-    private JSONArray searchVideosFromInnertubeApi(String query) throws IOException {
+    private HttpUriRequest createInnertubeSearchRequest(String query) {
         String url = INNERTUBE_BASE_URL + "/search?key=" + INNERTUBE_API_KEY;
         
         HttpPost request = new HttpPost(url);
         request.addHeader("Content-Type", "application/json");
         
         // Add cookies if available
-        if (!cookies.isEmpty()) {
-            request.addHeader("Cookie", HttpUtils.formatCookies(cookies));
+        Map<String, String> sessionCookies = getSessionCookies();
+        if (!sessionCookies.isEmpty()) {
+            request.addHeader("Cookie", HttpUtils.formatCookies(sessionCookies));
         }
         
         // Create payload
@@ -536,150 +813,161 @@ public class YouTubeAuthManager {
         payload.put("query", query);
         payload.put("context", new JSONObject(innertubeContext));
         
-        request.setEntity(new StringEntity(payload.toString()));
+        request.setEntity(new StringEntity(payload.toString(), ContentType.APPLICATION_JSON));
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
+        return request;
+    }
+
+    /**
+     * Parse search results from an InnerTube search response.
+     *
+     * @param statusCode HTTP status code
+     * @param body Response body
+     * @return Search results as JSONArray
+     * @throws IOException if the search failed
+     */
+    private static JSONArray parseInnertubeSearch(int statusCode, InputStream body) throws IOException {
+        if (statusCode == 200) {
+            JSONArray results = new JSONArray();
             
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
-                JSONArray results = new JSONArray();
-                
-                try {
-                    JSONArray contents = json.getJSONObject("contents")
-                            .getJSONObject("twoColumnSearchResultsRenderer")
-                            .getJSONObject("primaryContents")
-                            .getJSONObject("sectionListRenderer")
-                            .getJSONArray("contents").getJSONObject(0)
-                            .getJSONObject("itemSectionRenderer")
-                            .getJSONArray("contents");
-                    
-                    for (int i = 0; i < contents.length(); i++) {
-                        JSONObject content = contents.getJSONObject(i);
-                        
-                        if (content.has("videoRenderer")) {
-                            JSONObject renderer = content.getJSONObject("videoRenderer");
-                            String videoId = renderer.getString("videoId");
-                            
-                            String videoTitle = "Unknown";
-                            try {
-                                videoTitle = renderer.getJSONObject("title").getJSONArray("runs")
-                                        .getJSONObject(0).getString("text");
-                            } catch (Exception e) {
-                                log.warn("Could not extract video title", e);
-                            }
-                            
-                            String videoAuthor = "Unknown";
-                            try {
-                                videoAuthor = renderer.getJSONObject("ownerText").getJSONArray("runs")
-                                        .getJSONObject(0).getString("text");
-                            } catch (Exception e) {
-                                log.warn("Could not extract video author", e);
-                            }
-                            
-                            long lengthSeconds = 0;
-                            try {
-                                if (renderer.has("lengthText")) {
-                                    String lengthText = renderer.getJSONObject("lengthText").getString("simpleText");
-                                    lengthSeconds = HttpUtils.timeTextToSeconds(lengthText);
-                                }
-                            } catch (Exception e) {
-                                log.warn("Could not extract video length", e);
-                            }
-                            
-                            JSONObject videoDetails = new JSONObject();
-                            videoDetails.put("videoId", videoId);
-                            videoDetails.put("title", videoTitle);
-                            videoDetails.put("author", videoAuthor);
-                            videoDetails.put("lengthSeconds", lengthSeconds);
-                            
-                            results.put(videoDetails);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.warn("Could not extract search results", e);
-                }
-                
-                return results;
+            for (InnertubeParser.Video video : InnertubeParser.parseSearch(body)) {
+                results.put(video.toJson());
             }
             
-            throw new IOException("Failed to search videos from InnerTube API: " + responseBody);
+            return results;
         }
+        
+        throw new IOException("Failed to search videos from InnerTube API (status " + statusCode + ")");
     }
 
     /**
-     * Get stream information for a YouTube video.
+     * Get stream information for a YouTube video, reusing a previously resolved stream URL
+     * while it is still valid.
      *
      * @param videoId YouTube video ID
-     * @return Map with stream information (url, contentType)
+     * @return Map with stream information (url, contentType, contentLength, itag)
      * @throws IOException if an error occurs during the API call
      */
     public Map<String, String> getStreamInfo(String videoId) throws IOException {
-        // Use InnerTube API to get stream information
-        String url = INNERTUBE_BASE_URL + "/player?key=" + INNERTUBE_API_KEY;
+        return getStreamInfo(videoId, 0);
+    }
+
+    /**
+     * Get stream information for a YouTube video, reusing a previously resolved stream URL
+     * while it is still valid.
+     *
+     * @param videoId YouTube video ID
+     * @param preferredItag Format to use if the video still has it, 0 to let the format policy choose
+     * @return Map with stream information (url, contentType, contentLength, itag)
+     * @throws IOException if an error occurs during the API call
+     */
+    public Map<String, String> getStreamInfo(String videoId, int preferredItag) throws IOException {
+        Map<String, String> cached = getCachedStreamInfo(videoId, preferredItag);
         
-        HttpPost request = new HttpPost(url);
-        request.addHeader("Content-Type", "application/json");
+        if (cached != null) {
+            log.debug("Using cached stream information for video {}", videoId);
+            return cached;
+        }
         
-        // Add cookies if available
-        if (!cookies.isEmpty()) {
-            request.addHeader("Cookie", HttpUtils.formatCookies(cookies));
+        Map<String, String> streamInfo = transport.executeStreaming(createPlayerRequest(videoId),
+                (status, body) -> parseStreamInfo(videoId, preferredItag, status, body));
+        streamInfoCache.put(videoId, streamInfo);
+        return streamInfo;
+    }
+
+    /**
+     * Get stream information for a YouTube video without blocking, reusing a previously resolved
+     * stream URL while it is still valid.
+     *
+     * @param videoId YouTube video ID
+     * @return Future of the stream information (url, contentType, contentLength, itag)
+     */
+    public CompletableFuture<Map<String, String>> getStreamInfoAsync(String videoId) {
+        return getStreamInfoAsync(videoId, 0);
+    }
+
+    /**
+     * Get stream information for a YouTube video without blocking, reusing a previously resolved
+     * stream URL while it is still valid.
+     *
+     * @param videoId YouTube video ID
+     * @param preferredItag Format to use if the video still has it, 0 to let the format policy choose
+     * @return Future of the stream information (url, contentType, contentLength, itag)
+     */
+    public CompletableFuture<Map<String, String>> getStreamInfoAsync(String videoId, int preferredItag) {
+        Map<String, String> cached = getCachedStreamInfo(videoId, preferredItag);
+        
+        if (cached != null) {
+            log.debug("Using cached stream information for video {}", videoId);
+            return CompletableFuture.completedFuture(cached);
         }
         
-        // Create payload
-        JSONObject payload = new JSONObject();
-        payload.put("videoId", videoId);
-        payload.put("context", new JSONObject(innertubeContext));
+        return withSessionAsync(() -> transport.executeStreamingAsync(createPlayerRequest(videoId),
+                        (status, body) -> parseStreamInfo(videoId, preferredItag, status, body)))
+                .thenApply(streamInfo -> {
+                    streamInfoCache.put(videoId, streamInfo);
+                    return streamInfo;
+                });
+    }
+
+    /**
+     * The cache holds one stream URL per video, so an entry of a different format than the preferred one
+     * is not used; the player response is fetched again to check whether the video still has that format.
+     *
+     * @return Cached stream information that fits the preferred format, or null
+     */
+    private Map<String, String> getCachedStreamInfo(String videoId, int preferredItag) {
+        Map<String, String> cached = streamInfoCache.get(videoId);
         
-        request.setEntity(new StringEntity(payload.toString()));
+        if (cached != null && preferredItag != 0 && !String.valueOf(preferredItag).equals(cached.get("itag"))) {
+            log.debug("Cached stream of video {} has format {}, not the preferred {}", videoId, cached.get("itag"), preferredItag);
+            return null;
+        }
         
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
+        return cached;
+    }
+
+    /**
+     * Forget the cached stream information of a video, so the next playback fetches a fresh URL.
+     *
+     * @param videoId YouTube video ID
+     */
+    public void invalidateStreamInfo(String videoId) {
+        streamInfoCache.invalidate(videoId);
+    }
+
+    /**
+     * Parse stream information from an InnerTube player response.
+     *
+     * @param videoId YouTube video ID
+     * @param preferredItag Format to use if the video still has it, 0 to let the format policy choose
+     * @param statusCode HTTP status code
+     * @param body Response body
+     * @return Map with stream information (url, contentType, contentLength, itag)
+     * @throws IOException if the response contains no usable stream
+     */
+    private Map<String, String> parseStreamInfo(String videoId, int preferredItag, int statusCode, InputStream body) throws IOException {
+        if (statusCode == 200) {
+            InnertubeParser.PlayerResponse player = InnertubeParser.parsePlayer(body);
+            StreamFormat format = formatPolicy.select(player.adaptiveFormats, player.formats, preferredItag);
             
-            if (response.getStatusLine().getStatusCode() == 200) {
-                JSONObject json = new JSONObject(responseBody);
-                
-                // Find an audio-only stream
-                if (json.has("streamingData")) {
-                    JSONObject streamingData = json.getJSONObject("streamingData");
-                    
-                    // First, try to find an audio-only adaptive format
-                    if (streamingData.has("adaptiveFormats")) {
-                        JSONArray adaptiveFormats = streamingData.getJSONArray("adaptiveFormats");
-                        
-                        for (int i = 0; i < adaptiveFormats.length(); i++) {
-                            JSONObject format = adaptiveFormats.getJSONObject(i);
-                            
-                            String mimeType = format.getString("mimeType");
-                            if (mimeType.startsWith("audio/")) {
-                                Map<String, String> result = new HashMap<>();
-                                result.put("url", format.getString("url"));
-                                result.put("contentType", mimeType);
-                                result.put("bitrate", String.valueOf(format.getInt("bitrate")));
-                                
-                                return result;
-                            }
-                        }
-                    }
-                    
-                    // If no audio-only format is found, use a regular format
-                    if (streamingData.has("formats")) {
-                        JSONArray formats = streamingData.getJSONArray("formats");
-                        
-                        if (formats.length() > 0) {
-                            JSONObject format = formats.getJSONObject(0);
-                            
-                            Map<String, String> result = new HashMap<>();
-                            result.put("url", format.getString("url"));
-                            result.put("contentType", format.getString("mimeType"));
-                            
-                            return result;
-                        }
-                    }
+            if (format != null) {
+                if (!format.isAudioOnly()) {
+                    log.debug("Video {} has no audio-only format, using muxed format {}", videoId, format.getItag());
                 }
+                
+                Map<String, String> result = new HashMap<>();
+                result.put("url", format.getUrl());
+                result.put("contentType", format.getMimeType());
+                result.put("itag", String.valueOf(format.getItag()));
+                result.put("bitrate", String.valueOf(format.getBitrate()));
+                result.put("contentLength", String.valueOf(format.getContentLength()));
+                result.put("durationMs", String.valueOf(format.getApproxDurationMs()));
+                
+                return result;
             }
-            
-            throw new IOException("Failed to get stream information for video " + videoId);
         }
+        
+        throw new IOException("Failed to get stream information for video " + videoId);
     }
 }
@@ -0,0 +1,97 @@
+package com.github.youtubeify.cache;
+
+/**
+ * Snapshot of the counters of a cache.
+ */
+public class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long rejectionCount;
+    private final long expirationCount;
+    private final long size;
+    private final long weight;
+
+    /**
+     * @param hitCount Number of lookups that found a value
+     * @param missCount Number of lookups that did not find a value
+     * @param evictionCount Number of entries removed to make room for new entries
+     * @param rejectionCount Number of new entries not stored because they were less popular than the entries they would replace
+     * @param expirationCount Number of entries removed because their TTL passed
+     * @param size Current number of entries
+     * @param weight Current total weight of the entries
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount, long rejectionCount, long expirationCount, long size, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.rejectionCount = rejectionCount;
+        this.expirationCount = expirationCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    /**
+     * @return Number of lookups that found a value
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return Number of lookups that did not find a value
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Number of entries removed to make room for new entries
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return Number of new entries not stored because they were less popular than the entries they would replace
+     */
+    public long getRejectionCount() {
+        return rejectionCount;
+    }
+
+    /**
+     * @return Number of entries removed because their TTL passed
+     */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * @return Current number of entries
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Current total weight of the entries
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return Ratio of lookups that found a value (0-1)
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, hitRate=%.3f, evictions=%d, rejections=%d, expirations=%d, size=%d, weight=%d",
+                hitCount, missCount, getHitRate(), evictionCount, rejectionCount, expirationCount, size, weight);
+    }
+}
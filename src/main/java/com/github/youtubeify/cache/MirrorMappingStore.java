@@ -0,0 +1,674 @@
+package com.github.youtubeify.cache;
+
+import com.github.youtubeify.util.ConfigUtils;
+import com.github.youtubeify.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store that maps Spotify track IDs to the YouTube video they were resolved to.
+ *
+ * The same recording is often published under many Spotify IDs, on singles, albums and compilations, which
+ * all share its ISRC. Mappings are therefore also stored under the ISRC of the track, so any other Spotify ID
+ * of the recording can reuse the match without searching again. ISRC records are keyed "isrc:CODE", which can
+ * not collide with the alphanumeric Spotify IDs.
+ *
+ * Mappings are kept in an append-only log file where every record carries a CRC, so a crash can at
+ * worst lose the records that were being written; a damaged tail is cut off when the log is opened.
+ * The memory index only holds a 64-bit key hash and the file offset of the latest record for each key,
+ * the record itself is read from the log on lookup. Superseded and long-expired records are removed by
+ * compaction, which rewrites the log in the background once enough of it is dead.
+ */
+public class MirrorMappingStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MirrorMappingStore.class);
+
+    private static final String LOG_FILE_NAME = "spotify-mirrors.log";
+    private static final String ISRC_KEY_PREFIX = "isrc:";
+    private static final int MAGIC = 0x59544d31; // "YTM1"
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_PAYLOAD_SIZE = 4096;
+    private static final int READ_BUFFER_SIZE = 256;
+    private static final long COMPACTION_MIN_DEAD_RECORDS = 10000;
+    private static final int EXPIRED_DROP_FACTOR = 4;
+
+    private final Path logPath;
+    private final long ttlMs;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private FileChannel channel;
+    private OffsetIndex index;
+    private long endPosition;
+    private long deadRecords;
+
+    private MirrorMappingStore(Path logPath, long ttlMs) {
+        this.logPath = logPath;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Open the store configured by the YOUTUBEIFY_DATA_DIR and YOUTUBEIFY_MAPPING_TTL_HOURS environment variables.
+     * Setting the data directory to "none" disables persistence.
+     *
+     * @return Mapping store, disabled if it could not be opened
+     */
+    public static MirrorMappingStore fromEnvironment() {
+        String dataDir = ConfigUtils.getString("YOUTUBEIFY_DATA_DIR", "youtubeify-data");
+        long ttlMs = TimeUnit.HOURS.toMillis(ConfigUtils.getLong("YOUTUBEIFY_MAPPING_TTL_HOURS", 168));
+
+        if (dataDir.equalsIgnoreCase("none")) {
+            log.info("Spotify mirror mapping store disabled");
+            return new MirrorMappingStore(null, ttlMs);
+        }
+
+        try {
+            return open(Paths.get(dataDir), ttlMs);
+        } catch (IOException e) {
+            log.error("Failed to open Spotify mirror mapping store in {}, continuing without it", dataDir, e);
+            return new MirrorMappingStore(null, ttlMs);
+        }
+    }
+
+    /**
+     * Open or create the store in the given directory.
+     *
+     * @param directory Directory of the log file
+     * @param ttlMs Time in milliseconds after which a mapping should be revalidated
+     * @return Mapping store
+     * @throws IOException if the log file could not be opened
+     */
+    public static MirrorMappingStore open(Path directory, long ttlMs) throws IOException {
+        Files.createDirectories(directory);
+
+        MirrorMappingStore store = new MirrorMappingStore(directory.resolve(LOG_FILE_NAME), ttlMs);
+        store.load();
+        return store;
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = new OffsetIndex(1024);
+
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+            header.flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            endPosition = HEADER_SIZE;
+            return;
+        }
+
+        long fileSize = channel.size();
+        long position = HEADER_SIZE;
+        long records = 0;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath), 65536))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a mirror mapping log: " + logPath);
+            }
+
+            while (position + 8 <= fileSize) {
+                int payloadSize = input.readInt();
+
+                if (payloadSize <= 0 || payloadSize > MAX_PAYLOAD_SIZE || position + 8 + payloadSize > fileSize) {
+                    break;
+                }
+
+                byte[] payload = new byte[payloadSize];
+                input.readFully(payload);
+
+                if (input.readInt() != checksum(payload)) {
+                    break;
+                }
+
+                String key = new DataInputStream(new ByteArrayInputStream(payload)).readUTF();
+
+                if (index.put(hash(key), position) >= 0) {
+                    deadRecords++;
+                }
+
+                position += 8 + payloadSize;
+                records++;
+            }
+        }
+
+        if (position < fileSize) {
+            log.warn("Discarding {} bytes of damaged records at the end of {}", fileSize - position, logPath);
+            channel.truncate(position);
+        }
+
+        endPosition = position;
+        log.info("Loaded {} Spotify mirror mappings from {} ({} records)", index.size(), logPath, records);
+
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * @return True if mappings are persisted
+     */
+    public boolean isEnabled() {
+        return logPath != null;
+    }
+
+    /**
+     * Look up the mapping of a Spotify track.
+     *
+     * @param spotifyId Spotify track ID
+     * @return Mapping, or null if the track has not been resolved before
+     */
+    public Mapping get(String spotifyId) {
+        return lookup(spotifyId);
+    }
+
+    /**
+     * Look up the mapping of a recording, which may have been resolved through any of its Spotify IDs.
+     *
+     * @param isrc International Standard Recording Code
+     * @return Mapping, or null if no track with this ISRC has been resolved before
+     */
+    public Mapping getByIsrc(String isrc) {
+        return lookup(ISRC_KEY_PREFIX + isrc);
+    }
+
+    private Mapping lookup(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        lock.readLock().lock();
+
+        try {
+            long offset = index.get(hash(key));
+
+            if (offset < 0) {
+                return null;
+            }
+
+            Mapping mapping = readRecord(channel, offset);
+            return mapping != null && mapping.key.equals(key) ? mapping : null;
+        } catch (IOException e) {
+            log.warn("Failed to read mirror mapping for {}", key, e);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Store or refresh the mapping of a Spotify track.
+     *
+     * @param spotifyId Spotify track ID
+     * @param videoId YouTube video ID
+     * @param durationMs Duration of the video in milliseconds
+     */
+    public void put(String spotifyId, String videoId, long durationMs) {
+        put(spotifyId, null, videoId, durationMs);
+    }
+
+    /**
+     * Store or refresh the mapping of a Spotify track and of its recording.
+     *
+     * @param spotifyId Spotify track ID
+     * @param isrc International Standard Recording Code of the track, null if unknown
+     * @param videoId YouTube video ID
+     * @param durationMs Duration of the video in milliseconds
+     */
+    public void put(String spotifyId, String isrc, String videoId, long durationMs) {
+        long now = System.currentTimeMillis();
+
+        append(new Mapping(spotifyId, videoId, durationMs, now));
+
+        if (isrc != null) {
+            append(new Mapping(ISRC_KEY_PREFIX + isrc, videoId, durationMs, now));
+        }
+
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Store a mapping that was found under the ISRC of a Spotify track for the track itself, so lookups that
+     * only know the Spotify ID find it too. The original resolution time is kept, so the mapping is not
+     * considered fresher than it is.
+     *
+     * @param spotifyId Spotify track ID
+     * @param mapping Mapping of the recording
+     */
+    public void link(String spotifyId, Mapping mapping) {
+        append(new Mapping(spotifyId, mapping.videoId, mapping.durationMs, mapping.resolvedAt));
+        scheduleCompactionIfNeeded();
+    }
+
+    private void append(Mapping mapping) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        byte[] record;
+
+        try {
+            record = encodeRecord(mapping);
+        } catch (IOException e) {
+            log.warn("Failed to encode mirror mapping for {}", mapping.key, e);
+            return;
+        }
+
+        lock.writeLock().lock();
+
+        try {
+            channel.write(ByteBuffer.wrap(record), endPosition);
+
+            if (index.put(hash(mapping.key), endPosition) >= 0) {
+                deadRecords++;
+            }
+
+            endPosition += record.length;
+        } catch (IOException e) {
+            log.warn("Failed to store mirror mapping for {}", mapping.key, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of stored mappings
+     */
+    public int size() {
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        lock.readLock().lock();
+
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        boolean needed;
+
+        lock.readLock().lock();
+
+        try {
+            needed = deadRecords >= COMPACTION_MIN_DEAD_RECORDS && deadRecords > index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (needed && compacting.compareAndSet(false, true)) {
+            new NamedThreadFactory("youtubeify-mapping-compactor").newThread(() -> {
+                try {
+                    compact();
+                } finally {
+                    compacting.set(false);
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Rewrite the log so it only contains the latest record of every mapping, dropping mappings that have
+     * not been revalidated for several TTL periods. Lookups and writes continue while the bulk of the log
+     * is copied; only records written during the copy are transferred under the write lock.
+     */
+    public void compact() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Path compactPath = logPath.resolveSibling(LOG_FILE_NAME + ".compact");
+        long dropBefore = System.currentTimeMillis() - EXPIRED_DROP_FACTOR * ttlMs;
+        OffsetIndex snapshot;
+        long snapshotEnd;
+        FileChannel source;
+
+        lock.readLock().lock();
+
+        try {
+            snapshot = index.copy();
+            snapshotEnd = endPosition;
+            source = channel;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try (FileChannel target = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            OffsetIndex compactIndex = new OffsetIndex(snapshot.size());
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+            header.flip();
+            target.write(header, 0);
+
+            long position = HEADER_SIZE;
+
+            for (int i = 0; i < snapshot.capacity(); i++) {
+                long offset = snapshot.offsetAt(i);
+
+                if (offset >= 0) {
+                    Mapping mapping = readRecord(source, offset);
+
+                    if (mapping != null && mapping.resolvedAt >= dropBefore) {
+                        position = copyRecord(mapping, target, position, compactIndex);
+                    }
+                }
+            }
+
+            lock.writeLock().lock();
+
+            try {
+                long superseded = 0;
+
+                // Transfer the records written since the snapshot was taken
+                for (int i = 0; i < index.capacity(); i++) {
+                    long offset = index.offsetAt(i);
+
+                    if (offset >= snapshotEnd) {
+                        Mapping mapping = readRecord(channel, offset);
+
+                        if (mapping != null) {
+                            // A key rewritten during the copy leaves its snapshot record dead in the new log
+                            if (compactIndex.get(hash(mapping.key)) >= 0) {
+                                superseded++;
+                            }
+
+                            position = copyRecord(mapping, target, position, compactIndex);
+                        }
+                    }
+                }
+
+                target.force(true);
+                target.close();
+
+                // Windows can not replace a file that is still open, so the log is closed for the move
+                long before = endPosition;
+                channel.close();
+
+                try {
+                    Files.move(compactPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    // Either the compacted log or, if the move failed, the old one
+                    channel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+
+                index = compactIndex;
+                endPosition = position;
+                deadRecords = superseded;
+
+                log.info("Compacted Spotify mirror mappings from {} to {} bytes ({} mappings)", before, position, index.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            log.error("Failed to compact Spotify mirror mappings", e);
+
+            try {
+                Files.deleteIfExists(compactPath);
+            } catch (IOException ignored) {
+                // Will be truncated by the next compaction
+            }
+        }
+    }
+
+    private long copyRecord(Mapping mapping, FileChannel target, long position, OffsetIndex targetIndex) throws IOException {
+        byte[] record = encodeRecord(mapping);
+        target.write(ByteBuffer.wrap(record), position);
+        targetIndex.put(hash(mapping.key), position);
+        return position + record.length;
+    }
+
+    @Override
+    public void close() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close Spotify mirror mapping store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private byte[] encodeRecord(Mapping mapping) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeUTF(mapping.key);
+        payload.writeUTF(mapping.videoId);
+        payload.writeLong(mapping.durationMs);
+        payload.writeLong(mapping.resolvedAt);
+
+        byte[] payloadArray = payloadBytes.toByteArray();
+
+        ByteBuffer record = ByteBuffer.allocate(payloadArray.length + 8);
+        record.putInt(payloadArray.length);
+        record.put(payloadArray);
+        record.putInt(checksum(payloadArray));
+        return record.array();
+    }
+
+    private Mapping readRecord(FileChannel source, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        source.read(buffer, offset);
+        buffer.flip();
+
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+
+        int payloadSize = buffer.getInt();
+
+        if (payloadSize <= 0 || payloadSize > MAX_PAYLOAD_SIZE) {
+            return null;
+        }
+
+        if (buffer.remaining() < payloadSize + 4) {
+            buffer = ByteBuffer.allocate(payloadSize + 4);
+            source.read(buffer, offset + 4);
+            buffer.flip();
+
+            if (buffer.remaining() < payloadSize + 4) {
+                return null;
+            }
+        }
+
+        byte[] payload = new byte[payloadSize];
+        buffer.get(payload);
+
+        if (buffer.getInt() != checksum(payload)) {
+            return null;
+        }
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        return new Mapping(input.readUTF(), input.readUTF(), input.readLong(), input.readLong());
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static long hash(String key) {
+        long hash = 1125899906842597L;
+
+        for (int i = 0; i < key.length(); i++) {
+            hash = 31 * hash + key.charAt(i);
+        }
+
+        // Finalizer of MurmurHash3 to spread the bits over the whole table
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * A resolved Spotify to YouTube mapping.
+     */
+    public class Mapping {
+
+        /** Spotify track ID, or the prefixed ISRC for mappings of a recording */
+        private final String key;
+        private final String videoId;
+        private final long durationMs;
+        private final long resolvedAt;
+
+        private Mapping(String key, String videoId, long durationMs, long resolvedAt) {
+            this.key = key;
+            this.videoId = videoId;
+            this.durationMs = durationMs;
+            this.resolvedAt = resolvedAt;
+        }
+
+        /**
+         * @return YouTube video ID
+         */
+        public String getVideoId() {
+            return videoId;
+        }
+
+        /**
+         * @return Duration of the video in milliseconds
+         */
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        /**
+         * @return Time the mapping was last resolved, in epoch milliseconds
+         */
+        public long getResolvedAt() {
+            return resolvedAt;
+        }
+
+        /**
+         * @return True if the mapping is older than the TTL and should be revalidated
+         */
+        public boolean isStale() {
+            return System.currentTimeMillis() - resolvedAt > ttlMs;
+        }
+    }
+
+    /**
+     * Open-addressing hash table from 64-bit key hashes to record offsets.
+     */
+    private static class OffsetIndex {
+
+        private long[] hashes;
+        private long[] offsets;
+        private int size;
+
+        private OffsetIndex(int expectedSize) {
+            int capacity = 16;
+
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+
+            hashes = new long[capacity];
+            offsets = new long[capacity];
+        }
+
+        private OffsetIndex(OffsetIndex other) {
+            hashes = other.hashes.clone();
+            offsets = other.offsets.clone();
+            size = other.size;
+        }
+
+        private long get(long hash) {
+            int mask = hashes.length - 1;
+
+            for (int slot = (int) hash & mask; hashes[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash) {
+                    return offsets[slot];
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * @return Previous offset of the key, or -1 if it was not present
+         */
+        private long put(long hash, long offset) {
+            if ((size + 1) * 3L > hashes.length * 2L) {
+                resize();
+            }
+
+            int mask = hashes.length - 1;
+            int slot = (int) hash & mask;
+
+            while (hashes[slot] != 0) {
+                if (hashes[slot] == hash) {
+                    long previous = offsets[slot];
+                    offsets[slot] = offset;
+                    return previous;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            hashes[slot] = hash;
+            offsets[slot] = offset;
+            size++;
+            return -1;
+        }
+
+        private void resize() {
+            long[] oldHashes = hashes;
+            long[] oldOffsets = offsets;
+
+            hashes = new long[oldHashes.length * 2];
+            offsets = new long[oldOffsets.length * 2];
+            size = 0;
+
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    put(oldHashes[i], oldOffsets[i]);
+                }
+            }
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int capacity() {
+            return hashes.length;
+        }
+
+        private long offsetAt(int slot) {
+            return hashes[slot] != 0 ? offsets[slot] : -1;
+        }
+
+        private OffsetIndex copy() {
+            return new OffsetIndex(this);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.youtubeify.cache;
+
+import com.github.youtubeify.util.FutureUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collapses concurrent calls for the same key into a single execution.
+ *
+ * The first caller for a key runs the loader on its own thread; callers arriving while it is running
+ * wait for it and receive the same result or exception. The key is forgotten as soon as the loader
+ * finishes, so only calls that are in progress occupy memory, and the number of tracked calls is capped:
+ * beyond the cap, calls simply run without being shared. An asynchronous caller may join a blocking leader,
+ * but a blocking caller only waits for another blocking call: an asynchronous loader may fail with any
+ * exception, which could not be rethrown as the exception type declared by the blocking loader.
+ *
+ * @param <K> Key type
+ * @param <V> Result type
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, CompletableFuture<V>> asyncInFlight = new ConcurrentHashMap<>();
+    private final int maxInFlight;
+
+    public SingleFlight() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxInFlight Maximum number of calls tracked at the same time
+     */
+    public SingleFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Run the loader, or wait for an identical call that is already in progress.
+     *
+     * @param key Key identifying identical calls
+     * @param loader Loader producing the result
+     * @param <E> Exception type thrown by the loader
+     * @return Result of the loader
+     * @throws E if the loader failed
+     */
+    public <E extends Exception> V execute(K key, Loader<V, E> loader) throws E {
+        return execute(key, loader, null);
+    }
+
+    /**
+     * Run the loader, or wait for an identical call that is already in progress. Callers that waited
+     * receive a copy of the result made by the given function, for results that must not be shared.
+     *
+     * @param key Key identifying identical calls
+     * @param loader Loader producing the result
+     * @param followerCopy Function that copies the result for waiting callers, or null to share it
+     * @param <E> Exception type thrown by the loader
+     * @return Result of the loader
+     * @throws E if the loader failed
+     */
+    public <E extends Exception> V execute(K key, Loader<V, E> loader, UnaryOperator<V> followerCopy) throws E {
+        CompletableFuture<V> existing = inFlight.get(key);
+
+        if (existing == null && size() >= maxInFlight) {
+            return loader.load();
+        }
+
+        CompletableFuture<V> created = new CompletableFuture<>();
+
+        if (existing == null) {
+            existing = inFlight.putIfAbsent(key, created);
+        }
+
+        if (existing != null) {
+            V result = await(existing);
+            return followerCopy != null && result != null ? followerCopy.apply(result) : result;
+        }
+
+        try {
+            V result = loader.load();
+            created.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * Start the asynchronous loader, or join an identical call that is already in progress.
+     *
+     * @param key Key identifying identical calls
+     * @param loader Starts the asynchronous call
+     * @return Future of the result
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> existing = inFlight.get(key);
+
+        if (existing == null) {
+            existing = asyncInFlight.get(key);
+        }
+
+        if (existing == null && size() >= maxInFlight) {
+            return loader.get();
+        }
+
+        CompletableFuture<V> created = new CompletableFuture<>();
+
+        if (existing == null) {
+            existing = asyncInFlight.putIfAbsent(key, created);
+        }
+
+        if (existing != null) {
+            // A dependent future, so callers cannot complete the shared one
+            return existing.thenApply(Function.identity());
+        }
+
+        CompletableFuture<V> loading;
+
+        try {
+            loading = loader.get();
+        } catch (RuntimeException | Error e) {
+            asyncInFlight.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+
+        loading.whenComplete((result, error) -> {
+            asyncInFlight.remove(key, created);
+
+            if (error != null) {
+                created.completeExceptionally(FutureUtils.unwrap(error));
+            } else {
+                created.complete(result);
+            }
+        });
+
+        return created.thenApply(Function.identity());
+    }
+
+    /**
+     * @return Number of calls currently in progress
+     */
+    public int size() {
+        return inFlight.size() + asyncInFlight.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> V await(CompletableFuture<V> future) throws E {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            // Only blocking leaders are awaited here, so the cause is an exception their loader declared
+            throw (E) cause;
+        }
+    }
+
+    /**
+     * Producer of a result that may throw a checked exception.
+     *
+     * @param <V> Result type
+     * @param <E> Exception type
+     */
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+
+        /**
+         * @return Result
+         * @throws E if loading failed
+         */
+        V load() throws E;
+    }
+}
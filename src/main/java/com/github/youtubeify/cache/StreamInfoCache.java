@@ -0,0 +1,148 @@
+package com.github.youtubeify.cache;
+
+import com.github.youtubeify.util.HttpUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of resolved stream information keyed by video ID.
+ *
+ * Stream URLs carry an "expire" query parameter with the epoch second after which they stop working.
+ * An entry is dropped early enough that a track started from it can still be played to the end:
+ * its lifetime is the URL expiry minus the stream duration minus a safety margin.
+ */
+public class StreamInfoCache {
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long safetyMarginMs;
+    private final long defaultTtlMs;
+
+    /**
+     * @param maxEntries Maximum number of cached videos
+     * @param safetyMarginMs Time in milliseconds before the usable expiry at which entries are dropped
+     * @param defaultTtlMs Lifetime in milliseconds of entries whose URL has no expiry parameter
+     */
+    public StreamInfoCache(int maxEntries, long safetyMarginMs, long defaultTtlMs) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.safetyMarginMs = safetyMarginMs;
+        this.defaultTtlMs = defaultTtlMs;
+    }
+
+    /**
+     * Look up the stream information of a video.
+     *
+     * @param videoId YouTube video ID
+     * @return Stream information, or null if absent or about to expire
+     */
+    public Map<String, String> get(String videoId) {
+        Entry entry = entries.get(videoId);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (System.currentTimeMillis() >= entry.expiresAt) {
+            entries.remove(videoId, entry);
+            return null;
+        }
+
+        return entry.streamInfo;
+    }
+
+    /**
+     * Store the stream information of a video, unless its URL is already too close to expiry.
+     *
+     * @param videoId YouTube video ID
+     * @param streamInfo Stream information with at least a "url" key
+     */
+    public void put(String videoId, Map<String, String> streamInfo) {
+        long now = System.currentTimeMillis();
+        long expiresAt = computeExpiry(streamInfo, now);
+
+        if (expiresAt <= now) {
+            return;
+        }
+
+        entries.put(videoId, new Entry(Collections.unmodifiableMap(new HashMap<>(streamInfo)), expiresAt));
+
+        if (entries.size() > maxEntries) {
+            trim(now);
+        }
+    }
+
+    /**
+     * Drop the stream information of a video, for example after its URL was rejected.
+     *
+     * @param videoId YouTube video ID
+     */
+    public void invalidate(String videoId) {
+        entries.remove(videoId);
+    }
+
+    /**
+     * @return Number of cached videos
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private long computeExpiry(Map<String, String> streamInfo, long now) {
+        String url = streamInfo.get("url");
+        String expire = url != null ? HttpUtils.getQueryParameter(url, "expire") : null;
+        long urlExpiry;
+
+        try {
+            urlExpiry = expire != null ? Long.parseLong(expire) * 1000 : now + defaultTtlMs;
+        } catch (NumberFormatException e) {
+            urlExpiry = now + defaultTtlMs;
+        }
+
+        long durationMs = 0;
+
+        try {
+            durationMs = Long.parseLong(streamInfo.getOrDefault("durationMs", "0"));
+        } catch (NumberFormatException ignored) {
+            // Unknown duration, only the safety margin applies
+        }
+
+        return urlExpiry - durationMs - safetyMarginMs;
+    }
+
+    private void trim(long now) {
+        entries.values().removeIf(entry -> now >= entry.expiresAt);
+
+        // Still too many live entries, drop the ones closest to expiry first
+        while (entries.size() > maxEntries) {
+            String soonest = null;
+            long soonestExpiry = Long.MAX_VALUE;
+
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (candidate.getValue().expiresAt < soonestExpiry) {
+                    soonest = candidate.getKey();
+                    soonestExpiry = candidate.getValue().expiresAt;
+                }
+            }
+
+            if (soonest == null) {
+                return;
+            }
+
+            entries.remove(soonest);
+        }
+    }
+
+    private static class Entry {
+
+        private final Map<String, String> streamInfo;
+        private final long expiresAt;
+
+        private Entry(Map<String, String> streamInfo, long expiresAt) {
+            this.streamInfo = streamInfo;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.github.youtubeify.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Size-bounded in-memory cache with a frequency-aware admission policy (W-TinyLFU).
+ *
+ * New entries first go into a small LRU window. When the window overflows, its oldest entry only
+ * replaces the oldest entry of the main segment if it has been requested more often recently, which
+ * keeps popular keys cached when a burst of one-off keys passes through. Admission is decided before anything
+ * is evicted: if any of the entries that would have to make room is at least as popular, the candidate is
+ * dropped and the main segment is left as it was. Access frequencies are
+ * estimated with a count-min sketch that is halved periodically so old popularity fades.
+ * Entries are sized by a weigher and every entry has its own TTL.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final int WINDOW_PERCENT = 1;
+
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long defaultTtlMs;
+    private final ToIntBiFunction<K, V> weigher;
+    private final FrequencySketch sketch;
+
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowWeight;
+    private long mainWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxWeight Maximum total weight of all entries
+     * @param expectedEntries Expected number of entries, used to size the frequency sketch
+     * @param defaultTtlMs TTL in milliseconds of entries stored without an explicit TTL
+     * @param weigher Function that computes the weight of an entry
+     */
+    public TinyLfuCache(long maxWeight, int expectedEntries, long defaultTtlMs, ToIntBiFunction<K, V> weigher) {
+        this.maxWeight = Math.max(1, maxWeight);
+        this.windowMaxWeight = Math.max(1, this.maxWeight * WINDOW_PERCENT / 100);
+        this.defaultTtlMs = defaultTtlMs;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(Math.max(16, expectedEntries));
+    }
+
+    /**
+     * Look up a value.
+     *
+     * @param key Key
+     * @return Cached value, or null if it is absent or expired
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key);
+
+        Entry<V> entry = window.get(key);
+        boolean inWindow = entry != null;
+
+        if (!inWindow) {
+            entry = main.get(key);
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (entry.isExpired(System.currentTimeMillis())) {
+            removeEntry(key, inWindow);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Store a value with the default TTL.
+     *
+     * @param key Key
+     * @param value Value
+     */
+    public void put(K key, V value) {
+        put(key, value, defaultTtlMs);
+    }
+
+    /**
+     * Store a value.
+     *
+     * @param key Key
+     * @param value Value
+     * @param ttlMs Time in milliseconds after which the value expires
+     */
+    public synchronized void put(K key, V value, long ttlMs) {
+        int weight = Math.max(1, weigher.applyAsInt(key, value));
+
+        invalidateEntry(key);
+
+        if (weight > maxWeight - windowMaxWeight) {
+            // Could never be admitted to the main segment
+            rejections.increment();
+            return;
+        }
+
+        window.put(key, new Entry<>(value, weight, System.currentTimeMillis() + ttlMs));
+        windowWeight += weight;
+
+        while (windowWeight > windowMaxWeight && !window.isEmpty()) {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = window.entrySet().iterator();
+            Map.Entry<K, Entry<V>> candidate = iterator.next();
+            iterator.remove();
+            windowWeight -= candidate.getValue().weight;
+
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    /**
+     * Remove a value.
+     *
+     * @param key Key
+     */
+    public synchronized void invalidate(K key) {
+        invalidateEntry(key);
+    }
+
+    /**
+     * Remove all values.
+     */
+    public synchronized void invalidateAll() {
+        window.clear();
+        main.clear();
+        windowWeight = 0;
+        mainWeight = 0;
+    }
+
+    /**
+     * @return Snapshot of the cache counters
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(
+                hits.sum(),
+                misses.sum(),
+                evictions.sum(),
+                rejections.sum(),
+                expirations.sum(),
+                window.size() + main.size(),
+                windowWeight + mainWeight
+        );
+    }
+
+    private void admit(K key, Entry<V> candidate) {
+        long mainMaxWeight = maxWeight - windowMaxWeight;
+        long now = System.currentTimeMillis();
+
+        if (candidate.isExpired(now)) {
+            expirations.increment();
+            return;
+        }
+
+        int candidateFrequency = sketch.frequency(key);
+        Iterator<Map.Entry<K, Entry<V>>> iterator = main.entrySet().iterator();
+        List<K> victims = new ArrayList<>();
+        long freedWeight = 0;
+
+        // Pick the entries that make room first, nothing live is removed unless the candidate is admitted
+        while (mainWeight - freedWeight + candidate.weight > mainMaxWeight && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> victim = iterator.next();
+
+            if (victim.getValue().isExpired(now)) {
+                // Expired entries go either way
+                iterator.remove();
+                mainWeight -= victim.getValue().weight;
+                expirations.increment();
+            } else if (sketch.frequency(victim.getKey()) < candidateFrequency) {
+                victims.add(victim.getKey());
+                freedWeight += victim.getValue().weight;
+            } else {
+                // The candidate is not more popular than what it would replace
+                rejections.increment();
+                return;
+            }
+        }
+
+        for (K victim : victims) {
+            mainWeight -= main.remove(victim).weight;
+            evictions.increment();
+        }
+
+        main.put(key, candidate);
+        mainWeight += candidate.weight;
+    }
+
+    private void invalidateEntry(K key) {
+        if (window.containsKey(key)) {
+            removeEntry(key, true);
+        } else if (main.containsKey(key)) {
+            removeEntry(key, false);
+        }
+    }
+
+    private void removeEntry(K key, boolean inWindow) {
+        if (inWindow) {
+            windowWeight -= window.remove(key).weight;
+        } else {
+            mainWeight -= main.remove(key).weight;
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final int weight;
+        private final long expiresAt;
+
+        private Entry(V value, int weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * Count-min sketch with four rows of saturating 4-bit counters. Once the number of recorded accesses
+     * reaches ten times the width, all counters are halved.
+     */
+    private static class FrequencySketch {
+
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final long[] SEEDS = {
+                0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L
+        };
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int expectedEntries) {
+            int width = 16;
+
+            while (width < expectedEntries) {
+                width <<= 1;
+            }
+
+            this.counters = new byte[ROWS][width];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        private void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+
+            for (int row = 0; row < ROWS; row++) {
+                int slot = index(hash, row);
+
+                if (counters[row][slot] < MAX_COUNT) {
+                    counters[row][slot]++;
+                    added = true;
+                }
+            }
+
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+
+            for (int row = 0; row < ROWS; row++) {
+                frequency = Math.min(frequency, counters[row][index(hash, row)]);
+            }
+
+            return frequency;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+
+            additions /= 2;
+        }
+
+        private int index(int hash, int row) {
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+            return (int) (mixed >>> 32) & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x45d9f3b;
+            hash ^= hash >>> 16;
+            return hash;
+        }
+    }
+}
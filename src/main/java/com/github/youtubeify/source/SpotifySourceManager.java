@@ -1,14 +1,20 @@
 package com.github.youtubeify.source;
 
 import com.github.youtubeify.auth.SpotifyAuthManager;
+import com.github.youtubeify.cache.MirrorMappingStore;
+import com.github.youtubeify.cache.SingleFlight;
 import com.github.youtubeify.source.spotify.SpotifyAudioSourceManager;
 import com.github.youtubeify.source.spotify.SpotifyAudioTrack;
 import com.github.youtubeify.source.spotify.SpotifyAudioTrackInfo;
+import com.github.youtubeify.source.youtube.YouTubeAudioTrack;
+import com.github.youtubeify.util.CandidateRanker;
+import com.github.youtubeify.util.ConfigUtils;
+import com.github.youtubeify.util.HttpTransport;
+import com.github.youtubeify.util.ResolutionEngine;
 import com.github.youtubeify.util.TrackUtils;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
-import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpConfigurable;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterfaceManager;
@@ -24,7 +30,10 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Matcher;
@@ -39,21 +48,54 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
 
     private static final Logger log = LoggerFactory.getLogger(SpotifySourceManager.class);
 
+    private static final int MAX_COALESCED_LOADS = 1024;
+    private static final int ALBUM_PAGE_SIZE = 50;
+    private static final int PLAYLIST_PAGE_SIZE = 100;
+    private static final int DEFAULT_MAX_TRACKS = 10000;
+    private static final double DEFAULT_MATCH_THRESHOLD = 0.7;
+    /** Starts versioned encodings; the original encoding starts with the Spotify ID, which never contains it */
+    private static final String ENCODING_VERSION_PREFIX = "#";
+    private static final int ENCODING_VERSION = 3;
+
     private static final Pattern TRACK_PATTERN = Pattern.compile("^(?:https?://)?(?:open\\.)?spotify\\.com/track/([a-zA-Z0-9]+)(?:\\?.*)?$");
     private static final Pattern ALBUM_PATTERN = Pattern.compile("^(?:https?://)?(?:open\\.)?spotify\\.com/album/([a-zA-Z0-9]+)(?:\\?.*)?$");
     private static final Pattern PLAYLIST_PATTERN = Pattern.compile("^(?:https?://)?(?:open\\.)?spotify\\.com/playlist/([a-zA-Z0-9]+)(?:\\?.*)?$");
     private static final Pattern ARTIST_PATTERN = Pattern.compile("^(?:https?://)?(?:open\\.)?spotify\\.com/artist/([a-zA-Z0-9]+)(?:\\?.*)?$");
+    private static final Pattern ISRC_PATTERN = Pattern.compile("^[A-Z]{2}[A-Z0-9]{3}[0-9]{7}$");
 
     private final SpotifyAudioSourceManager internalSourceManager;
+    private final HttpTransport transport;
     private final HttpInterfaceManager httpInterfaceManager;
     private final SpotifyAuthManager authManager;
     private final YouTubeSourceManager youtubeSourceManager;
+    private final ResolutionEngine resolutionEngine;
+    private final boolean lazyResolution;
+    private final MirrorMappingStore mappingStore;
+    private final SingleFlight<String, AudioItem> loadFlight;
+    private final int maxTracks;
+    private final CandidateRanker candidateRanker;
 
-    public SpotifySourceManager() {
-        this.internalSourceManager = new SpotifyAudioSourceManager();
-        this.httpInterfaceManager = HttpClientTools.createDefaultThreadLocalManager();
-        this.authManager = new SpotifyAuthManager();
-        this.youtubeSourceManager = new YouTubeSourceManager(); // For resolving Spotify tracks to YouTube
+    /**
+     * @param transport Shared HTTP transport
+     * @param authManager Shared manager for Spotify API calls
+     * @param youtubeSourceManager Registered YouTube source manager, used for resolving Spotify tracks to YouTube
+     * @param resolutionEngine Engine running resolution work, shut down with this source manager
+     * @param mappingStore Store of resolved matches, closed with this source manager
+     */
+    public SpotifySourceManager(HttpTransport transport, SpotifyAuthManager authManager,
+                                YouTubeSourceManager youtubeSourceManager, ResolutionEngine resolutionEngine,
+                                MirrorMappingStore mappingStore) {
+        this.internalSourceManager = new SpotifyAudioSourceManager(transport, authManager);
+        this.transport = transport;
+        this.httpInterfaceManager = transport.getInterfaceManager();
+        this.authManager = authManager;
+        this.youtubeSourceManager = youtubeSourceManager;
+        this.resolutionEngine = resolutionEngine;
+        this.lazyResolution = ConfigUtils.getBoolean("YOUTUBEIFY_LAZY_RESOLVE", false);
+        this.mappingStore = mappingStore;
+        this.loadFlight = new SingleFlight<>(MAX_COALESCED_LOADS);
+        this.maxTracks = ConfigUtils.getInt("YOUTUBEIFY_SPOTIFY_MAX_TRACKS", DEFAULT_MAX_TRACKS);
+        this.candidateRanker = new CandidateRanker(ConfigUtils.getDouble("YOUTUBEIFY_MATCH_THRESHOLD", DEFAULT_MATCH_THRESHOLD));
         
         log.info("Spotify source manager initialized");
     }
@@ -65,6 +107,11 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
 
     @Override
     public AudioItem loadItem(AudioPlayerManager manager, AudioReference reference) {
+        // Concurrent loads of the same identifier share one resolution
+        return loadFlight.execute(reference.identifier, () -> loadItemDirect(reference), TrackUtils::copyAudioItem);
+    }
+
+    private AudioItem loadItemDirect(AudioReference reference) {
         String identifier = reference.identifier;
 
         Matcher trackMatcher = TRACK_PATTERN.matcher(identifier);
@@ -101,32 +148,20 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
             SpotifyAudioTrackInfo trackInfo = extractTrackInfo(trackObj);
             
             // Convert Spotify track to YouTube track for playback
-            String searchQuery = trackInfo.getArtist() + " - " + trackInfo.getTitle();
-            AudioItem youtubeTrack = resolveToYouTubeTrack(searchQuery);
+            AudioTrack track = createTrack(trackInfo);
             
-            if (youtubeTrack instanceof AudioTrack) {
-                AudioTrackInfo ytTrackInfo = ((AudioTrack) youtubeTrack).getInfo();
-                
-                // Create a new SpotifyAudioTrack with the YouTube track for actual playback
-                return new SpotifyAudioTrack(
-                        new AudioTrackInfo(
-                                trackInfo.getTitle(),
-                                trackInfo.getArtist(),
-                                ytTrackInfo.length,
-                                trackInfo.getIdentifier(),
-                                false,
-                                trackInfo.getUri()
-                        ),
-                        (AudioTrack) youtubeTrack,
-                        this
-                );
-            } else {
+            if (track == null) {
                 throw new FriendlyException(
                         "Could not find a YouTube match for Spotify track: " + trackInfo.getTitle(),
                         Severity.COMMON,
                         null
                 );
             }
+            
+            // A single track is most likely played right away, so start resolving it already
+            warmFirstTrack(Collections.singletonList(track));
+            
+            return track;
         } catch (IOException e) {
             throw new FriendlyException("Error loading Spotify track", Severity.FAULT, e);
         }
@@ -143,36 +178,14 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
             String albumName = albumObj.getString("name");
             String albumArtist = TrackUtils.getMainArtistName(albumObj.getJSONArray("artists"));
             
-            JSONArray tracks = albumObj.getJSONObject("tracks").getJSONArray("items");
-            List<AudioTrack> trackList = new ArrayList<>();
-            
-            for (int i = 0; i < tracks.length(); i++) {
-                JSONObject trackObj = tracks.getJSONObject(i);
-                SpotifyAudioTrackInfo trackInfo = extractTrackInfo(trackObj);
-                
-                // Resolve each track to YouTube
-                String searchQuery = trackInfo.getArtist() + " - " + trackInfo.getTitle();
-                AudioItem youtubeTrack = resolveToYouTubeTrack(searchQuery);
-                
-                if (youtubeTrack instanceof AudioTrack) {
-                    AudioTrackInfo ytTrackInfo = ((AudioTrack) youtubeTrack).getInfo();
-                    
-                    trackList.add(new SpotifyAudioTrack(
-                            new AudioTrackInfo(
-                                    trackInfo.getTitle(),
-                                    trackInfo.getArtist(),
-                                    ytTrackInfo.length,
-                                    trackInfo.getIdentifier(),
-                                    false,
-                                    trackInfo.getUri()
-                            ),
-                            (AudioTrack) youtubeTrack,
-                            this
-                    ));
-                }
-            }
+            List<AudioTrack> tracks = createTracksFromPages(
+                    albumObj.getJSONObject("tracks"),
+                    ALBUM_PAGE_SIZE,
+                    offset -> authManager.getAlbumTracks(albumId, offset, ALBUM_PAGE_SIZE),
+                    item -> item
+            );
             
-            return new BasicAudioPlaylist(albumName + " - " + albumArtist, trackList, null, false);
+            return new BasicAudioPlaylist(albumName + " - " + albumArtist, tracks, null, false);
         } catch (IOException e) {
             throw new FriendlyException("Error loading Spotify album", Severity.FAULT, e);
         }
@@ -187,36 +200,15 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
             }
             
             String playlistName = playlistObj.getString("name");
-            JSONArray tracks = playlistObj.getJSONObject("tracks").getJSONArray("items");
-            List<AudioTrack> trackList = new ArrayList<>();
             
-            for (int i = 0; i < tracks.length(); i++) {
-                JSONObject trackObj = tracks.getJSONObject(i).getJSONObject("track");
-                SpotifyAudioTrackInfo trackInfo = extractTrackInfo(trackObj);
-                
-                // Resolve each track to YouTube
-                String searchQuery = trackInfo.getArtist() + " - " + trackInfo.getTitle();
-                AudioItem youtubeTrack = resolveToYouTubeTrack(searchQuery);
-                
-                if (youtubeTrack instanceof AudioTrack) {
-                    AudioTrackInfo ytTrackInfo = ((AudioTrack) youtubeTrack).getInfo();
-                    
-                    trackList.add(new SpotifyAudioTrack(
-                            new AudioTrackInfo(
-                                    trackInfo.getTitle(),
-                                    trackInfo.getArtist(),
-                                    ytTrackInfo.length,
-                                    trackInfo.getIdentifier(),
-                                    false,
-                                    trackInfo.getUri()
-                            ),
-                            (AudioTrack) youtubeTrack,
-                            this
-                    ));
-                }
-            }
+            List<AudioTrack> tracks = createTracksFromPages(
+                    playlistObj.getJSONObject("tracks"),
+                    PLAYLIST_PAGE_SIZE,
+                    offset -> authManager.getPlaylistTracks(playlistId, offset, PLAYLIST_PAGE_SIZE),
+                    item -> item.optJSONObject("track")
+            );
             
-            return new BasicAudioPlaylist(playlistName, trackList, null, false);
+            return new BasicAudioPlaylist(playlistName, tracks, null, false);
         } catch (IOException e) {
             throw new FriendlyException("Error loading Spotify playlist", Severity.FAULT, e);
         }
@@ -224,48 +216,203 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
 
     private AudioItem loadArtistTopTracks(String artistId) {
         try {
-            JSONObject artistObj = authManager.getArtist(artistId);
-            JSONArray topTracks = authManager.getArtistTopTracks(artistId);
+            // The artist and its top tracks are independent requests, so fetch them at the same time
+            Future<JSONObject> artistFuture = authManager.getArtistAsync(artistId);
+            Future<JSONArray> topTracksFuture = authManager.getArtistTopTracksAsync(artistId);
+            
+            JSONObject artistObj = resolutionEngine.await(artistFuture);
             
             if (artistObj == null) {
+                topTracksFuture.cancel(true);
                 throw new FriendlyException("This Spotify artist does not exist.", Severity.COMMON, null);
             }
             
+            JSONArray topTracks = resolutionEngine.await(topTracksFuture);
+            
             String artistName = artistObj.getString("name");
-            List<AudioTrack> trackList = new ArrayList<>();
+            List<SpotifyAudioTrackInfo> trackInfos = new ArrayList<>();
             
             for (int i = 0; i < topTracks.length(); i++) {
-                JSONObject trackObj = topTracks.getJSONObject(i);
-                SpotifyAudioTrackInfo trackInfo = extractTrackInfo(trackObj);
-                
-                // Resolve each track to YouTube
-                String searchQuery = trackInfo.getArtist() + " - " + trackInfo.getTitle();
-                AudioItem youtubeTrack = resolveToYouTubeTrack(searchQuery);
-                
-                if (youtubeTrack instanceof AudioTrack) {
-                    AudioTrackInfo ytTrackInfo = ((AudioTrack) youtubeTrack).getInfo();
+                trackInfos.add(extractTrackInfo(topTracks.getJSONObject(i)));
+            }
+            
+            return new BasicAudioPlaylist(artistName + " - Top Tracks", createTracks(trackInfos), null, false);
+        } catch (IOException e) {
+            throw new FriendlyException("Error loading Spotify artist's top tracks", Severity.FAULT, e);
+        }
+    }
+
+    /**
+     * Resolve a list of Spotify tracks to YouTube concurrently. Tracks without a match are left out,
+     * the remaining tracks keep their original order. In lazy mode the tracks are returned unresolved.
+     *
+     * @param trackInfos Spotify track infos
+     * @return Resolved tracks
+     */
+    private List<AudioTrack> createTracks(List<SpotifyAudioTrackInfo> trackInfos) {
+        ResolutionEngine.Batch<AudioTrack> batch = resolutionEngine.newBatch();
+        
+        for (int i = 0; i < trackInfos.size(); i++) {
+            submitTrack(batch, i, trackInfos.get(i));
+        }
+        
+        List<AudioTrack> tracks = batch.await();
+        warmFirstTrack(tracks);
+        return tracks;
+    }
+
+    /**
+     * Resolve all tracks of a Spotify paging object. The page embedded in the album or playlist is
+     * followed by the remaining pages, which are all requested in parallel as soon as the total is known.
+     * Resolution of each page starts as soon as it arrives.
+     *
+     * @param firstPage Paging object embedded in the album or playlist
+     * @param pageSize Number of items requested per page
+     * @param pageFetcher Function that fetches the paging object at an offset
+     * @param trackExtractor Function that gets the track object from a page item
+     * @return Resolved tracks in their original order
+     */
+    private List<AudioTrack> createTracksFromPages(JSONObject firstPage, int pageSize, PageFetcher pageFetcher,
+                                                   Function<JSONObject, JSONObject> trackExtractor) {
+        ResolutionEngine.Batch<AudioTrack> batch = resolutionEngine.newBatch();
+        JSONArray firstItems = firstPage.getJSONArray("items");
+        int total = Math.min(firstPage.optInt("total", firstItems.length()), maxTracks);
+        
+        // Queue the page requests before the first page's tracks, so they are not stuck behind its searches
+        for (int offset = firstItems.length(); offset < total; offset += pageSize) {
+            int pageOffset = offset;
+            
+            batch.spawn(() -> {
+                try {
+                    JSONObject page = pageFetcher.fetch(pageOffset);
                     
-                    trackList.add(new SpotifyAudioTrack(
-                            new AudioTrackInfo(
-                                    trackInfo.getTitle(),
-                                    trackInfo.getArtist(),
-                                    ytTrackInfo.length,
-                                    trackInfo.getIdentifier(),
-                                    false,
-                                    trackInfo.getUri()
-                            ),
-                            (AudioTrack) youtubeTrack,
-                            this
-                    ));
+                    if (page != null) {
+                        submitPage(batch, page.getJSONArray("items"), pageOffset, total, trackExtractor);
+                    }
+                } catch (IOException e) {
+                    log.warn("Failed to fetch Spotify page at offset {}", pageOffset, e);
                 }
+            });
+        }
+        
+        submitPage(batch, firstItems, 0, total, trackExtractor);
+        
+        List<AudioTrack> tracks = batch.await();
+        warmFirstTrack(tracks);
+        return tracks;
+    }
+
+    private void submitPage(ResolutionEngine.Batch<AudioTrack> batch, JSONArray items, int offset, int total,
+                            Function<JSONObject, JSONObject> trackExtractor) {
+        List<SpotifyAudioTrackInfo> trackInfos = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        
+        for (int i = 0; i < items.length() && offset + i < total; i++) {
+            JSONObject trackObj = trackExtractor.apply(items.getJSONObject(i));
+            
+            // Removed tracks, local files and podcast episodes cannot be resolved
+            if (trackObj == null || trackObj.isNull("id") || !trackObj.has("artists")) {
+                continue;
             }
             
-            return new BasicAudioPlaylist(artistName + " - Top Tracks", trackList, null, false);
+            trackInfos.add(extractTrackInfo(trackObj));
+            indexes.add(offset + i);
+        }
+        
+        addMissingIsrcs(trackInfos);
+        
+        for (int i = 0; i < trackInfos.size(); i++) {
+            submitTrack(batch, indexes.get(i), trackInfos.get(i));
+        }
+    }
+
+    /**
+     * Album pages only contain simplified track objects, which have no ISRC. Fetch the full track objects
+     * of the tracks without a fresh mapping, 50 per request, so they can use the mapping of another release
+     * of the same recording instead of searching YouTube.
+     *
+     * @param trackInfos Track infos, entries are replaced by the full track info where it could be fetched
+     */
+    private void addMissingIsrcs(List<SpotifyAudioTrackInfo> trackInfos) {
+        List<Integer> positions = new ArrayList<>();
+        List<String> trackIds = new ArrayList<>();
+        
+        for (int i = 0; i < trackInfos.size(); i++) {
+            SpotifyAudioTrackInfo trackInfo = trackInfos.get(i);
+            
+            if (trackInfo.getIsrc() == null) {
+                MirrorMappingStore.Mapping mapping = mappingStore.get(trackInfo.getIdentifier());
+                
+                if (mapping == null || mapping.isStale()) {
+                    positions.add(i);
+                    trackIds.add(trackInfo.getIdentifier());
+                }
+            }
+        }
+        
+        if (trackIds.isEmpty()) {
+            return;
+        }
+        
+        try {
+            List<JSONObject> trackObjs = authManager.getTracks(trackIds);
+            
+            for (int i = 0; i < positions.size(); i++) {
+                JSONObject trackObj = trackObjs.get(i);
+                
+                if (trackObj != null && !trackObj.isNull("id") && trackObj.has("artists")) {
+                    trackInfos.set(positions.get(i), extractTrackInfo(trackObj));
+                }
+            }
         } catch (IOException e) {
-            throw new FriendlyException("Error loading Spotify artist's top tracks", Severity.FAULT, e);
+            // The tracks are still resolved, only without the shortcut through their recording
+            log.warn("Failed to fetch ISRCs of {} Spotify tracks", trackIds.size(), e);
+        }
+    }
+
+    private void submitTrack(ResolutionEngine.Batch<AudioTrack> batch, int index, SpotifyAudioTrackInfo trackInfo) {
+        if (lazyResolution) {
+            batch.add(index, createTrack(trackInfo));
+        } else {
+            batch.submit(index, () -> createTrack(trackInfo));
         }
     }
 
+    /**
+     * Resolve a single Spotify track to YouTube. In lazy mode the track is returned unresolved.
+     *
+     * @param trackInfo Spotify track info
+     * @return Spotify track backed by a YouTube track, or null if no match was found
+     */
+    private AudioTrack createTrack(SpotifyAudioTrackInfo trackInfo) {
+        if (lazyResolution) {
+            return new SpotifyAudioTrack(trackInfo.toAudioTrackInfo(), trackInfo.getIsrc(), this);
+        }
+        
+        AudioTrack youtubeTrack = resolveToYouTubeTrack(trackInfo.getIdentifier(), trackInfo.getIsrc(),
+                trackInfo.getArtist(), trackInfo.getTitle(), trackInfo.getDuration());
+        
+        if (youtubeTrack != null) {
+            AudioTrackInfo ytTrackInfo = youtubeTrack.getInfo();
+            
+            return new SpotifyAudioTrack(
+                    new AudioTrackInfo(
+                            trackInfo.getTitle(),
+                            trackInfo.getArtist(),
+                            ytTrackInfo.length,
+                            trackInfo.getIdentifier(),
+                            false,
+                            trackInfo.getUri()
+                    ),
+                    trackInfo.getIsrc(),
+                    youtubeTrack,
+                    this
+            );
+        }
+        
+        return null;
+    }
+
     private SpotifyAudioTrackInfo extractTrackInfo(JSONObject trackObj) {
         String title = trackObj.getString("name");
         String artist = TrackUtils.getMainArtistName(trackObj.getJSONArray("artists"));
@@ -275,10 +422,130 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
         // Duration is in milliseconds
         long duration = trackObj.getLong("duration_ms");
         
-        return new SpotifyAudioTrackInfo(title, artist, duration, identifier, uri);
+        // Simplified track objects, such as those of album pages, have no external IDs
+        JSONObject externalIds = trackObj.optJSONObject("external_ids");
+        String isrc = externalIds != null ? normalizeIsrc(externalIds.optString("isrc", null)) : null;
+        
+        return new SpotifyAudioTrackInfo(title, artist, duration, identifier, uri, isrc);
+    }
+
+    private static String normalizeIsrc(String isrc) {
+        if (isrc == null) {
+            return null;
+        }
+        
+        // Spotify occasionally lists the code with hyphens or in lowercase
+        String normalized = isrc.replace("-", "").trim().toUpperCase(Locale.ROOT);
+        return ISRC_PATTERN.matcher(normalized).matches() ? normalized : null;
+    }
+
+    /**
+     * Start resolving the first track of a lazily resolved list, as it is usually played right away.
+     *
+     * @param tracks Loaded tracks
+     */
+    private void warmFirstTrack(List<AudioTrack> tracks) {
+        if (lazyResolution && !tracks.isEmpty()) {
+            resolutionEngine.submit(((SpotifyAudioTrack) tracks.get(0))::warm);
+        }
+    }
+
+    /**
+     * Find the YouTube track used to play a lazily resolved Spotify track.
+     *
+     * @param trackInfo Info of the Spotify track
+     * @param isrc International Standard Recording Code of the track, null if unknown
+     * @return YouTube track, or null if no match was found
+     */
+    public AudioTrack resolveMirror(AudioTrackInfo trackInfo, String isrc) {
+        return resolveToYouTubeTrack(trackInfo.identifier, isrc, trackInfo.author, trackInfo.title, trackInfo.length);
+    }
+
+    /**
+     * Find the YouTube track for a Spotify track, using the stored mapping when it is still fresh.
+     * Without a fresh mapping of its own, the track uses the mapping of its recording if any other
+     * Spotify track with the same ISRC was resolved more recently.
+     * A stale mapping is revalidated with a new search, and only used if that search finds no match above
+     * the threshold. Only matches above the threshold are stored.
+     *
+     * @param spotifyId Spotify track ID
+     * @param isrc International Standard Recording Code, null if unknown
+     * @param artist Artist name
+     * @param title Track title
+     * @param durationMs Track duration in milliseconds, 0 if unknown
+     * @return YouTube track, or null if no match was found
+     */
+    private AudioTrack resolveToYouTubeTrack(String spotifyId, String isrc, String artist, String title, long durationMs) {
+        MirrorMappingStore.Mapping mapping = mappingStore.get(spotifyId);
+        
+        if ((mapping == null || mapping.isStale()) && isrc != null) {
+            MirrorMappingStore.Mapping recording = mappingStore.getByIsrc(isrc);
+            
+            if (recording != null && (mapping == null || recording.getResolvedAt() > mapping.getResolvedAt())) {
+                // Remember it for this ID too, lookups without the ISRC then find it as well
+                mappingStore.link(spotifyId, recording);
+                mapping = recording;
+            }
+        }
+        
+        if (mapping != null && !mapping.isStale()) {
+            return youtubeSourceManager.buildTrack(mapping.getVideoId(), title, artist, mapping.getDurationMs());
+        }
+        
+        CandidateRanker.Candidate match = searchYouTubeTrack(artist, title, isrc, durationMs);
+        
+        if (candidateRanker.isAccepted(match)) {
+            AudioTrack youtubeTrack = match.getTrack();
+            mappingStore.put(spotifyId, isrc, youtubeTrack.getInfo().identifier, youtubeTrack.getInfo().length);
+            return youtubeTrack;
+        }
+        
+        if (mapping != null) {
+            log.debug("Revalidation of Spotify track {} failed, using stored mapping", spotifyId);
+            return youtubeSourceManager.buildTrack(mapping.getVideoId(), title, artist, mapping.getDurationMs());
+        }
+        
+        if (match != null) {
+            // Good enough to play, but not to be remembered and shared with the other tracks of the recording
+            log.debug("Best match for {} - {} scored {}, below the threshold of {}, not storing it",
+                    artist, title, match.getScore(), candidateRanker.getThreshold());
+            return match.getTrack();
+        }
+        
+        return null;
+    }
+
+    /**
+     * Search YouTube and pick the result that best matches the Spotify track. A second, more specific search
+     * is only sent when no result of the first one scores well enough: for the ISRC if it is known, as
+     * auto-generated uploads of the recording list it, or for the official audio otherwise.
+     *
+     * @param artist Artist name
+     * @param title Track title
+     * @param isrc International Standard Recording Code, null if unknown
+     * @param durationMs Track duration in milliseconds, 0 if unknown
+     * @return Best match, which may score below the threshold, or null if every result was rejected
+     */
+    private CandidateRanker.Candidate searchYouTubeTrack(String artist, String title, String isrc, long durationMs) {
+        CandidateRanker.Candidate best = candidateRanker.rank(title, artist, durationMs, searchYouTube(artist + " - " + title));
+        
+        if (!candidateRanker.isAccepted(best)) {
+            String retryQuery = isrc != null ? "\"" + isrc + "\"" : TrackUtils.createSearchQuery(title, artist) + " official audio";
+            CandidateRanker.Candidate retry = candidateRanker.rank(title, artist, durationMs, searchYouTube(retryQuery));
+            
+            if (retry != null && (best == null || retry.getScore() > best.getScore())) {
+                best = retry;
+            }
+        }
+        
+        if (best != null) {
+            log.debug("Matched {} - {} to YouTube video {} with score {}", artist, title, best.getTrack().getIdentifier(), best.getScore());
+        }
+        
+        return best;
     }
 
-    private AudioItem resolveToYouTubeTrack(String searchQuery) {
+    private List<AudioTrack> searchYouTube(String searchQuery) {
         try {
             // Create a search query for YouTube
             AudioReference youtubeReference = new AudioReference(
@@ -290,16 +557,13 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
             AudioItem resolved = youtubeSourceManager.loadItem(null, youtubeReference);
             
             if (resolved instanceof AudioPlaylist) {
-                AudioPlaylist playlist = (AudioPlaylist) resolved;
-                if (!playlist.getTracks().isEmpty()) {
-                    return playlist.getTracks().get(0); // Return the first match
-                }
+                return ((AudioPlaylist) resolved).getTracks();
             }
             
-            return null;
+            return Collections.emptyList();
         } catch (Exception e) {
             log.error("Failed to resolve YouTube track for: {}", searchQuery, e);
-            return null;
+            return Collections.emptyList();
         }
     }
 
@@ -310,47 +574,131 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
 
     @Override
     public void encodeTrack(AudioTrack track, DataOutput output) throws IOException {
-        // For now, we'll just store the track ID and artist/title for re-resolving later
         SpotifyAudioTrack spotifyTrack = (SpotifyAudioTrack) track;
+        AudioTrack mirror = spotifyTrack.getDelegate();
+        
+        output.writeUTF(ENCODING_VERSION_PREFIX + ENCODING_VERSION);
         output.writeUTF(spotifyTrack.getInfo().identifier);
         output.writeUTF(spotifyTrack.getInfo().title);
         output.writeUTF(spotifyTrack.getInfo().author);
+        writeNullableUTF(output, spotifyTrack.getIsrc());
+        
+        // The resolved mirror lets the track be decoded without searching YouTube again
+        output.writeBoolean(mirror != null);
+        
+        if (mirror != null) {
+            output.writeUTF(mirror.getInfo().identifier);
+            output.writeLong(mirror.getInfo().length);
+            output.writeLong(spotifyTrack.getResolvedAt());
+            output.writeInt(mirror instanceof YouTubeAudioTrack ? ((YouTubeAudioTrack) mirror).getItag() : 0);
+        }
     }
 
+    /**
+     * Decode a track encoded by {@link #encodeTrack(AudioTrack, DataOutput)}. Tracks encoded with their
+     * resolved mirror are restored without any network request; tracks of the original format, which starts
+     * with the Spotify ID instead of a version marker, are resolved again like newly loaded tracks.
+     */
     @Override
     public AudioTrack decodeTrack(AudioTrackInfo trackInfo, DataInput input) throws IOException {
+        String first = input.readUTF();
+        
+        if (!first.startsWith(ENCODING_VERSION_PREFIX)) {
+            return decodeUnresolvedTrack(trackInfo, first, null, input.readUTF(), input.readUTF());
+        }
+        
+        int version = parseEncodingVersion(first);
         String spotifyId = input.readUTF();
         String title = input.readUTF();
         String artist = input.readUTF();
+        String isrc = readNullableUTF(input);
+        
+        if (!input.readBoolean()) {
+            return decodeUnresolvedTrack(trackInfo, spotifyId, isrc, title, artist);
+        }
+        
+        String videoId = input.readUTF();
+        long durationMs = input.readLong();
+        long resolvedAt = input.readLong();
+        int itag = version >= 3 ? input.readInt() : 0;
+        
+        // The mapping may have been revalidated since the track was encoded, which only costs a local lookup
+        MirrorMappingStore.Mapping mapping = mappingStore.get(spotifyId);
+        
+        if (mapping != null && mapping.getResolvedAt() > resolvedAt) {
+            videoId = mapping.getVideoId();
+            durationMs = mapping.getDurationMs();
+            resolvedAt = mapping.getResolvedAt();
+            itag = 0;
+        }
+        
+        log.debug("Decoded Spotify track {} (encoding version {}) with YouTube mirror {}", spotifyId, version, videoId);
+        
+        AudioTrack youtubeTrack = youtubeSourceManager.buildTrack(videoId, title, artist, durationMs, itag);
+        return new SpotifyAudioTrack(trackInfo, isrc, youtubeTrack, resolvedAt, this);
+    }
+
+    private AudioTrack decodeUnresolvedTrack(AudioTrackInfo trackInfo, String spotifyId, String isrc,
+                                             String title, String artist) throws IOException {
+        if (lazyResolution) {
+            return new SpotifyAudioTrack(trackInfo, isrc, this);
+        }
         
         // Re-resolve to YouTube
-        String searchQuery = artist + " - " + title;
-        AudioItem youtubeTrack = resolveToYouTubeTrack(searchQuery);
+        AudioTrack youtubeTrack = resolveToYouTubeTrack(spotifyId, isrc, artist, title, trackInfo.length);
         
-        if (youtubeTrack instanceof AudioTrack) {
-            return new SpotifyAudioTrack(trackInfo, (AudioTrack) youtubeTrack, this);
+        if (youtubeTrack != null) {
+            return new SpotifyAudioTrack(trackInfo, isrc, youtubeTrack, this);
         }
         
         throw new IOException("Could not re-resolve Spotify track: " + title);
     }
 
+    private static int parseEncodingVersion(String marker) throws IOException {
+        int version;
+        
+        try {
+            version = Integer.parseInt(marker.substring(ENCODING_VERSION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Spotify track encoding marker: " + marker);
+        }
+        
+        if (version < 2 || version > ENCODING_VERSION) {
+            throw new IOException("Unsupported Spotify track encoding version: " + version);
+        }
+        
+        return version;
+    }
+
+    private static void writeNullableUTF(DataOutput output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
     @Override
     public void shutdown() {
+        // The YouTube source manager is registered on its own and shut down separately
         internalSourceManager.shutdown();
-        httpInterfaceManager.close();
-        youtubeSourceManager.shutdown();
+        resolutionEngine.shutdown();
+        mappingStore.close();
     }
 
     @Override
     public void configureRequests(Function<RequestConfig, RequestConfig> configurator) {
-        httpInterfaceManager.configureRequests(configurator);
-        youtubeSourceManager.configureRequests(configurator);
+        // The transport is shared with the YouTube source manager, which receives the same hooks
+        transport.configureRequests(configurator);
     }
 
     @Override
     public void configureBuilder(Consumer<HttpClientBuilder> configurator) {
-        httpInterfaceManager.configureBuilder(configurator);
-        youtubeSourceManager.configureBuilder(configurator);
+        transport.configureBuilder(configurator);
     }
 
     /**
@@ -361,4 +709,18 @@ public class SpotifySourceManager implements AudioSourceManager, HttpConfigurabl
     public HttpInterface getHttpInterface() {
         return httpInterfaceManager.getInterface();
     }
+
+    /**
+     * Fetches one page of a Spotify paging object.
+     */
+    @FunctionalInterface
+    private interface PageFetcher {
+
+        /**
+         * @param offset Index of the first item of the page
+         * @return Paging object, or null if it could not be fetched
+         * @throws IOException if an error occurs during the API call
+         */
+        JSONObject fetch(int offset) throws IOException;
+    }
 }
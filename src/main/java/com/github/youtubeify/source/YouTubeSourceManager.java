@@ -1,11 +1,13 @@
 package com.github.youtubeify.source;
 
 import com.github.youtubeify.auth.YouTubeAuthManager;
+import com.github.youtubeify.cache.SingleFlight;
 import com.github.youtubeify.source.youtube.YouTubeAudioSourceManager;
+import com.github.youtubeify.util.HttpTransport;
+import com.github.youtubeify.util.TrackUtils;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
-import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpConfigurable;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterfaceManager;
@@ -29,6 +31,8 @@ public class YouTubeSourceManager implements AudioSourceManager, HttpConfigurabl
 
     private static final Logger log = LoggerFactory.getLogger(YouTubeSourceManager.class);
 
+    private static final int MAX_COALESCED_LOADS = 1024;
+
     private static final String YOUTUBE_DOMAIN_PATTERN = "(?:youtube\\.com|youtu\\.be)";
     private static final Pattern VIDEO_ID_PATTERN = Pattern.compile("^([a-zA-Z0-9_-]{11})$");
     private static final Pattern VIDEO_URL_PATTERN = Pattern.compile(
@@ -42,13 +46,21 @@ public class YouTubeSourceManager implements AudioSourceManager, HttpConfigurabl
     );
 
     private final YouTubeAudioSourceManager internalSourceManager;
+    private final HttpTransport transport;
     private final HttpInterfaceManager httpInterfaceManager;
     private final YouTubeAuthManager authManager;
+    private final SingleFlight<String, AudioItem> loadFlight;
 
-    public YouTubeSourceManager() {
-        this.internalSourceManager = new YouTubeAudioSourceManager();
-        this.httpInterfaceManager = HttpClientTools.createDefaultThreadLocalManager();
-        this.authManager = new YouTubeAuthManager();
+    /**
+     * @param transport Shared HTTP transport, closed when this source manager shuts down
+     * @param authManager Shared manager for YouTube API calls
+     */
+    public YouTubeSourceManager(HttpTransport transport, YouTubeAuthManager authManager) {
+        this.internalSourceManager = new YouTubeAudioSourceManager(transport, authManager);
+        this.transport = transport;
+        this.httpInterfaceManager = transport.getInterfaceManager();
+        this.authManager = authManager;
+        this.loadFlight = new SingleFlight<>(MAX_COALESCED_LOADS);
         
         log.info("YouTube source manager initialized");
     }
@@ -60,6 +72,11 @@ public class YouTubeSourceManager implements AudioSourceManager, HttpConfigurabl
 
     @Override
     public AudioItem loadItem(AudioPlayerManager manager, AudioReference reference) {
+        // Concurrent loads of the same identifier share one resolution
+        return loadFlight.execute(reference.identifier, () -> loadItemDirect(manager, reference), TrackUtils::copyAudioItem);
+    }
+
+    private AudioItem loadItemDirect(AudioPlayerManager manager, AudioReference reference) {
         try {
             return internalSourceManager.loadItem(manager, reference);
         } catch (FriendlyException e) {
@@ -102,19 +119,45 @@ public class YouTubeSourceManager implements AudioSourceManager, HttpConfigurabl
     @Override
     public void shutdown() {
         internalSourceManager.shutdown();
-        httpInterfaceManager.close();
+        transport.close();
     }
 
     @Override
     public void configureRequests(Function<RequestConfig, RequestConfig> configurator) {
-        httpInterfaceManager.configureRequests(configurator);
-        internalSourceManager.configureRequests(configurator);
+        // The internal source manager uses the same transport, so configuring it once covers both
+        transport.configureRequests(configurator);
     }
 
     @Override
     public void configureBuilder(Consumer<HttpClientBuilder> configurator) {
-        httpInterfaceManager.configureBuilder(configurator);
-        internalSourceManager.configureBuilder(configurator);
+        transport.configureBuilder(configurator);
+    }
+
+    /**
+     * Create a track for a known video without fetching its details.
+     *
+     * @param videoId YouTube video ID
+     * @param title Track title
+     * @param author Track author
+     * @param length Track length in milliseconds
+     * @return YouTube track
+     */
+    public AudioTrack buildTrack(String videoId, String title, String author, long length) {
+        return internalSourceManager.buildTrack(videoId, title, author, length);
+    }
+
+    /**
+     * Create a track for a known video without fetching its details.
+     *
+     * @param videoId YouTube video ID
+     * @param title Track title
+     * @param author Track author
+     * @param length Track length in milliseconds
+     * @param itag Format to play the track in if the video still has it, 0 to let the format policy choose
+     * @return YouTube track
+     */
+    public AudioTrack buildTrack(String videoId, String title, String author, long length, int itag) {
+        return internalSourceManager.buildTrack(videoId, title, author, length, itag);
     }
 
     /**
@@ -1,10 +1,10 @@
 package com.github.youtubeify.source.spotify;
 
 import com.github.youtubeify.auth.SpotifyAuthManager;
+import com.github.youtubeify.util.HttpTransport;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
-import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpConfigurable;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterfaceManager;
@@ -28,12 +28,18 @@ public class SpotifyAudioSourceManager implements AudioSourceManager, HttpConfig
 
     private static final Logger log = LoggerFactory.getLogger(SpotifyAudioSourceManager.class);
 
+    private final HttpTransport transport;
     private final HttpInterfaceManager httpInterfaceManager;
     private final SpotifyAuthManager authManager;
 
-    public SpotifyAudioSourceManager() {
-        this.httpInterfaceManager = HttpClientTools.createDefaultThreadLocalManager();
-        this.authManager = new SpotifyAuthManager();
+    /**
+     * @param transport Shared HTTP transport
+     * @param authManager Shared manager for Spotify API calls
+     */
+    public SpotifyAudioSourceManager(HttpTransport transport, SpotifyAuthManager authManager) {
+        this.transport = transport;
+        this.httpInterfaceManager = transport.getInterfaceManager();
+        this.authManager = authManager;
         log.info("Spotify audio source manager initialized");
     }
 
@@ -67,17 +73,17 @@ public class SpotifyAudioSourceManager implements AudioSourceManager, HttpConfig
 
     @Override
     public void shutdown() {
-        httpInterfaceManager.close();
+        // The HTTP transport is shared and closed by its owner
     }
 
     @Override
     public void configureRequests(Function<RequestConfig, RequestConfig> configurator) {
-        httpInterfaceManager.configureRequests(configurator);
+        transport.configureRequests(configurator);
     }
 
     @Override
     public void configureBuilder(Consumer<HttpClientBuilder> configurator) {
-        httpInterfaceManager.configureBuilder(configurator);
+        transport.configureBuilder(configurator);
     }
 
     /**
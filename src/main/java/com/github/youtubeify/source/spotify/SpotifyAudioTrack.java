@@ -2,44 +2,125 @@ package com.github.youtubeify.source.spotify;
 
 import com.github.youtubeify.source.SpotifySourceManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import com.sedmelluq.discord.lavaplayer.track.DelegatedAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.sedmelluq.discord.lavaplayer.tools.FriendlyException.Severity;
+
 /**
  * Audio track that delegates its functionality to another track (YouTube).
  * This is essentially a wrapper around a YouTube track with Spotify metadata.
+ * The YouTube mirror is either given up front or resolved lazily on first playback, and is shared
+ * between this track and all of its clones once resolved.
  */
 public class SpotifyAudioTrack extends DelegatedAudioTrack {
 
     private static final Logger log = LoggerFactory.getLogger(SpotifyAudioTrack.class);
 
-    private final AudioTrack delegate;
+    private final String isrc;
+    private final Mirror mirror;
     private final SpotifySourceManager sourceManager;
 
     /**
      * @param trackInfo Track info
+     * @param isrc International Standard Recording Code, null if unknown
+     * @param delegate The YouTube track that will handle the actual playback
+     * @param sourceManager Source manager which was used to find this track
+     */
+    public SpotifyAudioTrack(AudioTrackInfo trackInfo, String isrc, AudioTrack delegate, SpotifySourceManager sourceManager) {
+        this(trackInfo, isrc, delegate, System.currentTimeMillis(), sourceManager);
+    }
+
+    /**
+     * Create a track with a YouTube mirror that was resolved earlier, such as one restored from an encoded track.
+     *
+     * @param trackInfo Track info
+     * @param isrc International Standard Recording Code, null if unknown
      * @param delegate The YouTube track that will handle the actual playback
+     * @param resolvedAt Time the mirror was resolved, in epoch milliseconds
      * @param sourceManager Source manager which was used to find this track
      */
-    public SpotifyAudioTrack(AudioTrackInfo trackInfo, AudioTrack delegate, SpotifySourceManager sourceManager) {
+    public SpotifyAudioTrack(AudioTrackInfo trackInfo, String isrc, AudioTrack delegate, long resolvedAt,
+                             SpotifySourceManager sourceManager) {
+        this(trackInfo, isrc, new Mirror(delegate, resolvedAt), sourceManager);
+    }
+
+    /**
+     * Create a track whose YouTube mirror is resolved on first playback or when warmed.
+     *
+     * @param trackInfo Track info
+     * @param isrc International Standard Recording Code, null if unknown
+     * @param sourceManager Source manager which was used to find this track
+     */
+    public SpotifyAudioTrack(AudioTrackInfo trackInfo, String isrc, SpotifySourceManager sourceManager) {
+        this(trackInfo, isrc, new Mirror(null, 0), sourceManager);
+    }
+
+    private SpotifyAudioTrack(AudioTrackInfo trackInfo, String isrc, Mirror mirror, SpotifySourceManager sourceManager) {
         super(trackInfo);
-        this.delegate = delegate;
+        this.isrc = isrc;
+        this.mirror = mirror;
         this.sourceManager = sourceManager;
     }
 
     @Override
     public void process(LocalAudioTrackExecutor executor) throws Exception {
+        AudioTrack delegate = resolveMirror();
+
+        if (delegate == null) {
+            throw new FriendlyException("Could not find a YouTube match for Spotify track: " + trackInfo.title,
+                    Severity.COMMON, null);
+        }
+
         log.debug("Processing Spotify track {} via YouTube delegate", getIdentifier());
-        processDelegate(executor, delegate);
+
+        // The resolved mirror is shared between clones, so each playback gets its own copy of it
+        processDelegate((InternalAudioTrack) delegate.makeClone(), executor);
+    }
+
+    /**
+     * Resolve the YouTube mirror ahead of playback if that has not happened yet.
+     *
+     * @return True if a mirror is available
+     */
+    public boolean warm() {
+        return resolveMirror() != null;
+    }
+
+    /**
+     * @return True if the YouTube mirror has already been resolved
+     */
+    public boolean isResolved() {
+        return mirror.track != null;
+    }
+
+    private AudioTrack resolveMirror() {
+        AudioTrack track = mirror.track;
+
+        if (track != null) {
+            return track;
+        }
+
+        synchronized (mirror) {
+            if (mirror.track == null) {
+                log.debug("Resolving YouTube mirror for Spotify track {}", getIdentifier());
+                mirror.resolvedAt = System.currentTimeMillis();
+                mirror.track = sourceManager.resolveMirror(trackInfo, isrc);
+            }
+
+            return mirror.track;
+        }
     }
 
     @Override
     protected AudioTrack makeShallowClone() {
-        return new SpotifyAudioTrack(trackInfo, delegate.makeClone(), sourceManager);
+        return new SpotifyAudioTrack(trackInfo, isrc, mirror, sourceManager);
     }
 
     @Override
@@ -48,9 +129,38 @@ public class SpotifyAudioTrack extends DelegatedAudioTrack {
     }
 
     /**
-     * @return The YouTube track that handles the actual playback
+     * @return International Standard Recording Code, or null if unknown
+     */
+    public String getIsrc() {
+        return isrc;
+    }
+
+    /**
+     * @return The YouTube track that handles the actual playback, or null if it has not been resolved yet
      */
     public AudioTrack getDelegate() {
-        return delegate;
+        return mirror.track;
+    }
+
+    /**
+     * @return Time the YouTube mirror was resolved, in epoch milliseconds, or 0 if it has not been resolved yet
+     */
+    public long getResolvedAt() {
+        return mirror.track != null ? mirror.resolvedAt : 0;
+    }
+
+    /**
+     * Holder of the resolved YouTube mirror, shared between a track and its clones.
+     */
+    private static class Mirror {
+
+        private volatile AudioTrack track;
+        /** Written before the track, so it is visible to anyone who sees the track */
+        private long resolvedAt;
+
+        private Mirror(AudioTrack track, long resolvedAt) {
+            this.track = track;
+            this.resolvedAt = resolvedAt;
+        }
     }
 }
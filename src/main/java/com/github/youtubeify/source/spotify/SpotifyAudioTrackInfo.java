@@ -12,6 +12,7 @@ public class SpotifyAudioTrackInfo {
     private final long duration;
     private final String identifier;
     private final String uri;
+    private final String isrc;
 
     /**
      * @param title Track title
@@ -19,13 +20,15 @@ public class SpotifyAudioTrackInfo {
      * @param duration Track duration in milliseconds
      * @param identifier Spotify track ID
      * @param uri Spotify track URI
+     * @param isrc International Standard Recording Code, null if unknown
      */
-    public SpotifyAudioTrackInfo(String title, String artist, long duration, String identifier, String uri) {
+    public SpotifyAudioTrackInfo(String title, String artist, long duration, String identifier, String uri, String isrc) {
         this.title = title;
         this.artist = artist;
         this.duration = duration;
         this.identifier = identifier;
         this.uri = uri;
+        this.isrc = isrc;
     }
 
     /**
@@ -63,6 +66,13 @@ public class SpotifyAudioTrackInfo {
         return uri;
     }
 
+    /**
+     * @return International Standard Recording Code, shared by all releases of the recording, or null if unknown
+     */
+    public String getIsrc() {
+        return isrc;
+    }
+
     /**
      * Convert to a standard AudioTrackInfo
      * 
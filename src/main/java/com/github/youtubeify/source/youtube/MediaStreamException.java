@@ -0,0 +1,25 @@
+package com.github.youtubeify.source.youtube;
+
+import java.io.IOException;
+
+/**
+ * Failure of the media server to deliver a stream URL, such as a 403 or 410 status or a chunk that could not
+ * be downloaded. The stream URL is likely no longer usable, unlike after an interrupt or a parsing error.
+ */
+public class MediaStreamException extends IOException {
+
+    /**
+     * @param message Description of the failure
+     */
+    public MediaStreamException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message Description of the failure
+     * @param cause Failure of the request
+     */
+    public MediaStreamException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
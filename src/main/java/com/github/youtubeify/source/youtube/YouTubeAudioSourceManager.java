@@ -1,14 +1,16 @@
 package com.github.youtubeify.source.youtube;
 
 import com.github.youtubeify.auth.YouTubeAuthManager;
+import com.github.youtubeify.util.ConfigUtils;
+import com.github.youtubeify.util.HttpTransport;
 import com.github.youtubeify.util.HttpUtils;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
-import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpConfigurable;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterfaceManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
 import com.sedmelluq.discord.lavaplayer.track.*;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -48,13 +50,27 @@ public class YouTubeAudioSourceManager implements AudioSourceManager, HttpConfig
             "^(?:https?://)?(?:www\\.)?(?:youtu\\.be)/([a-zA-Z0-9_-]{11})(?:\\?.*)?$"
     );
     private static final Pattern SEARCH_PATTERN = Pattern.compile("^ytsearch:(.*)$");
+    private static final String ENCODING_VERSION_PREFIX = "#";
+    private static final int ENCODING_VERSION = 2;
+    private static final int DEFAULT_MEDIA_CHUNK_KB = 512;
+    private static final int DEFAULT_MEDIA_PARALLEL_CHUNKS = 3;
 
+    private final HttpTransport transport;
     private final HttpInterfaceManager httpInterfaceManager;
     private final YouTubeAuthManager authManager;
+    private final int mediaChunkSize;
+    private final int mediaParallelChunks;
 
-    public YouTubeAudioSourceManager() {
-        this.httpInterfaceManager = HttpClientTools.createDefaultThreadLocalManager();
-        this.authManager = new YouTubeAuthManager();
+    /**
+     * @param transport Shared HTTP transport
+     * @param authManager Shared manager for YouTube API calls
+     */
+    public YouTubeAudioSourceManager(HttpTransport transport, YouTubeAuthManager authManager) {
+        this.transport = transport;
+        this.httpInterfaceManager = transport.getInterfaceManager();
+        this.authManager = authManager;
+        this.mediaChunkSize = Math.max(64, ConfigUtils.getInt("YOUTUBEIFY_MEDIA_CHUNK_KB", DEFAULT_MEDIA_CHUNK_KB)) * 1024;
+        this.mediaParallelChunks = ConfigUtils.getInt("YOUTUBEIFY_MEDIA_PARALLEL_CHUNKS", DEFAULT_MEDIA_PARALLEL_CHUNKS);
         log.info("YouTube audio source manager initialized");
     }
 
@@ -213,15 +229,30 @@ public class YouTubeAudioSourceManager implements AudioSourceManager, HttpConfig
         YouTubeAudioTrack youtubeTrack = (YouTubeAudioTrack) track;
         YouTubeAudioTrackInfo trackInfo = (YouTubeAudioTrackInfo) youtubeTrack.getInfo();
         
+        output.writeUTF(ENCODING_VERSION_PREFIX + ENCODING_VERSION);
         output.writeUTF(trackInfo.getVideoId());
+        output.writeInt(youtubeTrack.getItag());
     }
 
+    /**
+     * Decode a track encoded by {@link #encodeTrack(AudioTrack, DataOutput)}. Tracks of the original format,
+     * which is just the video ID, get the format chosen by the format policy.
+     */
     @Override
     public AudioTrack decodeTrack(AudioTrackInfo trackInfo, DataInput input) throws IOException {
-        String videoId = input.readUTF();
+        String first = input.readUTF();
+        String videoId = first;
+        int itag = 0;
+        
+        // Video IDs never start with the version prefix
+        if (first.startsWith(ENCODING_VERSION_PREFIX)) {
+            parseEncodingVersion(first);
+            videoId = input.readUTF();
+            itag = input.readInt();
+        }
         
         if (trackInfo instanceof YouTubeAudioTrackInfo) {
-            return new YouTubeAudioTrack((YouTubeAudioTrackInfo) trackInfo, this);
+            return new YouTubeAudioTrack(trackInfo, itag, this);
         } else {
             // Convert regular track info to YouTube track info
             YouTubeAudioTrackInfo youtubeTrackInfo = new YouTubeAudioTrackInfo(
@@ -233,23 +264,82 @@ public class YouTubeAudioSourceManager implements AudioSourceManager, HttpConfig
                     "https://www.youtube.com/watch?v=" + videoId
             );
             
-            return new YouTubeAudioTrack(youtubeTrackInfo, this);
+            return new YouTubeAudioTrack(youtubeTrackInfo, itag, this);
+        }
+    }
+
+    private static int parseEncodingVersion(String marker) throws IOException {
+        int version;
+        
+        try {
+            version = Integer.parseInt(marker.substring(ENCODING_VERSION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid YouTube track encoding marker: " + marker);
         }
+        
+        if (version < 2 || version > ENCODING_VERSION) {
+            throw new IOException("Unsupported YouTube track encoding version: " + version);
+        }
+        
+        return version;
     }
 
     @Override
     public void shutdown() {
-        httpInterfaceManager.close();
+        // The HTTP transport is shared and closed by its owner
     }
 
     @Override
     public void configureRequests(Function<RequestConfig, RequestConfig> configurator) {
-        httpInterfaceManager.configureRequests(configurator);
+        transport.configureRequests(configurator);
     }
 
     @Override
     public void configureBuilder(Consumer<HttpClientBuilder> configurator) {
-        httpInterfaceManager.configureBuilder(configurator);
+        transport.configureBuilder(configurator);
+    }
+
+    /**
+     * Create a track for a known video without fetching its details.
+     *
+     * @param videoId YouTube video ID
+     * @param title Track title
+     * @param author Track author
+     * @param length Track length in milliseconds
+     * @return YouTube track
+     */
+    public AudioTrack buildTrack(String videoId, String title, String author, long length) {
+        return buildTrack(videoId, title, author, length, 0);
+    }
+
+    /**
+     * Create a track for a known video without fetching its details.
+     *
+     * @param videoId YouTube video ID
+     * @param title Track title
+     * @param author Track author
+     * @param length Track length in milliseconds
+     * @param itag Format to play the track in if the video still has it, 0 to let the format policy choose
+     * @return YouTube track
+     */
+    public AudioTrack buildTrack(String videoId, String title, String author, long length, int itag) {
+        YouTubeAudioTrackInfo trackInfo = new YouTubeAudioTrackInfo(
+                title,
+                author,
+                length,
+                videoId,
+                false,
+                "https://www.youtube.com/watch?v=" + videoId
+        );
+        
+        return new YouTubeAudioTrack(trackInfo, itag, this);
+    }
+
+    /**
+     * @return Manager used for YouTube API calls
+     */
+    public YouTubeAuthManager getAuthManager() {
+        return authManager;
     }
 
     /**
@@ -260,4 +350,23 @@ public class YouTubeAudioSourceManager implements AudioSourceManager, HttpConfig
     public HttpInterface getHttpInterface() {
         return httpInterfaceManager.getInterface();
     }
+
+    /**
+     * Open the media of a stream URL. Media of known size is downloaded in parallel chunks unless that is
+     * disabled, anything else is read over a single connection with range requests.
+     *
+     * @param httpInterface HTTP interface of the playing track, used for single connection streams
+     * @param url Media URL
+     * @param contentLength Size of the media in bytes, 0 if unknown
+     * @param bitrate Bitrate of the media in bits per second, 0 if unknown
+     * @return Seekable media stream, to be closed by the caller
+     */
+    public SeekableInputStream openMediaStream(HttpInterface httpInterface, String url, long contentLength, long bitrate) {
+        if (contentLength > 0 && mediaParallelChunks > 0) {
+            return new YouTubeChunkedMediaStream(httpInterfaceManager, transport.getMediaDownloadExecutor(), url,
+                    contentLength, bitrate, mediaChunkSize, mediaParallelChunks);
+        }
+        
+        return new YouTubeMediaStream(httpInterface, url, contentLength);
+    }
 }
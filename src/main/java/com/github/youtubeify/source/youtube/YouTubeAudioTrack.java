@@ -1,20 +1,26 @@
 package com.github.youtubeify.source.youtube;
 
 import com.github.youtubeify.util.HttpUtils;
+import com.sedmelluq.discord.lavaplayer.container.matroska.MatroskaAudioTrack;
 import com.sedmelluq.discord.lavaplayer.container.mp3.Mp3AudioTrack;
+import com.sedmelluq.discord.lavaplayer.container.mpeg.MpegAudioTrack;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import com.sedmelluq.discord.lavaplayer.track.DelegatedAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.sedmelluq.discord.lavaplayer.tools.FriendlyException.Severity;
 
@@ -26,14 +32,15 @@ public class YouTubeAudioTrack extends DelegatedAudioTrack {
     private static final Logger log = LoggerFactory.getLogger(YouTubeAudioTrack.class);
 
     private final YouTubeAudioSourceManager sourceManager;
+    /** Format the track was played in, shared with clones so replays and encodings keep using it */
+    private final AtomicInteger itag;
 
     /**
      * @param trackInfo Track info
      * @param sourceManager Source manager which was used to find this track
      */
     public YouTubeAudioTrack(YouTubeAudioTrackInfo trackInfo, YouTubeAudioSourceManager sourceManager) {
-        super(trackInfo);
-        this.sourceManager = sourceManager;
+        this(trackInfo, 0, sourceManager);
     }
 
     /**
@@ -41,10 +48,31 @@ public class YouTubeAudioTrack extends DelegatedAudioTrack {
      * @param sourceManager Source manager which was used to find this track
      */
     public YouTubeAudioTrack(AudioTrackInfo trackInfo, YouTubeAudioSourceManager sourceManager) {
+        this(trackInfo, 0, sourceManager);
+    }
+
+    /**
+     * @param trackInfo Track info
+     * @param itag Format to play the track in if the video still has it, 0 to let the format policy choose
+     * @param sourceManager Source manager which was used to find this track
+     */
+    public YouTubeAudioTrack(AudioTrackInfo trackInfo, int itag, YouTubeAudioSourceManager sourceManager) {
+        this(trackInfo, new AtomicInteger(itag), sourceManager);
+    }
+
+    private YouTubeAudioTrack(AudioTrackInfo trackInfo, AtomicInteger itag, YouTubeAudioSourceManager sourceManager) {
         super(trackInfo);
+        this.itag = itag;
         this.sourceManager = sourceManager;
     }
 
+    /**
+     * @return Format the track was last played in, or the one it was created with, 0 if not known
+     */
+    public int getItag() {
+        return itag.get();
+    }
+
     @Override
     public void process(LocalAudioTrackExecutor executor) throws Exception {
         try (HttpInterface httpInterface = sourceManager.getHttpInterface()) {
@@ -79,7 +107,7 @@ public class YouTubeAudioTrack extends DelegatedAudioTrack {
     private void processStandardTrack(LocalAudioTrackExecutor executor, HttpInterface httpInterface, String videoId) throws Exception {
         try {
             // Get stream URL from InnerTube API (this would be implemented in YouTubeAuthManager)
-            Map<String, String> streamInfo = sourceManager.authManager.getStreamInfo(videoId);
+            Map<String, String> streamInfo = sourceManager.getAuthManager().getStreamInfo(videoId, itag.get());
             
             if (streamInfo == null || !streamInfo.containsKey("url")) {
                 throw new FriendlyException("Could not find stream URL for video " + videoId, Severity.SUSPICIOUS, null);
@@ -87,39 +115,104 @@ public class YouTubeAudioTrack extends DelegatedAudioTrack {
             
             String streamUrl = streamInfo.get("url");
             String contentType = streamInfo.getOrDefault("contentType", "audio/mp4");
+            long contentLength = parseLong(streamInfo.get("contentLength"));
+            long bitrate = parseLong(streamInfo.get("bitrate"));
+            int selectedItag = (int) parseLong(streamInfo.get("itag"));
             
-            log.debug("Starting audio stream for video {} with URL: {}", videoId, streamUrl);
+            if (selectedItag > 0) {
+                itag.set(selectedItag);
+            }
+            
+            log.debug("Starting {} stream for video {} with URL: {}", contentType, videoId, streamUrl);
             
-            try (InputStream stream = new URL(streamUrl).openStream()) {
-                if (contentType.contains("audio/mp4") || contentType.contains("audio/mpeg")) {
-                    // Process as MP3
-                    processAsMP3(executor, stream);
-                } else {
-                    // Process with appropriate format handler
-                    processWithAppropriateFdormat(executor, stream, contentType);
-                }
+            // Range requests through the shared googlevideo connection pool, so seeks jump straight to the target
+            try (SeekableInputStream stream = sourceManager.openMediaStream(httpInterface, streamUrl, contentLength, bitrate)) {
+                processDelegate(createContainerTrack(stream, contentType), executor);
             }
         } catch (Exception e) {
+            if (isInterrupt(e)) {
+                // The player stopped or skipped the track
+                throw e;
+            }
+            
+            if (hasCause(e, MediaStreamException.class)) {
+                // The cached stream URL may have been rejected, make sure the next attempt fetches a new one
+                sourceManager.getAuthManager().invalidateStreamInfo(videoId);
+            }
+            
+            if (e instanceof FriendlyException) {
+                throw e;
+            }
+            
             log.error("Error processing YouTube track {}", videoId, e);
             throw new FriendlyException("Error processing YouTube track: " + e.getMessage(), Severity.FAULT, e);
         }
     }
 
-    private void processAsMP3(LocalAudioTrackExecutor executor, InputStream stream) throws Exception {
-        // Create an MP3 track from the stream and process it
-        AudioTrack delegateTrack = new Mp3AudioTrack(trackInfo, stream);
-        processDelegate(executor, delegateTrack);
+    private static boolean isInterrupt(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            // A socket timeout is an InterruptedIOException too, but a failure of the stream
+            if (cause instanceof InterruptedException
+                    || cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+
+    private static boolean hasCause(Throwable error, Class<? extends Throwable> type) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
-    private void processWithAppropriateFdormat(LocalAudioTrackExecutor executor, InputStream stream, String contentType) throws Exception {
-        // This would handle other formats if needed
-        // For simplicity, this example just uses MP3 processing for all
-        processAsMP3(executor, stream);
+    /**
+     * Create the LavaPlayer track that reads the container of the stream. The Matroska track hands the Opus
+     * packets of WebM streams to the player as they are when the output is Opus and no filters are active,
+     * so those streams are neither decoded nor encoded again.
+     *
+     * @param stream Media stream
+     * @param contentType MIME type of the stream, possibly with a codecs parameter
+     * @return Track that plays the stream
+     */
+    private InternalAudioTrack createContainerTrack(SeekableInputStream stream, String contentType) {
+        int parameters = contentType.indexOf(';');
+        String mediaType = (parameters >= 0 ? contentType.substring(0, parameters) : contentType).trim().toLowerCase(Locale.ROOT);
+        
+        switch (mediaType) {
+            case "audio/webm":
+            case "video/webm":
+                return new MatroskaAudioTrack(trackInfo, stream);
+            case "audio/mp4":
+            case "video/mp4":
+                return new MpegAudioTrack(trackInfo, stream);
+            case "audio/mpeg":
+                return new Mp3AudioTrack(trackInfo, stream);
+            default:
+                throw new FriendlyException("Unsupported stream format: " + contentType, Severity.SUSPICIOUS, null);
+        }
     }
 
     @Override
     protected AudioTrack makeShallowClone() {
-        return new YouTubeAudioTrack(trackInfo, sourceManager);
+        return new YouTubeAudioTrack(trackInfo, itag, sourceManager);
     }
 
     @Override
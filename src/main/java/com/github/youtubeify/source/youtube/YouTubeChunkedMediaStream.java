@@ -0,0 +1,358 @@
+package com.github.youtubeify.source.youtube;
+
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterfaceManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+import com.sedmelluq.discord.lavaplayer.track.info.AudioTrackInfoProvider;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Seekable stream of a YouTube media URL that downloads the media in fixed-size chunks, several at a time.
+ *
+ * googlevideo throttles long-lived responses to about the playback speed, while short requests for a part of
+ * the file with the range parameter are served at full speed. The stream keeps a window of consecutive chunks
+ * downloading ahead of the read position and hands them to the reader in order; at most the window plus the
+ * chunk being read are held in memory. A seek outside of the current chunk drops the window and starts a new
+ * one at the target, like a hard seek of {@link YouTubeMediaStream}.
+ *
+ * The downloads run on the executor passed in, normally the media download pool of the transport, whose fixed
+ * number of threads caps the chunks downloading at the same time across all streams; chunks of a stream wait
+ * in its queue when every thread is busy. A dropped chunk that is still queued is skipped, and one that is
+ * downloading has its request aborted so it frees its thread and connection right away.
+ *
+ * The download throughput, measured while at least one chunk is in flight, is compared to the bitrate of the
+ * stream and logged when the stream is closed.
+ */
+public class YouTubeChunkedMediaStream extends SeekableInputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(YouTubeChunkedMediaStream.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final HttpInterfaceManager interfaceManager;
+    private final Executor executor;
+    private final String url;
+    private final int chunkSize;
+    private final int parallelChunks;
+    private final long bitrate;
+    private final Throughput throughput = new Throughput();
+    private final ArrayDeque<Chunk> window = new ArrayDeque<>();
+    private final byte[] single = new byte[1];
+    private byte[] current;
+    private long currentStart;
+    private long nextChunkStart;
+    private long position;
+    private boolean closed;
+
+    /**
+     * @param interfaceManager Manager of the HTTP interfaces used by the download threads
+     * @param executor Executor that runs the blocking chunk downloads, its thread count limits the downloads of all streams sharing it
+     * @param url Media URL
+     * @param contentLength Size of the media in bytes, must be known
+     * @param bitrate Bitrate of the media in bits per second, 0 if unknown
+     * @param chunkSize Size of a chunk in bytes
+     * @param parallelChunks Number of chunks downloaded ahead of the read position at the same time
+     */
+    public YouTubeChunkedMediaStream(HttpInterfaceManager interfaceManager, Executor executor, String url,
+                                     long contentLength, long bitrate, int chunkSize, int parallelChunks) {
+        super(contentLength, chunkSize);
+        this.interfaceManager = interfaceManager;
+        this.executor = executor;
+        this.url = url;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.parallelChunks = Math.max(1, parallelChunks);
+        this.bitrate = bitrate;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        } else if (length == 0) {
+            return 0;
+        } else if (position >= contentLength) {
+            return -1;
+        }
+
+        if (current == null || position >= currentStart + current.length) {
+            takeChunk();
+        }
+
+        int chunkOffset = (int) (position - currentStart);
+        int read = Math.min(length, current.length - chunkOffset);
+        System.arraycopy(current, chunkOffset, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        if (current != null && count > 0 && position + count <= currentStart + current.length) {
+            position += count;
+            return count;
+        }
+
+        return super.skip(count);
+    }
+
+    @Override
+    public int available() {
+        return current != null ? (int) Math.max(0, currentStart + current.length - position) : 0;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    protected void seekHard(long targetPosition) {
+        cancelWindow();
+        current = null;
+        position = targetPosition;
+        nextChunkStart = targetPosition;
+    }
+
+    @Override
+    public boolean canSeekHard() {
+        return true;
+    }
+
+    @Override
+    public List<AudioTrackInfoProvider> getTrackInfoProviders() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        cancelWindow();
+        current = null;
+
+        double ratio = getThroughputRatio();
+
+        if (ratio > 0 && ratio < 1) {
+            log.warn("Media download reached only {}x the stream bitrate, playback may stall", String.format("%.2f", ratio));
+        } else {
+            log.debug("Media download reached {} KiB/s, {}x the stream bitrate", throughput.bytesPerSecond() / 1024,
+                    String.format("%.2f", ratio));
+        }
+    }
+
+    /**
+     * @return Download throughput divided by the bitrate of the stream, 0 if either is not known yet
+     */
+    public double getThroughputRatio() {
+        return bitrate > 0 ? throughput.bytesPerSecond() * 8.0 / bitrate : 0;
+    }
+
+    /**
+     * Wait for the chunk at the read position, topping up the window before and after.
+     */
+    private void takeChunk() throws IOException {
+        if (window.isEmpty() || window.peekFirst().start != position) {
+            seekHard(position);
+        }
+
+        fillWindow();
+        Chunk chunk = window.pollFirst();
+
+        try {
+            current = chunk.future.get();
+            currentStart = chunk.start;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            chunk.cancel();
+            cancelWindow();
+            throw new InterruptedIOException("Interrupted while waiting for media chunk at byte " + chunk.start);
+        } catch (ExecutionException e) {
+            cancelWindow();
+            Throwable cause = e.getCause();
+            throw new MediaStreamException("Failed to download media chunk at byte " + chunk.start, cause);
+        }
+
+        fillWindow();
+    }
+
+    private void fillWindow() {
+        while (window.size() < parallelChunks && nextChunkStart < contentLength) {
+            long end = Math.min(contentLength, nextChunkStart + chunkSize);
+            Chunk chunk = new Chunk(nextChunkStart, (int) (end - nextChunkStart));
+
+            chunk.future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return download(chunk);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+
+            window.addLast(chunk);
+            nextChunkStart = end;
+        }
+    }
+
+    private void cancelWindow() {
+        for (Chunk chunk : window) {
+            chunk.cancel();
+        }
+
+        window.clear();
+    }
+
+    private byte[] download(Chunk chunk) throws IOException {
+        IOException failure = null;
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS && !chunk.cancelled; attempt++) {
+            throughput.started();
+            long received = 0;
+
+            try (HttpInterface httpInterface = interfaceManager.getInterface()) {
+                byte[] data = new byte[chunk.length];
+                received = downloadInto(httpInterface, chunk, data);
+
+                if (received == chunk.length) {
+                    return data;
+                }
+            } catch (IOException e) {
+                failure = e;
+                log.debug("Attempt {} to download media chunk at byte {} failed: {}", attempt, chunk.start, e.getMessage());
+            } finally {
+                throughput.finished(received);
+            }
+        }
+
+        if (chunk.cancelled) {
+            throw new IOException("Download of media chunk at byte " + chunk.start + " was cancelled");
+        }
+
+        throw failure != null ? failure : new IOException("Failed to download media chunk at byte " + chunk.start);
+    }
+
+    /**
+     * @return Number of bytes received, less than the chunk length only if the chunk was cancelled
+     */
+    private long downloadInto(HttpInterface httpInterface, Chunk chunk, byte[] data) throws IOException {
+        long last = chunk.start + chunk.length - 1;
+        HttpGet request = new HttpGet(url + (url.indexOf('?') >= 0 ? "&" : "?") + "range=" + chunk.start + "-" + last);
+        request.addHeader("Range", "bytes=" + chunk.start + "-" + last);
+        chunk.request = request;
+
+        // A cancel that came before the request was published could not abort it
+        if (chunk.cancelled) {
+            return 0;
+        }
+
+        // Closing the response before the end aborts the connection, which is what a cancelled chunk wants
+        try (CloseableHttpResponse response = httpInterface.execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+
+            if (statusCode != 200 && statusCode != 206) {
+                throw new IOException("Unexpected status code " + statusCode + " from stream URL for chunk at byte " + chunk.start);
+            } else if (entity == null || entity.getContentLength() >= 0 && entity.getContentLength() != chunk.length) {
+                throw new IOException("Stream URL ignored the range of the chunk at byte " + chunk.start);
+            }
+
+            InputStream content = entity.getContent();
+            int received = 0;
+
+            while (received < data.length && !chunk.cancelled) {
+                int read = content.read(data, received, Math.min(READ_BUFFER_SIZE, data.length - received));
+
+                if (read < 0) {
+                    throw new IOException("Media chunk at byte " + chunk.start + " ended after " + received + " of " + data.length + " bytes");
+                }
+
+                received += read;
+            }
+
+            return received;
+        }
+    }
+
+    /**
+     * A range of the media and its download.
+     */
+    private static class Chunk {
+
+        private final long start;
+        private final int length;
+        private CompletableFuture<byte[]> future;
+        private volatile HttpGet request;
+        private volatile boolean cancelled;
+
+        private Chunk(long start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Drop the chunk: a queued download never starts and a running one is aborted.
+         */
+        private void cancel() {
+            cancelled = true;
+            future.cancel(false);
+            HttpGet running = request;
+
+            if (running != null) {
+                running.abort();
+            }
+        }
+    }
+
+    /**
+     * Bytes received and the time during which at least one chunk was downloading.
+     */
+    private static class Throughput {
+
+        private int active;
+        private long busySince;
+        private long busyNanos;
+        private long bytes;
+
+        private synchronized void started() {
+            if (active++ == 0) {
+                busySince = System.nanoTime();
+            }
+        }
+
+        private synchronized void finished(long received) {
+            bytes += received;
+
+            if (--active == 0) {
+                busyNanos += System.nanoTime() - busySince;
+            }
+        }
+
+        private synchronized long bytesPerSecond() {
+            long nanos = busyNanos + (active > 0 ? System.nanoTime() - busySince : 0);
+            return nanos > 0 ? (long) (bytes * 1e9 / nanos) : 0;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.youtubeify.source.youtube;
+
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+import com.sedmelluq.discord.lavaplayer.track.info.AudioTrackInfoProvider;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Seekable stream of a YouTube media URL, read through an {@link HttpInterface} with HTTP range requests.
+ *
+ * The container readers of LavaPlayer look up the byte offset of a seek target in the index of the file, the
+ * Cues of WebM and the sidx box of MP4, and seek the stream there. A seek further than a short skip closes the
+ * current response and the next read requests the range starting at the target, so a seek costs one request
+ * no matter where it lands. A connection that fails or ends early is reopened at the current position,
+ * which the reader does not notice.
+ */
+public class YouTubeMediaStream extends SeekableInputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(YouTubeMediaStream.class);
+
+    private static final long MAX_SKIP_DISTANCE = 512 * 1024;
+    private static final int MAX_RECONNECTS = 3;
+
+    private final HttpInterface httpInterface;
+    private final String url;
+    private final byte[] single = new byte[1];
+    private CloseableHttpResponse response;
+    private InputStream content;
+    private long position;
+    private int failedAttempts;
+    private boolean closed;
+
+    /**
+     * @param httpInterface HTTP interface used for all requests of the stream
+     * @param url Media URL
+     * @param contentLength Size of the media in bytes, 0 if unknown
+     */
+    public YouTubeMediaStream(HttpInterface httpInterface, String url, long contentLength) {
+        super(contentLength > 0 ? contentLength : Long.MAX_VALUE, MAX_SKIP_DISTANCE);
+        this.httpInterface = httpInterface;
+        this.url = url;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            } else if (position >= contentLength) {
+                return -1;
+            }
+
+            try {
+                if (content == null && !connect()) {
+                    return -1;
+                }
+
+                int read = content.read(buffer, offset, length);
+
+                if (read > 0) {
+                    position += read;
+                    failedAttempts = 0;
+                    return read;
+                } else if (contentLength == Long.MAX_VALUE) {
+                    // Without a known length the end of the response is the end of the media
+                    return -1;
+                }
+
+                throw new IOException("Media response ended at byte " + position + " of " + contentLength);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                disconnect();
+
+                if (++failedAttempts > MAX_RECONNECTS) {
+                    throw e instanceof MediaStreamException ? e : new MediaStreamException("Media stream failed at byte " + position, e);
+                }
+
+                log.debug("Reconnecting media stream at byte {} after failure: {}", position, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return content != null ? content.available() : 0;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    protected void seekHard(long targetPosition) throws IOException {
+        // The range starting at the target is requested by the next read
+        disconnect();
+        position = targetPosition;
+    }
+
+    @Override
+    public boolean canSeekHard() {
+        return true;
+    }
+
+    @Override
+    public List<AudioTrackInfoProvider> getTrackInfoProviders() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        disconnect();
+    }
+
+    /**
+     * Request the media from the current position.
+     *
+     * @return False if the position is past the end of the media
+     * @throws IOException if the request failed
+     */
+    private boolean connect() throws IOException {
+        HttpGet request = new HttpGet(url);
+        request.addHeader("Range", "bytes=" + position + "-");
+
+        CloseableHttpResponse newResponse = httpInterface.execute(request);
+        int statusCode = newResponse.getStatusLine().getStatusCode();
+
+        if (statusCode == 206 || statusCode == 200 && position == 0) {
+            response = newResponse;
+            content = newResponse.getEntity().getContent();
+            return true;
+        }
+
+        newResponse.close();
+
+        if (statusCode == 416) {
+            Header contentRange = newResponse.getFirstHeader("Content-Range");
+            log.debug("Media stream position {} is past the end ({})", position, contentRange != null ? contentRange.getValue() : "unknown length");
+            return false;
+        }
+
+        throw new MediaStreamException("Unexpected status code " + statusCode + " from stream URL for range starting at " + position);
+    }
+
+    private void disconnect() {
+        if (response != null) {
+            try {
+                // Closing without reading the rest aborts the connection instead of downloading the remainder
+                response.close();
+            } catch (IOException e) {
+                log.debug("Failed to close media response", e);
+            }
+        }
+
+        response = null;
+        content = null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.youtubeify.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many asynchronous calls are in flight at the same time without blocking a thread per waiting call.
+ *
+ * A call submitted while the limit is reached is queued and started, in submission order, when a running call
+ * completes. Queued calls are started on the given executor rather than on the thread that completed the
+ * previous call, so a long queue of calls that complete immediately does not grow the stack.
+ */
+public class AsyncLimiter {
+
+    private final int maxInFlight;
+    private final Executor executor;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int inFlight;
+
+    /**
+     * @param maxInFlight Maximum number of calls in flight at the same time
+     * @param executor Executor that starts queued calls
+     */
+    public AsyncLimiter(int maxInFlight, Executor executor) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.executor = executor;
+    }
+
+    /**
+     * Start a call now if the limit allows it, otherwise when an earlier call completes.
+     *
+     * @param call Starts the call
+     * @param <T> Result type
+     * @return Future of the result of the call
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> start(call, result);
+        boolean startNow;
+
+        synchronized (this) {
+            startNow = inFlight < maxInFlight;
+
+            if (startNow) {
+                inFlight++;
+            } else {
+                waiting.add(start);
+            }
+        }
+
+        if (startNow) {
+            start.run();
+        }
+
+        return result;
+    }
+
+    private <T> void start(Supplier<CompletableFuture<T>> call, CompletableFuture<T> result) {
+        CompletableFuture<T> future;
+
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        future.whenComplete((value, error) -> {
+            release();
+
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void release() {
+        Runnable next;
+
+        synchronized (this) {
+            next = waiting.poll();
+
+            // The slot of the completed call passes to the next queued call
+            if (next == null) {
+                inFlight--;
+            }
+        }
+
+        if (next != null) {
+            try {
+                executor.execute(next);
+            } catch (RejectedExecutionException e) {
+                // The executor has been shut down, the call still completes its future
+                next.run();
+            }
+        }
+    }
+}
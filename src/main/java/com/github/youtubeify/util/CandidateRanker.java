@@ -0,0 +1,212 @@
+package com.github.youtubeify.util;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ranks the results of a YouTube search against the Spotify track they should match.
+ *
+ * Each candidate gets a score from the similarity of its title and channel to the Spotify title and artist,
+ * and from the difference between its length and the Spotify duration. Auto-generated "- Topic" channels,
+ * which upload the studio recording, get a bonus; keywords such as "live", "cover" or "1 hour" that are in
+ * the video title but not in the Spotify title are penalized. Candidates whose length is far off, such as
+ * hour-long loops, are never chosen.
+ */
+public class CandidateRanker {
+
+    private static final double TITLE_WEIGHT = 0.45;
+    private static final double ARTIST_WEIGHT = 0.2;
+    private static final double DURATION_WEIGHT = 0.35;
+    private static final double TOPIC_BONUS = 0.1;
+    private static final double KEYWORD_PENALTY = 0.25;
+
+    /** Similarity below which a title or channel is considered unrelated */
+    private static final double MIN_SIMILARITY = 0.4;
+    /** Similarity given to a channel when the artist is only named in the video title */
+    private static final double ARTIST_IN_TITLE_SIMILARITY = 0.75;
+
+    private static final long DURATION_EXACT_MS = 3000;
+    private static final long DURATION_ZERO_MS = 30000;
+    private static final long DURATION_REJECT_MS = 90000;
+
+    private static final String TOPIC_SUFFIX = " - Topic";
+    private static final String[] CHANNEL_SUFFIXES = {" - topic", "vevo", " official"};
+    private static final String[] PENALTY_KEYWORDS = {
+            "live", "cover", "karaoke", "instrumental", "remix", "sped up", "slowed", "nightcore", "reverb", "8d",
+            "loop", "hour", "hours", "reaction", "tutorial", "lesson", "full album"
+    };
+
+    private final double threshold;
+
+    /**
+     * @param threshold Score a candidate needs to be accepted without looking for better ones
+     */
+    public CandidateRanker(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return Score a candidate needs to be accepted without looking for better ones
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Find the best candidate for a Spotify track.
+     *
+     * @param title Spotify track title
+     * @param artist Spotify artist name
+     * @param durationMs Spotify track duration in milliseconds, 0 if unknown
+     * @param candidates Search results in the order YouTube returned them
+     * @return Highest scoring candidate, the earliest one on ties, or null if every candidate was rejected
+     */
+    public Candidate rank(String title, String artist, long durationMs, List<AudioTrack> candidates) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        // Release suffixes such as " - Remastered 2011" are dropped on both sides, they are not part of the song
+        String normalizedTitle = TrackUtils.normalizeTitleForComparison(TrackUtils.normalizeSearchQuery(title));
+        String normalizedArtist = TrackUtils.normalizeTitleForComparison(artist);
+
+        List<String> titles = new ArrayList<>(candidates.size());
+        List<String> channels = new ArrayList<>(candidates.size());
+
+        for (AudioTrack candidate : candidates) {
+            titles.add(TrackUtils.normalizeSearchQuery(candidate.getInfo().title));
+            channels.add(candidate.getInfo().author);
+        }
+
+        List<String> candidateTitles = TrackUtils.normalizeTitlesForComparison(titles);
+        List<String> candidateChannels = TrackUtils.normalizeTitlesForComparison(channels);
+        Candidate best = null;
+
+        for (int i = 0; i < candidates.size(); i++) {
+            AudioTrackInfo info = candidates.get(i).getInfo();
+            long difference = Math.abs(info.length - durationMs);
+            boolean durationKnown = durationMs > 0 && info.length > 0;
+
+            if (durationKnown && difference > Math.max(DURATION_REJECT_MS, durationMs / 2)) {
+                continue;
+            }
+
+            String candidateTitle = candidateTitles.get(i);
+            double score = TITLE_WEIGHT * titleScore(normalizedTitle, candidateTitle)
+                    + ARTIST_WEIGHT * artistScore(normalizedArtist, candidateChannels.get(i), candidateTitle)
+                    + DURATION_WEIGHT * (durationKnown ? durationScore(difference) : 0.5);
+
+            if (info.author != null && info.author.endsWith(TOPIC_SUFFIX)) {
+                score += TOPIC_BONUS;
+            }
+
+            for (String keyword : PENALTY_KEYWORDS) {
+                // A keyword the Spotify title has too, as in "Song - Live at Wembley", is what was asked for
+                if (containsWord(candidateTitle, keyword) && !containsWord(normalizedTitle, keyword)) {
+                    score -= KEYWORD_PENALTY;
+                }
+            }
+
+            if (best == null || score > best.score) {
+                best = new Candidate(candidates.get(i), score);
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @param candidate Result of {@link #rank(String, String, long, List)}
+     * @return True if the candidate is good enough to use without issuing another search
+     */
+    public boolean isAccepted(Candidate candidate) {
+        return candidate != null && candidate.score >= threshold;
+    }
+
+    private static double titleScore(String title, String candidateTitle) {
+        // Videos are usually titled "Artist - Title", topic uploads just "Title"; the artist is scored separately
+        double best = TrackUtils.compareNormalizedTitles(title, candidateTitle, MIN_SIMILARITY);
+
+        int separator = candidateTitle.indexOf(" - ");
+
+        if (separator >= 0) {
+            String withoutPrefix = candidateTitle.substring(separator + 3);
+            best = Math.max(best, TrackUtils.compareNormalizedTitles(title, withoutPrefix, Math.max(best, MIN_SIMILARITY)));
+        }
+
+        return best;
+    }
+
+    private static double artistScore(String artist, String channel, String candidateTitle) {
+        for (String suffix : CHANNEL_SUFFIXES) {
+            if (channel.endsWith(suffix)) {
+                channel = channel.substring(0, channel.length() - suffix.length());
+                break;
+            }
+        }
+
+        double score = TrackUtils.compareNormalizedTitles(artist, channel, MIN_SIMILARITY);
+
+        if (score < ARTIST_IN_TITLE_SIMILARITY && !artist.isEmpty() && containsWord(candidateTitle, artist)) {
+            score = ARTIST_IN_TITLE_SIMILARITY;
+        }
+
+        return score;
+    }
+
+    private static double durationScore(long difference) {
+        if (difference <= DURATION_EXACT_MS) {
+            return 1.0;
+        }
+
+        return Math.max(0.0, 1.0 - (double) (difference - DURATION_EXACT_MS) / (DURATION_ZERO_MS - DURATION_EXACT_MS));
+    }
+
+    private static boolean containsWord(String text, String word) {
+        int index = text.indexOf(word);
+
+        while (index >= 0) {
+            int end = index + word.length();
+
+            if ((index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1)))
+                    && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)))) {
+                return true;
+            }
+
+            index = text.indexOf(word, index + 1);
+        }
+
+        return false;
+    }
+
+    /**
+     * A search result together with its score.
+     */
+    public static class Candidate {
+
+        private final AudioTrack track;
+        private final double score;
+
+        private Candidate(AudioTrack track, double score) {
+            this.track = track;
+            this.score = score;
+        }
+
+        /**
+         * @return YouTube track
+         */
+        public AudioTrack getTrack() {
+            return track;
+        }
+
+        /**
+         * @return Score of the track, higher is better
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+}
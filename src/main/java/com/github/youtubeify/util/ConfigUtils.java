@@ -0,0 +1,112 @@
+package com.github.youtubeify.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility methods for reading plugin settings from environment variables.
+ */
+public class ConfigUtils {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigUtils.class);
+
+    /**
+     * Read a string setting.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Value to use when the variable is not set
+     * @return Configured value or the default
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = System.getenv(name);
+
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        return value.trim();
+    }
+
+    /**
+     * Read an integer setting.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Value to use when the variable is not set or invalid
+     * @return Configured value or the default
+     */
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for {}: {}, using default {}", name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a long setting.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Value to use when the variable is not set or invalid
+     * @return Configured value or the default
+     */
+    public static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for {}: {}, using default {}", name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a decimal setting.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Value to use when the variable is not set or invalid
+     * @return Configured value or the default
+     */
+    public static double getDouble(String name, double defaultValue) {
+        String value = getString(name, null);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for {}: {}, using default {}", name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a boolean setting.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Value to use when the variable is not set
+     * @return Configured value or the default
+     */
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        return value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("yes");
+    }
+}
@@ -0,0 +1,262 @@
+package com.github.youtubeify.util;
+
+import java.util.Arrays;
+
+/**
+ * Levenshtein distance without allocations.
+ *
+ * When the shorter string has at most 64 characters, the distance is computed with the bit-parallel algorithm
+ * of Myers in the formulation of Hyyro, which processes a whole column of the distance matrix per character
+ * with a few word operations. Longer strings use a dynamic program restricted to a diagonal band that is
+ * widened until the result fits in it. All work arrays are kept per thread.
+ *
+ * Both algorithms accept a maximum distance and give up as soon as the distance is certain to exceed it.
+ */
+public class EditDistance {
+
+    private static final int MAX_BIT_PARALLEL_LENGTH = 64;
+    private static final int MIN_BAND = 16;
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private EditDistance() {
+    }
+
+    /**
+     * @param a First string
+     * @param b Second string
+     * @return Levenshtein distance between the strings
+     */
+    public static int distance(CharSequence a, CharSequence b) {
+        return distance(a, b, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Compute the Levenshtein distance, unless it is larger than the given maximum.
+     *
+     * @param a First string
+     * @param b Second string
+     * @param maxDistance Largest distance of interest
+     * @return Levenshtein distance, or maxDistance + 1 if the distance is larger than maxDistance
+     */
+    public static int distance(CharSequence a, CharSequence b, int maxDistance) {
+        // Use the shorter string as the pattern
+        if (a.length() > b.length()) {
+            CharSequence swap = a;
+            a = b;
+            b = swap;
+        }
+
+        int limit = Math.min(maxDistance, b.length());
+
+        if (b.length() - a.length() > limit) {
+            return maxDistance + 1;
+        } else if (a.length() == 0) {
+            return b.length();
+        }
+
+        Workspace workspace = WORKSPACE.get();
+        int result;
+
+        if (a.length() <= MAX_BIT_PARALLEL_LENGTH) {
+            result = bitParallel(a, b, limit, workspace);
+        } else if (limit < b.length()) {
+            result = banded(a, b, limit, workspace);
+        } else {
+            result = bandedDoubling(a, b, workspace);
+        }
+
+        return result > limit ? maxDistance + 1 : result;
+    }
+
+    private static int bitParallel(CharSequence pattern, CharSequence text, int limit, Workspace workspace) {
+        int m = pattern.length();
+        int n = text.length();
+        long last = 1L << (m - 1);
+
+        workspace.loadPattern(pattern);
+
+        try {
+            long pv = -1L;
+            long mv = 0L;
+            int score = m;
+
+            for (int j = 0; j < n; j++) {
+                long eq = workspace.peq(text.charAt(j));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+
+                if ((ph & last) != 0) {
+                    score++;
+                } else if ((mh & last) != 0) {
+                    score--;
+                }
+
+                // Every remaining character can lower the distance by at most one
+                if (score - (n - j - 1) > limit) {
+                    return limit + 1;
+                }
+
+                ph = (ph << 1) | 1L;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+
+            return score;
+        } finally {
+            workspace.clearPattern(pattern);
+        }
+    }
+
+    private static int bandedDoubling(CharSequence a, CharSequence b, Workspace workspace) {
+        int band = Math.max(MIN_BAND, b.length() - a.length());
+
+        while (true) {
+            int result = banded(a, b, band, workspace);
+
+            // Paths leaving the band cost more than the band width, so a result within the band is exact
+            if (result <= band || band >= b.length()) {
+                return result;
+            }
+
+            band = Math.min(b.length(), band * 2);
+        }
+    }
+
+    /**
+     * Dynamic program over the cells at most band away from the diagonal.
+     *
+     * @return Distance, or band + 1 if it is larger than band
+     */
+    private static int banded(CharSequence a, CharSequence b, int band, Workspace workspace) {
+        int n = a.length();
+        int m = b.length();
+        int outside = band + 1;
+        int[] previous = workspace.row(0, m + 1);
+        int[] current = workspace.row(1, m + 1);
+
+        for (int j = 0; j <= Math.min(m, band); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            int low = Math.max(1, i - band);
+            int high = Math.min(m, i + band);
+            int previousHigh = Math.min(m, i - 1 + band);
+            int left = low == 1 ? i : outside;
+            int rowMin = left;
+            char c = a.charAt(i - 1);
+
+            current[low - 1] = left;
+
+            for (int j = low; j <= high; j++) {
+                int value = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                value = Math.min(value, left + 1);
+
+                if (j <= previousHigh) {
+                    value = Math.min(value, previous[j] + 1);
+                }
+
+                current[j] = value;
+                left = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            if (rowMin > band) {
+                return outside;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return Math.min(previous[m], outside);
+    }
+
+    /**
+     * Per thread work arrays: the pattern bit masks of the bit-parallel algorithm and the rows of the
+     * banded one.
+     */
+    private static class Workspace {
+
+        private static final int HASH_SLOTS = 128;
+
+        /** Bit masks of the pattern positions of each Latin-1 character */
+        private final long[] latinPeq = new long[256];
+        /** Open addressing table for the other characters, which can not be 0 */
+        private final char[] otherKeys = new char[HASH_SLOTS];
+        private final long[] otherPeq = new long[HASH_SLOTS];
+        private final int[][] rows = new int[2][64];
+
+        private void loadPattern(CharSequence pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+
+                if (c < 256) {
+                    latinPeq[c] |= 1L << i;
+                } else {
+                    int slot = slot(c);
+                    otherKeys[slot] = c;
+                    otherPeq[slot] |= 1L << i;
+                }
+            }
+        }
+
+        private void clearPattern(CharSequence pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+
+                if (c < 256) {
+                    latinPeq[c] = 0;
+                }
+            }
+
+            // Slots can not be cleared one by one without breaking probe chains, but are only used for non-Latin text
+            if (hasOther(pattern)) {
+                Arrays.fill(otherKeys, (char) 0);
+                Arrays.fill(otherPeq, 0);
+            }
+        }
+
+        private long peq(char c) {
+            if (c < 256) {
+                return latinPeq[c];
+            }
+
+            int slot = slot(c);
+            return otherKeys[slot] == c ? otherPeq[slot] : 0;
+        }
+
+        private int slot(char c) {
+            // At most 64 distinct keys in 128 slots, so there is always a free slot
+            int slot = (c * 0x9E37) & (HASH_SLOTS - 1);
+
+            while (otherKeys[slot] != 0 && otherKeys[slot] != c) {
+                slot = (slot + 1) & (HASH_SLOTS - 1);
+            }
+
+            return slot;
+        }
+
+        private int[] row(int index, int length) {
+            if (rows[index].length < length) {
+                rows[index] = new int[Math.max(length, rows[index].length * 2)];
+            }
+
+            return rows[index];
+        }
+
+        private static boolean hasOther(CharSequence pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                if (pattern.charAt(i) >= 256) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
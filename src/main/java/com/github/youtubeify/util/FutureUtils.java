@@ -0,0 +1,49 @@
+package com.github.youtubeify.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Utility methods for composing asynchronous calls.
+ */
+public class FutureUtils {
+
+    /**
+     * Get the actual failure of an asynchronous call.
+     *
+     * @param error Error reported by a future, possibly wrapped
+     * @return Error without CompletionException or ExecutionException wrappers
+     */
+    public static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        return error;
+    }
+
+    /**
+     * Continue with a fallback call when the primary call fails.
+     *
+     * @param primary Future of the primary call
+     * @param onFailure Receives the failure of the primary call, for example to log it
+     * @param fallback Starts the fallback call
+     * @param <T> Result type
+     * @return Future of the result of the primary call, or of the fallback call if the primary call failed
+     */
+    public static <T> CompletableFuture<T> withFallback(CompletableFuture<T> primary, Consumer<Throwable> onFailure,
+                                                        Supplier<CompletableFuture<T>> fallback) {
+        return primary.handle((result, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+
+            onFailure.accept(unwrap(error));
+            return fallback.get();
+        }).thenCompose(Function.identity());
+    }
+}
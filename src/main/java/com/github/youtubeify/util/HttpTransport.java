@@ -0,0 +1,541 @@
+package com.github.youtubeify.util;
+
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpClientTools;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpConfigurable;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterfaceManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.ThreadLocalHttpInterfaceManager;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * HTTP transport shared by every manager of the plugin.
+ *
+ * Requests are routed to one connection pool per upstream host group, so connections and their TLS sessions
+ * are reused across managers instead of every manager keeping its own client. Idle connections are closed
+ * in the background, and the request and builder hooks of Lavalink apply to all pools.
+ *
+ * Asynchronous requests go through a java.net.http client that multiplexes requests to a host over a single
+ * HTTP/2 connection, so waiting for a response does not hold a thread. That client cannot apply builder hooks
+ * such as a route planner, so once a builder hook is configured, asynchronous requests run on the pooled
+ * clients instead. Request hooks do apply to it: once the request config has been changed, its connect
+ * timeout bounds connecting and the connect and socket timeouts together bound the wait for a response.
+ *
+ * Large responses can be parsed straight from the response stream with a {@link StreamParser}, so the body
+ * never has to be held as a whole. Whatever the parser leaves unread is normally drained afterwards, which keeps
+ * the connection reusable; for large bodies of which only the start is needed, the rest can be cut off instead.
+ */
+public class HttpTransport implements HttpConfigurable, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpTransport.class);
+
+    private static final int DEFAULT_MAX_PER_ROUTE = 32;
+    private static final int DEFAULT_MAX_TOTAL = 128;
+    private static final long DEFAULT_KEEP_ALIVE_SECONDS = 60;
+    private static final long DEFAULT_IDLE_SECONDS = 30;
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+    private static final long DEFAULT_ASYNC_TIMEOUT_SECONDS = 30;
+    private static final int DEFAULT_MAX_MEDIA_DOWNLOADS = 32;
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning"
+    ));
+
+    private final Map<HostGroup, PoolingHttpClientConnectionManager> pools = new EnumMap<>(HostGroup.class);
+    private final List<Consumer<HttpClientBuilder>> builderConfigurators = new ArrayList<>();
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+    private final HttpInterfaceManager interfaceManager;
+    private final ScheduledExecutorService evictor;
+    private final ExecutorService asyncExecutor;
+    private final ExecutorService blockingExecutor;
+    private final ExecutorService mediaDownloadExecutor;
+    private final Duration asyncTimeout;
+    private volatile HttpClient asyncClient;
+    private volatile Duration asyncRequestTimeout;
+    private RequestConfig requestConfig = HttpClientTools.DEFAULT_REQUEST_CONFIG;
+    private volatile Map<HostGroup, CloseableHttpClient> clients;
+    private boolean closed;
+
+    /**
+     * @param maxPerRoute Maximum number of connections to a single host
+     * @param maxTotal Maximum number of connections of a host group
+     * @param keepAliveSeconds Maximum time a connection is kept open for reuse
+     * @param idleSeconds Time after which an unused connection is closed
+     * @param asyncTimeoutSeconds Maximum time an asynchronous request may take
+     * @param maxMediaDownloads Maximum number of media chunks downloaded at the same time by all streams
+     */
+    public HttpTransport(int maxPerRoute, int maxTotal, long keepAliveSeconds, long idleSeconds, long asyncTimeoutSeconds,
+                         int maxMediaDownloads) {
+        for (HostGroup group : HostGroup.values()) {
+            PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(keepAliveSeconds, TimeUnit.SECONDS);
+            pool.setDefaultMaxPerRoute(Math.max(1, maxPerRoute));
+            pool.setMaxTotal(Math.max(1, maxTotal));
+            pool.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+            pools.put(group, pool);
+        }
+
+        // Servers often announce no timeout at all, so never keep a connection longer than configured
+        long keepAliveMs = TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+        this.keepAliveStrategy = (response, context) -> {
+            long announced = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return announced > 0 ? Math.min(announced, keepAliveMs) : keepAliveMs;
+        };
+
+        // Media streams go through LavaPlayer's HTTP interfaces, backed by the googlevideo pool
+        this.interfaceManager = new ThreadLocalHttpInterfaceManager(
+                HttpClientTools.createSharedCookiesHttpBuilder()
+                        .setConnectionManager(pools.get(HostGroup.GOOGLEVIDEO))
+                        .setConnectionManagerShared(true)
+                        .setKeepAliveStrategy(keepAliveStrategy),
+                HttpClientTools.DEFAULT_REQUEST_CONFIG
+        );
+
+        this.clients = buildClients();
+
+        this.asyncExecutor = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()),
+                new NamedThreadFactory("youtubeify-http-async")
+        );
+        ExecutorService virtualExecutor = VirtualThreads.newExecutor("youtubeify-http-blocking");
+        this.blockingExecutor = virtualExecutor != null
+                ? virtualExecutor
+                : Executors.newCachedThreadPool(new NamedThreadFactory("youtubeify-http-blocking"));
+
+        // Chunks of all media streams queue for the same threads, so many players can not flood googlevideo
+        ThreadPoolExecutor downloadExecutor = new ThreadPoolExecutor(
+                Math.max(1, maxMediaDownloads),
+                Math.max(1, maxMediaDownloads),
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("youtubeify-media-download")
+        );
+        downloadExecutor.allowCoreThreadTimeOut(true);
+        this.mediaDownloadExecutor = downloadExecutor;
+        this.asyncTimeout = Duration.ofSeconds(Math.max(1, asyncTimeoutSeconds));
+        this.asyncRequestTimeout = asyncTimeout;
+        this.asyncClient = buildAsyncClient(asyncTimeout);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("youtubeify-http-evictor"));
+        long evictionInterval = Math.max(1, idleSeconds / 2);
+        this.evictor.scheduleWithFixedDelay(() -> {
+            for (PoolingHttpClientConnectionManager pool : pools.values()) {
+                pool.closeExpiredConnections();
+                pool.closeIdleConnections(idleSeconds, TimeUnit.SECONDS);
+            }
+        }, evictionInterval, evictionInterval, TimeUnit.SECONDS);
+
+        log.info("HTTP transport initialized with {} connections per host and {} per host group", maxPerRoute, maxTotal);
+    }
+
+    /**
+     * Create a transport configured from the YOUTUBEIFY_HTTP_MAX_PER_ROUTE, YOUTUBEIFY_HTTP_MAX_TOTAL,
+     * YOUTUBEIFY_HTTP_KEEP_ALIVE_SECONDS, YOUTUBEIFY_HTTP_IDLE_SECONDS, YOUTUBEIFY_HTTP_ASYNC_TIMEOUT_SECONDS
+     * and YOUTUBEIFY_MEDIA_MAX_DOWNLOADS environment variables.
+     *
+     * @return HTTP transport
+     */
+    public static HttpTransport fromEnvironment() {
+        return new HttpTransport(
+                ConfigUtils.getInt("YOUTUBEIFY_HTTP_MAX_PER_ROUTE", DEFAULT_MAX_PER_ROUTE),
+                ConfigUtils.getInt("YOUTUBEIFY_HTTP_MAX_TOTAL", DEFAULT_MAX_TOTAL),
+                ConfigUtils.getLong("YOUTUBEIFY_HTTP_KEEP_ALIVE_SECONDS", DEFAULT_KEEP_ALIVE_SECONDS),
+                ConfigUtils.getLong("YOUTUBEIFY_HTTP_IDLE_SECONDS", DEFAULT_IDLE_SECONDS),
+                ConfigUtils.getLong("YOUTUBEIFY_HTTP_ASYNC_TIMEOUT_SECONDS", DEFAULT_ASYNC_TIMEOUT_SECONDS),
+                ConfigUtils.getInt("YOUTUBEIFY_MEDIA_MAX_DOWNLOADS", DEFAULT_MAX_MEDIA_DOWNLOADS)
+        );
+    }
+
+    /**
+     * Execute a request with the client of the host group of its URL.
+     * The caller must close the response.
+     *
+     * @param request Request to execute
+     * @return Response
+     * @throws IOException if the request failed
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        return getClient(HostGroup.forHost(request.getURI().getHost())).execute(request);
+    }
+
+    /**
+     * Execute a request and parse its response body.
+     *
+     * @param request Request to execute
+     * @param parser Parser of the response
+     * @param <T> Result type
+     * @return Parsed result
+     * @throws IOException if the request failed or the parser rejected the response
+     */
+    public <T> T execute(HttpUriRequest request, ResponseParser<T> parser) throws IOException {
+        try (CloseableHttpResponse response = execute(request)) {
+            String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+            return parser.parse(response.getStatusLine().getStatusCode(), body);
+        }
+    }
+
+    /**
+     * Execute a request asynchronously and parse its response body. The parser runs on a transport thread.
+     *
+     * @param request Request to execute
+     * @param parser Parser of the response
+     * @param <T> Result type
+     * @return Future of the parsed result, failing with the IOException of the request or the parser
+     */
+    public <T> CompletableFuture<T> executeAsync(HttpUriRequest request, ResponseParser<T> parser) {
+        if (hasBuilderHooks()) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return execute(request, parser);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, blockingExecutor);
+        }
+
+        HttpRequest asyncRequest;
+
+        try {
+            asyncRequest = toAsyncRequest(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return asyncClient.sendAsync(asyncRequest, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            try {
+                return parser.parse(response.statusCode(), response.body());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Execute a request and parse its response body while it is being received.
+     *
+     * @param request Request to execute
+     * @param parser Parser of the response stream
+     * @param <T> Result type
+     * @return Parsed result
+     * @throws IOException if the request failed or the parser rejected the response
+     */
+    public <T> T executeStreaming(HttpUriRequest request, StreamParser<T> parser) throws IOException {
+        return executeStreaming(request, parser, true);
+    }
+
+    /**
+     * Execute a request and parse its response body while it is being received.
+     *
+     * @param request Request to execute
+     * @param parser Parser of the response stream
+     * @param drain True to read the rest of the body once the parser returns, which keeps the connection
+     * reusable, or false to stop receiving the body and drop the connection
+     * @param <T> Result type
+     * @return Parsed result
+     * @throws IOException if the request failed or the parser rejected the response
+     */
+    public <T> T executeStreaming(HttpUriRequest request, StreamParser<T> parser, boolean drain) throws IOException {
+        try (CloseableHttpResponse response = execute(request)) {
+            HttpEntity entity = response.getEntity();
+            T result = parser.parse(response.getStatusLine().getStatusCode(),
+                    entity != null ? entity.getContent() : InputStream.nullInputStream());
+
+            // Closing the response without consuming the body aborts the connection
+            if (drain) {
+                EntityUtils.consume(entity);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Execute a request asynchronously and parse its response body while it is being received. The parser
+     * runs on the blocking executor, as reading the stream waits for the body to arrive.
+     *
+     * @param request Request to execute
+     * @param parser Parser of the response stream
+     * @param <T> Result type
+     * @return Future of the parsed result, failing with the IOException of the request or the parser
+     */
+    public <T> CompletableFuture<T> executeStreamingAsync(HttpUriRequest request, StreamParser<T> parser) {
+        return executeStreamingAsync(request, parser, true);
+    }
+
+    /**
+     * Execute a request asynchronously and parse its response body while it is being received. The parser
+     * runs on the blocking executor, as reading the stream waits for the body to arrive.
+     *
+     * @param request Request to execute
+     * @param parser Parser of the response stream
+     * @param drain True to read the rest of the body once the parser returns, or false to stop receiving it
+     * @param <T> Result type
+     * @return Future of the parsed result, failing with the IOException of the request or the parser
+     */
+    public <T> CompletableFuture<T> executeStreamingAsync(HttpUriRequest request, StreamParser<T> parser, boolean drain) {
+        if (hasBuilderHooks()) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return executeStreaming(request, parser, drain);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, blockingExecutor);
+        }
+
+        HttpRequest asyncRequest;
+
+        try {
+            asyncRequest = toAsyncRequest(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return asyncClient.sendAsync(asyncRequest, HttpResponse.BodyHandlers.ofInputStream()).thenApplyAsync(response -> {
+            try (InputStream body = response.body()) {
+                T result = parser.parse(response.statusCode(), body);
+
+                // Closing the body early cancels the rest of the response
+                if (drain) {
+                    body.transferTo(OutputStream.nullOutputStream());
+                }
+
+                return result;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, blockingExecutor);
+    }
+
+    /**
+     * @return Executor for blocking work that an asynchronous call depends on, such as a token refresh
+     */
+    public ExecutorService getBlockingExecutor() {
+        return blockingExecutor;
+    }
+
+    /**
+     * @return Executor for media chunk downloads, with a fixed number of threads shared by all media streams
+     */
+    public ExecutorService getMediaDownloadExecutor() {
+        return mediaDownloadExecutor;
+    }
+
+    /**
+     * @param group Host group
+     * @return Client using the connection pool of the host group
+     */
+    public CloseableHttpClient getClient(HostGroup group) {
+        return clients.get(group);
+    }
+
+    /**
+     * @return HTTP interface manager for media streams, shared by all source managers
+     */
+    public HttpInterfaceManager getInterfaceManager() {
+        return interfaceManager;
+    }
+
+    @Override
+    public synchronized void configureRequests(Function<RequestConfig, RequestConfig> configurator) {
+        requestConfig = configurator.apply(requestConfig);
+        interfaceManager.configureRequests(configurator);
+        clients = buildClients();
+
+        // Requests already sent keep the client they were sent with
+        Duration connectTimeout = toDuration(requestConfig.getConnectTimeout(), asyncTimeout);
+        Duration socketTimeout = toDuration(requestConfig.getSocketTimeout(), null);
+        asyncRequestTimeout = socketTimeout != null ? connectTimeout.plus(socketTimeout) : asyncTimeout;
+        asyncClient = buildAsyncClient(connectTimeout);
+    }
+
+    @Override
+    public synchronized void configureBuilder(Consumer<HttpClientBuilder> configurator) {
+        if (builderConfigurators.isEmpty()) {
+            log.info("HTTP client builder configured, asynchronous requests will use the pooled clients");
+        }
+
+        builderConfigurators.add(configurator);
+        interfaceManager.configureBuilder(configurator);
+        clients = buildClients();
+    }
+
+    /**
+     * Close all pooled connections. Calling this more than once has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        evictor.shutdownNow();
+        asyncExecutor.shutdownNow();
+        blockingExecutor.shutdownNow();
+        mediaDownloadExecutor.shutdownNow();
+        interfaceManager.close();
+
+        for (PoolingHttpClientConnectionManager pool : pools.values()) {
+            pool.shutdown();
+        }
+    }
+
+    private synchronized boolean hasBuilderHooks() {
+        return !builderConfigurators.isEmpty();
+    }
+
+    private HttpRequest toAsyncRequest(HttpUriRequest request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getURI()).timeout(asyncRequestTimeout);
+
+        for (Header header : request.getAllHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+
+        HttpEntity entity = request instanceof HttpEntityEnclosingRequest
+                ? ((HttpEntityEnclosingRequest) request).getEntity()
+                : null;
+
+        if (entity == null) {
+            return builder.method(request.getMethod(), HttpRequest.BodyPublishers.noBody()).build();
+        }
+
+        if (request.getFirstHeader("Content-Type") == null && entity.getContentType() != null) {
+            builder.header("Content-Type", entity.getContentType().getValue());
+        }
+
+        return builder.method(request.getMethod(), HttpRequest.BodyPublishers.ofByteArray(EntityUtils.toByteArray(entity))).build();
+    }
+
+    private HttpClient buildAsyncClient(Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .executor(asyncExecutor)
+                .build();
+    }
+
+    /**
+     * @return Timeout of a request config as a duration, or the default if it is not set
+     */
+    private static Duration toDuration(int timeoutMs, Duration defaultTimeout) {
+        return timeoutMs > 0 ? Duration.ofMillis(timeoutMs) : defaultTimeout;
+    }
+
+    private Map<HostGroup, CloseableHttpClient> buildClients() {
+        Map<HostGroup, CloseableHttpClient> built = new EnumMap<>(HostGroup.class);
+
+        // The pools are shared, so replaced clients need no closing and requests in progress on them continue
+        for (HostGroup group : HostGroup.values()) {
+            HttpClientBuilder builder = HttpClients.custom()
+                    .setConnectionManager(pools.get(group))
+                    .setConnectionManagerShared(true)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .setDefaultRequestConfig(requestConfig);
+
+            for (Consumer<HttpClientBuilder> configurator : builderConfigurators) {
+                configurator.accept(builder);
+            }
+
+            built.put(group, builder.build());
+        }
+
+        return built;
+    }
+
+    /**
+     * Converts a response into a result.
+     *
+     * @param <T> Result type
+     */
+    @FunctionalInterface
+    public interface ResponseParser<T> {
+
+        /**
+         * @param statusCode HTTP status code
+         * @param body Response body
+         * @return Result
+         * @throws IOException if the response is not usable
+         */
+        T parse(int statusCode, String body) throws IOException;
+    }
+
+    /**
+     * Converts a response into a result while its body is being received.
+     *
+     * @param <T> Result type
+     */
+    @FunctionalInterface
+    public interface StreamParser<T> {
+
+        /**
+         * @param statusCode HTTP status code
+         * @param body Response body, which the parser does not need to read to the end
+         * @return Result
+         * @throws IOException if reading failed or the response is not usable
+         */
+        T parse(int statusCode, InputStream body) throws IOException;
+    }
+
+    /**
+     * Upstream services whose connections are pooled separately.
+     */
+    public enum HostGroup {
+        INNERTUBE,
+        DATA_API,
+        SPOTIFY,
+        GOOGLEVIDEO;
+
+        /**
+         * @param host Host name of a request
+         * @return Host group the host belongs to, InnerTube for anything unknown
+         */
+        public static HostGroup forHost(String host) {
+            if (host == null) {
+                return INNERTUBE;
+            } else if (host.endsWith("googlevideo.com")) {
+                return GOOGLEVIDEO;
+            } else if (host.endsWith("googleapis.com")) {
+                return DATA_API;
+            } else if (host.endsWith("spotify.com")) {
+                return SPOTIFY;
+            }
+
+            return INNERTUBE;
+        }
+    }
+}
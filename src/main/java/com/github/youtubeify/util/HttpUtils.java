@@ -21,7 +21,6 @@ public class HttpUtils {
     private static final Logger log = LoggerFactory.getLogger(HttpUtils.class);
 
     private static final Pattern VIDEO_ID_PATTERN = Pattern.compile("(?:v=|/v/|youtu\\.be/)([a-zA-Z0-9_-]{11})");
-    private static final Pattern JSON_PATTERN = Pattern.compile("var\\s+([a-zA-Z0-9_]+)\\s*=\\s*(\\{.*?\\});", Pattern.DOTALL);
 
     /**
      * URL encode a string.
@@ -54,6 +53,40 @@ public class HttpUtils {
         return null;
     }
 
+    /**
+     * Get the value of a query parameter from a URL without decoding it.
+     *
+     * @param url URL
+     * @param name Parameter name
+     * @return Parameter value or null if not present
+     */
+    public static String getQueryParameter(String url, String name) {
+        int queryStart = url.indexOf('?');
+        
+        if (queryStart < 0) {
+            return null;
+        }
+        
+        int position = queryStart + 1;
+        
+        while (position < url.length()) {
+            int end = url.indexOf('&', position);
+            
+            if (end < 0) {
+                end = url.length();
+            }
+            
+            if (end - position > name.length() && url.charAt(position + name.length()) == '='
+                    && url.startsWith(name, position)) {
+                return url.substring(position + name.length() + 1, end);
+            }
+            
+            position = end + 1;
+        }
+        
+        return null;
+    }
+
     /**
      * Extract cookies from HTTP response.
      *
@@ -101,47 +134,6 @@ public class HttpUtils {
         return builder.toString();
     }
 
-    /**
-     * Extract initial data from a YouTube page.
-     *
-     * @param html HTML content
-     * @param variableName Name of the JavaScript variable containing the data
-     * @return Extracted data as a Map
-     */
-    public static Map<String, Object> extractInitialData(String html, String variableName) {
-        String pattern = "var " + variableName + " = (\\{.*?\\});";
-        Pattern r = Pattern.compile(pattern, Pattern.DOTALL);
-        Matcher m = r.matcher(html);
-        
-        if (m.find()) {
-            String json = m.group(1);
-            try {
-                // This is a crude approximation - in a real implementation,
-                // you'd want to use a proper JSON parser
-                Map<String, Object> result = new HashMap<>();
-                extractJsonFields(json, result);
-                return result;
-            } catch (Exception e) {
-                log.error("Failed to parse JSON data", e);
-            }
-        }
-        
-        return null;
-    }
-
-    /**
-     * A very simplified JSON parser for extracting fields.
-     * This is just for demonstration and would not work for complex JSON.
-     * In a real implementation, use a proper JSON library.
-     *
-     * @param json JSON string
-     * @param result Result map
-     */
-    private static void extractJsonFields(String json, Map<String, Object> result) {
-        // This is a placeholder for a real JSON parser
-        // In a real implementation, use a proper JSON library like org.json or Jackson
-    }
-
     /**
      * Convert ISO 8601 duration to seconds.
      *
@@ -0,0 +1,279 @@
+package com.github.youtubeify.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+
+/**
+ * Runs independent resolution work (such as one YouTube search per Spotify track) concurrently.
+ * The number of tasks running at the same time is capped, and every batch of work has an overall
+ * deadline after which unfinished tasks are cancelled and the partial result is returned.
+ *
+ * With virtual threads enabled, every task gets its own virtual thread and the cap is enforced with
+ * a semaphore instead of a fixed number of worker threads.
+ */
+public class ResolutionEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(ResolutionEngine.class);
+
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final long DEFAULT_DEADLINE_MS = 30000;
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final long deadlineMs;
+
+    /**
+     * @param parallelism Maximum number of tasks running at the same time
+     * @param deadlineMs Maximum time in milliseconds a batch of tasks may take
+     */
+    public ResolutionEngine(int parallelism, long deadlineMs) {
+        int threads = Math.max(1, parallelism);
+        ExecutorService virtualExecutor = VirtualThreads.newExecutor("youtubeify-resolver");
+
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.permits = new Semaphore(threads);
+        } else {
+            ThreadPoolExecutor platformExecutor = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamedThreadFactory("youtubeify-resolver")
+            );
+            platformExecutor.allowCoreThreadTimeOut(true);
+
+            this.executor = platformExecutor;
+            this.permits = null;
+        }
+
+        this.deadlineMs = Math.max(1, deadlineMs);
+
+        log.info("Resolution engine initialized with parallelism {} and deadline {} ms", threads, this.deadlineMs);
+    }
+
+    /**
+     * Create an engine configured from the YOUTUBEIFY_RESOLVE_PARALLELISM and
+     * YOUTUBEIFY_RESOLVE_DEADLINE_MS environment variables.
+     *
+     * @return Resolution engine
+     */
+    public static ResolutionEngine fromEnvironment() {
+        return new ResolutionEngine(
+                ConfigUtils.getInt("YOUTUBEIFY_RESOLVE_PARALLELISM", DEFAULT_PARALLELISM),
+                ConfigUtils.getLong("YOUTUBEIFY_RESOLVE_DEADLINE_MS", DEFAULT_DEADLINE_MS)
+        );
+    }
+
+    /**
+     * Submit a single task.
+     *
+     * @param task Task to run
+     * @param <T> Result type
+     * @return Future of the task result
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(limited(task));
+    }
+
+    /**
+     * Wait for a task submitted with {@link #submit(Callable)}, bounded by the engine deadline.
+     *
+     * @param future Future of the task
+     * @param <T> Result type
+     * @return Task result
+     * @throws IOException if the task failed with an I/O error, timed out or the wait was interrupted
+     */
+    public <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get(deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for resolution");
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("Resolution did not finish within " + deadlineMs + " ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException("Resolution failed", cause);
+        }
+    }
+
+    /**
+     * Start a new batch of indexed tasks. The deadline of the batch starts counting now.
+     *
+     * @param <R> Result type
+     * @return New batch
+     */
+    public <R> Batch<R> newBatch() {
+        return new Batch<>(System.currentTimeMillis() + deadlineMs);
+    }
+
+    /**
+     * Shut down the worker threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> Callable<T> limited(Callable<T> task) {
+        if (permits == null) {
+            return task;
+        }
+
+        return () -> {
+            permits.acquire();
+
+            try {
+                return task.call();
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    /**
+     * A group of tasks whose results are collected in the order of their indexes.
+     * Tasks that fail, return null or do not finish before the deadline are left out of the result.
+     * Once the results have been collected the batch is closed: tasks submitted afterwards, for example by a
+     * page fetch that outlived the deadline, are dropped instead of queueing work nobody waits for.
+     *
+     * @param <R> Result type
+     */
+    public class Batch<R> {
+
+        private final long deadline;
+        private final Map<Integer, R> results = new TreeMap<>();
+        private final List<Future<?>> futures = new ArrayList<>();
+        private int pending;
+        private boolean closed;
+
+        private Batch(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Submit a task whose result is placed at the given index.
+         *
+         * @param index Position of the result
+         * @param task Task to run
+         */
+        public void submit(int index, Callable<R> task) {
+            synchronized (this) {
+                if (closed) {
+                    log.debug("Resolution task {} submitted after the batch was closed, skipping it", index);
+                    return;
+                }
+
+                pending++;
+            }
+
+            Future<?> future = executor.submit(limited(() -> {
+                try {
+                    synchronized (this) {
+                        if (closed) {
+                            return null;
+                        }
+                    }
+
+                    R result = task.call();
+
+                    if (result != null) {
+                        synchronized (this) {
+                            results.put(index, result);
+                        }
+                    }
+                } catch (Exception e) {
+                    log.warn("Resolution task {} failed", index, e);
+                } finally {
+                    synchronized (this) {
+                        pending--;
+                        notifyAll();
+                    }
+                }
+
+                return null;
+            }));
+
+            synchronized (this) {
+                if (closed) {
+                    future.cancel(true);
+                } else {
+                    futures.add(future);
+                }
+            }
+        }
+
+        /**
+         * Place a result that is already available at the given index.
+         *
+         * @param index Position of the result
+         * @param result Result
+         */
+        public synchronized void add(int index, R result) {
+            if (!closed) {
+                results.put(index, result);
+            }
+        }
+
+        /**
+         * Run an auxiliary task that produces no result itself, such as fetching a page of items and
+         * submitting indexed tasks for them. The batch also waits for these tasks to finish.
+         *
+         * @param task Task to run
+         */
+        public void spawn(Runnable task) {
+            submit(-1, () -> {
+                task.run();
+                return null;
+            });
+        }
+
+        /**
+         * Wait until all tasks have finished or the deadline has passed, then close the batch.
+         *
+         * @return Results of the finished tasks, ordered by index
+         */
+        public synchronized List<R> await() {
+            try {
+                long remaining = deadline - System.currentTimeMillis();
+
+                while (pending > 0 && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            closed = true;
+
+            if (pending > 0) {
+                log.warn("Resolution batch deadline reached with {} unfinished tasks, returning partial result", pending);
+
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+
+            return new ArrayList<>(results.values());
+        }
+    }
+}
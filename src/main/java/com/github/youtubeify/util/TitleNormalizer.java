@@ -0,0 +1,426 @@
+package com.github.youtubeify.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Regex-free title cleanup that reads a title once and writes the result into a reusable buffer.
+ *
+ * The cleanup is a chain of streaming stages, each of which is an exact character-by-character equivalent of
+ * one replacement of the original regex cleanup, applied in the same order:
+ * <ol>
+ *     <li>parenthesized groups ending in "version", "video", "audio", "official" or "lyrics" are removed</li>
+ *     <li>square bracketed groups are removed</li>
+ *     <li>the phrases "official video", "official audio", "official music video", "lyric video" and
+ *     "with lyrics" are removed, ignoring ASCII case</li>
+ *     <li>the result is trimmed and runs of whitespace are collapsed to a single space</li>
+ * </ol>
+ * A stage only holds back the characters it can not decide on yet, such as an open parenthesized group,
+ * so every character passes through the chain once. Optionally, case and diacritics are folded before the
+ * first stage. Case folding gives the same result as {@code String.toLowerCase(Locale.ROOT)}. Diacritic
+ * folding changes the output compared to the regex cleanup, so {@link TrackUtils} keeps it turned off.
+ *
+ * Instances keep their buffers between calls and are not thread-safe.
+ */
+public class TitleNormalizer {
+
+    private static final String[] GROUP_KEYWORDS = {"version", "video", "audio", "official", "lyrics"};
+    private static final String[] PHRASES = {"official video", "official audio", "official music video", "lyric video", "with lyrics"};
+    private static final char FOLD_START = '\u00C0';
+    private static final char FOLD_END = '\u024F';
+    private static final char[] FOLD_TABLE = buildFoldTable();
+
+    private final boolean foldCase;
+    private final boolean foldDiacritics;
+    private final CharBuffer group = new CharBuffer();
+    private final CharBuffer bracket = new CharBuffer();
+    private final CharBuffer[] phraseHolds = new CharBuffer[PHRASES.length];
+    private final CharBuffer whitespace = new CharBuffer();
+    private final CharBuffer output = new CharBuffer();
+    private boolean groupOpen;
+    private boolean bracketOpen;
+    private boolean started;
+
+    /**
+     * @param foldCase Lowercase the title, character by character and independent of the locale
+     * @param foldDiacritics Replace accented Latin letters by their base letter and drop combining marks
+     */
+    public TitleNormalizer(boolean foldCase, boolean foldDiacritics) {
+        this.foldCase = foldCase;
+        this.foldDiacritics = foldDiacritics;
+
+        for (int i = 0; i < phraseHolds.length; i++) {
+            phraseHolds[i] = new CharBuffer();
+        }
+    }
+
+    /**
+     * Normalize a single title.
+     *
+     * @param title Original title
+     * @return Normalized title
+     */
+    public String normalize(CharSequence title) {
+        reset();
+
+        CharSequence source = title;
+
+        if (foldCase && containsCapitalSigma(title)) {
+            // Capital sigma lowercases to its final form at the end of a word, which depends on the letters
+            // around it, so such rare titles are lowercased by String first
+            source = title.toString().toLowerCase(Locale.ROOT);
+        }
+
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+
+            if (foldDiacritics) {
+                if (c >= '\u0300' && c <= '\u036F') {
+                    continue;
+                } else if (c >= FOLD_START && c <= FOLD_END) {
+                    c = FOLD_TABLE[c - FOLD_START];
+                }
+            }
+
+            if (foldCase) {
+                if (c == '\u0130') {
+                    // Dotted capital I lowercases to two characters
+                    acceptGroup('i');
+                    c = '\u0307';
+                } else {
+                    c = Character.toLowerCase(c);
+                }
+            }
+
+            acceptGroup(c);
+        }
+
+        finish();
+
+        // Most titles need no cleanup at all, so avoid copying them
+        if (title instanceof String && output.contentEquals(title)) {
+            return (String) title;
+        }
+
+        return output.toString();
+    }
+
+    /**
+     * Normalize a batch of titles, such as the titles of all candidates of a search, reusing the same buffers.
+     *
+     * @param titles Original titles
+     * @return Normalized titles in the same order
+     */
+    public List<String> normalizeAll(List<? extends CharSequence> titles) {
+        List<String> normalized = new ArrayList<>(titles.size());
+
+        for (CharSequence title : titles) {
+            normalized.add(normalize(title));
+        }
+
+        return normalized;
+    }
+
+    private static boolean containsCapitalSigma(CharSequence title) {
+        for (int i = 0; i < title.length(); i++) {
+            if (title.charAt(i) == '\u03A3') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void reset() {
+        group.clear();
+        bracket.clear();
+        whitespace.clear();
+        output.clear();
+
+        for (CharBuffer hold : phraseHolds) {
+            hold.clear();
+        }
+
+        groupOpen = false;
+        bracketOpen = false;
+        started = false;
+    }
+
+    private void finish() {
+        // An unclosed group or bracket is kept as is
+        if (groupOpen) {
+            groupOpen = false;
+            flushToBracket(group);
+        }
+
+        if (bracketOpen) {
+            bracketOpen = false;
+            flushToPhrase(0, bracket);
+        }
+
+        for (int stage = 0; stage < phraseHolds.length; stage++) {
+            flushToPhrase(stage + 1, phraseHolds[stage]);
+        }
+
+        // Trailing whitespace is trimmed
+        whitespace.clear();
+    }
+
+    /**
+     * Parenthesized groups: a group is held from its first opening parenthesis, as that is where a removal
+     * starts, until the closing one decides whether it ends in one of the keywords.
+     */
+    private void acceptGroup(char c) {
+        if (!groupOpen) {
+            if (c == '(') {
+                groupOpen = true;
+                group.append(c);
+            } else {
+                acceptBracket(c);
+            }
+
+            return;
+        }
+
+        if (c != ')') {
+            group.append(c);
+            return;
+        }
+
+        groupOpen = false;
+
+        for (String keyword : GROUP_KEYWORDS) {
+            if (group.length() > keyword.length() && group.endsWith(keyword)) {
+                group.clear();
+                return;
+            }
+        }
+
+        group.append(c);
+        flushToBracket(group);
+    }
+
+    private void flushToBracket(CharBuffer buffer) {
+        for (int i = 0; i < buffer.length(); i++) {
+            acceptBracket(buffer.charAt(i));
+        }
+
+        buffer.clear();
+    }
+
+    /**
+     * Square brackets: everything from an opening bracket to the next closing one on the same line is removed.
+     */
+    private void acceptBracket(char c) {
+        if (!bracketOpen) {
+            if (c == '[') {
+                bracketOpen = true;
+                bracket.append(c);
+            } else {
+                acceptPhrase(0, c);
+            }
+
+            return;
+        }
+
+        if (c == ']') {
+            bracketOpen = false;
+            bracket.clear();
+        } else if (isLineTerminator(c)) {
+            // No bracket of this line can be closed any more
+            bracketOpen = false;
+            bracket.append(c);
+            flushToPhrase(0, bracket);
+        } else {
+            bracket.append(c);
+        }
+    }
+
+    /**
+     * Phrase removal: each stage holds the characters that could still start its phrase, and passes on the
+     * first one as soon as they can not.
+     */
+    private void acceptPhrase(int stage, char c) {
+        if (stage == PHRASES.length) {
+            acceptWhitespace(c);
+            return;
+        }
+
+        String phrase = PHRASES[stage];
+        CharBuffer hold = phraseHolds[stage];
+        hold.append(c);
+
+        while (hold.length() > 0 && !isPhrasePrefix(hold, phrase)) {
+            acceptPhrase(stage + 1, hold.charAt(0));
+            hold.removeFirst();
+        }
+
+        if (hold.length() == phrase.length()) {
+            hold.clear();
+        }
+    }
+
+    private void flushToPhrase(int stage, CharBuffer buffer) {
+        // The previous stage could not decide on these characters, they pass through this one like any other
+        for (int i = 0; i < buffer.length(); i++) {
+            char c = buffer.charAt(i);
+
+            if (stage == PHRASES.length) {
+                acceptWhitespace(c);
+            } else {
+                acceptPhrase(stage, c);
+            }
+        }
+
+        buffer.clear();
+    }
+
+    /**
+     * Trim and whitespace collapse: whitespace is held until a visible character follows, so trailing
+     * whitespace is never written.
+     */
+    private void acceptWhitespace(char c) {
+        if (c <= ' ') {
+            if (started) {
+                whitespace.append(c);
+            }
+
+            return;
+        }
+
+        for (int i = 0; i < whitespace.length(); i++) {
+            char held = whitespace.charAt(i);
+
+            if (!isRegexWhitespace(held)) {
+                output.append(held);
+            } else if (i == 0 || !isRegexWhitespace(whitespace.charAt(i - 1))) {
+                output.append(' ');
+            }
+        }
+
+        whitespace.clear();
+        output.append(c);
+        started = true;
+    }
+
+    private static boolean isPhrasePrefix(CharBuffer hold, String phrase) {
+        if (hold.length() > phrase.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < hold.length(); i++) {
+            char c = hold.charAt(i);
+
+            // Case-insensitive matching of the regex flag, which only folds ASCII letters
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+
+            if (c != phrase.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static char[] buildFoldTable() {
+        char[] table = new char[FOLD_END - FOLD_START + 1];
+
+        for (char c = FOLD_START; c <= FOLD_END; c++) {
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            table[c - FOLD_START] = decomposed.charAt(0) < FOLD_START ? decomposed.charAt(0) : c;
+        }
+
+        // Letters with a stroke have no decomposition
+        String strokes = "\u00D8O\u00F8o\u0110D\u0111d\u0141L\u0142l\u0131i";
+
+        for (int i = 0; i < strokes.length(); i += 2) {
+            table[strokes.charAt(i) - FOLD_START] = strokes.charAt(i + 1);
+        }
+
+        return table;
+    }
+
+    /**
+     * Growable character buffer that is reused between titles.
+     */
+    private static class CharBuffer implements CharSequence {
+
+        private char[] chars = new char[64];
+        private int length;
+
+        void append(char c) {
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, length * 2);
+            }
+
+            chars[length++] = c;
+        }
+
+        void removeFirst() {
+            System.arraycopy(chars, 1, chars, 0, --length);
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        boolean endsWith(String suffix) {
+            int offset = length - suffix.length();
+
+            for (int i = 0; i < suffix.length(); i++) {
+                if (chars[offset + i] != suffix.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        boolean contentEquals(CharSequence other) {
+            if (other.length() != length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (chars[i] != other.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
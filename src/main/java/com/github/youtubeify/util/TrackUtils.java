@@ -1,13 +1,36 @@
 package com.github.youtubeify.util;
 
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
 /**
  * Utility methods for track operations.
  */
 public class TrackUtils {
 
+    private static final Pattern RELEASE_SUFFIX_PATTERN = Pattern.compile(
+            "\\s*[(\\[][^)\\]]*\\b(?:remaster(?:ed)?|deluxe|bonus track|anniversary|expanded)\\b[^)\\]]*[)\\]]",
+            Pattern.CASE_INSENSITIVE
+    );
+    private static final Pattern DASH_RELEASE_SUFFIX_PATTERN = Pattern.compile(
+            "\\s+-\\s+[^-]*\\bremaster(?:ed)?\\b[^-]*$",
+            Pattern.CASE_INSENSITIVE
+    );
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    private static final ThreadLocal<TitleNormalizer> CLEANUP_NORMALIZER =
+            ThreadLocal.withInitial(() -> new TitleNormalizer(false, false));
+    // Diacritics are not folded, so the output stays identical to the regex cleanup this replaced
+    private static final ThreadLocal<TitleNormalizer> COMPARISON_NORMALIZER =
+            ThreadLocal.withInitial(() -> new TitleNormalizer(true, false));
+
     /**
      * Get main artist name from the artists array.
      *
@@ -46,6 +69,38 @@ public class TrackUtils {
         return result.toString();
     }
 
+    /**
+     * Copy a loaded item so that it can be handed to another caller. Tracks can only be played once,
+     * so tracks and playlists are cloned; other items are immutable and returned as is.
+     *
+     * @param item Loaded item
+     * @return Independent copy of the item
+     */
+    public static AudioItem copyAudioItem(AudioItem item) {
+        if (item instanceof AudioTrack) {
+            return ((AudioTrack) item).makeClone();
+        }
+        
+        if (item instanceof AudioPlaylist) {
+            AudioPlaylist playlist = (AudioPlaylist) item;
+            List<AudioTrack> tracks = new ArrayList<>(playlist.getTracks().size());
+            AudioTrack selectedTrack = null;
+            
+            for (AudioTrack track : playlist.getTracks()) {
+                AudioTrack clone = track.makeClone();
+                tracks.add(clone);
+                
+                if (track == playlist.getSelectedTrack()) {
+                    selectedTrack = clone;
+                }
+            }
+            
+            return new BasicAudioPlaylist(playlist.getName(), tracks, selectedTrack, playlist.isSearchResult());
+        }
+        
+        return item;
+    }
+
     /**
      * Create a search query string for a track.
      *
@@ -60,6 +115,22 @@ public class TrackUtils {
         return artists + " - " + title;
     }
 
+    /**
+     * Normalize a search query so that variants of the same query look identical:
+     * '+' used as a word separator becomes a space, release suffixes such as "(Remastered 2011)"
+     * or " - Remastered 2011" are removed and whitespace is collapsed.
+     *
+     * @param query Search query
+     * @return Normalized query
+     */
+    public static String normalizeSearchQuery(String query) {
+        query = query.replace('+', ' ');
+        query = RELEASE_SUFFIX_PATTERN.matcher(query).replaceAll("");
+        query = DASH_RELEASE_SUFFIX_PATTERN.matcher(query).replaceAll("");
+        
+        return WHITESPACE_PATTERN.matcher(query.trim()).replaceAll(" ");
+    }
+
     /**
      * Clean up title by removing common suffixes like "(Official Video)" etc.
      *
@@ -67,23 +138,28 @@ public class TrackUtils {
      * @return Cleaned title
      */
     public static String cleanupTitle(String title) {
-        // Remove text in parentheses that typically indicates a version but isn't part of the song title
-        title = title.replaceAll("\\([^)]*version\\)", "")
-                .replaceAll("\\([^)]*video\\)", "")
-                .replaceAll("\\([^)]*audio\\)", "")
-                .replaceAll("\\([^)]*official\\)", "")
-                .replaceAll("\\([^)]*lyrics\\)", "")
-                .replaceAll("\\[.*?\\]", "")  // Also remove text in square brackets
-                .replaceAll("(?i)official video", "")
-                .replaceAll("(?i)official audio", "")
-                .replaceAll("(?i)official music video", "")
-                .replaceAll("(?i)lyric video", "")
-                .replaceAll("(?i)with lyrics", "");
-        
-        // Trim and remove multiple spaces
-        title = title.trim().replaceAll("\\s+", " ");
-        
-        return title;
+        return CLEANUP_NORMALIZER.get().normalize(title);
+    }
+
+    /**
+     * Lowercase and clean up a title the way {@link #compareTitles(String, String)} does, so a title that is
+     * compared against many others only has to be normalized once.
+     *
+     * @param title Original title
+     * @return Normalized title
+     */
+    public static String normalizeTitleForComparison(String title) {
+        return COMPARISON_NORMALIZER.get().normalize(title);
+    }
+
+    /**
+     * Normalize a batch of titles for comparison, such as the titles of all candidates of a search.
+     *
+     * @param titles Original titles
+     * @return Normalized titles in the same order
+     */
+    public static List<String> normalizeTitlesForComparison(List<String> titles) {
+        return COMPARISON_NORMALIZER.get().normalizeAll(titles);
     }
 
     /**
@@ -94,59 +170,53 @@ public class TrackUtils {
      * @return Similarity score (0-1)
      */
     public static double compareTitles(String title1, String title2) {
-        title1 = cleanupTitle(title1.toLowerCase());
-        title2 = cleanupTitle(title2.toLowerCase());
-        
-        // Simple Levenshtein distance divided by max length
-        int distance = levenshteinDistance(title1, title2);
-        int maxLength = Math.max(title1.length(), title2.length());
-        
-        if (maxLength == 0) {
-            return 1.0; // Both are empty strings
-        }
-        
-        return 1.0 - ((double) distance / maxLength);
+        return compareNormalizedTitles(normalizeTitleForComparison(title1), normalizeTitleForComparison(title2));
     }
 
     /**
-     * Calculate Levenshtein distance between two strings.
+     * Compare two titles for similarity, giving up as soon as the similarity can not reach the cutoff.
      *
-     * @param s1 First string
-     * @param s2 Second string
-     * @return Levenshtein distance
+     * @param title1 First title
+     * @param title2 Second title
+     * @param minSimilarity Similarity below which the exact score is not needed
+     * @return Similarity score (0-1), or 0 if it is below the cutoff
      */
-    private static int levenshteinDistance(String s1, String s2) {
-        int len1 = s1.length();
-        int len2 = s2.length();
-        
-        // Create two work vectors of integer distances
-        int[] v0 = new int[len2 + 1];
-        int[] v1 = new int[len2 + 1];
+    public static double compareTitles(String title1, String title2, double minSimilarity) {
+        return compareNormalizedTitles(normalizeTitleForComparison(title1), normalizeTitleForComparison(title2), minSimilarity);
+    }
+
+    /**
+     * Compare two titles that were already normalized with {@link #normalizeTitleForComparison(String)}.
+     *
+     * @param title1 First normalized title
+     * @param title2 Second normalized title
+     * @return Similarity score (0-1)
+     */
+    public static double compareNormalizedTitles(String title1, String title2) {
+        return compareNormalizedTitles(title1, title2, 0.0);
+    }
+
+    /**
+     * Compare two titles that were already normalized with {@link #normalizeTitleForComparison(String)},
+     * giving up as soon as the similarity can not reach the cutoff.
+     *
+     * @param title1 First normalized title
+     * @param title2 Second normalized title
+     * @param minSimilarity Similarity below which the exact score is not needed
+     * @return Similarity score (0-1), or 0 if it is below the cutoff
+     */
+    public static double compareNormalizedTitles(String title1, String title2, double minSimilarity) {
+        int maxLength = Math.max(title1.length(), title2.length());
         
-        // Initialize v0 (the previous row of distances)
-        // This row is A[0][i]: edit distance for an empty s1
-        // The distance is just the number of characters to delete from s2
-        for (int i = 0; i <= len2; i++) {
-            v0[i] = i;
+        if (maxLength == 0) {
+            return 1.0; // Both are empty strings
         }
         
-        for (int i = 0; i < len1; i++) {
-            // Calculate v1 (current row distances) from the previous row v0
-            
-            // First element of v1 is A[i+1][0]
-            // Edit distance is delete (i+1) chars from s1 to match empty s2
-            v1[0] = i + 1;
-            
-            // Use formula to fill in the rest of the row
-            for (int j = 0; j < len2; j++) {
-                int cost = (s1.charAt(i) == s2.charAt(j)) ? 0 : 1;
-                v1[j + 1] = Math.min(v1[j] + 1, Math.min(v0[j + 1] + 1, v0[j] + cost));
-            }
-            
-            // Copy v1 (current row) to v0 (previous row) for next iteration
-            System.arraycopy(v1, 0, v0, 0, len2 + 1);
-        }
+        // Levenshtein distance divided by max length, so the cutoff bounds the distance worth computing
+        int maxDistance = (int) Math.floor((1.0 - minSimilarity) * maxLength + 1e-9);
+        int distance = EditDistance.distance(title1, title2, Math.max(0, maxDistance));
+        double similarity = 1.0 - ((double) distance / maxLength);
         
-        return v1[len2];
+        return similarity >= minSimilarity ? similarity : 0.0;
     }
 }
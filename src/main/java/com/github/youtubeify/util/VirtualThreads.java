@@ -0,0 +1,88 @@
+package com.github.youtubeify.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads on runtimes that have them (Java 21 and newer).
+ *
+ * The plugin is compiled for Java 11, so the virtual thread API is looked up reflectively once. Virtual threads
+ * are only used when YOUTUBEIFY_VIRTUAL_THREADS is enabled; everywhere else, and on older runtimes, the
+ * regular platform thread pools are used.
+ */
+public class VirtualThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final boolean ENABLED;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            // Runtime without virtual threads
+            ofVirtual = null;
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+
+        boolean requested = ConfigUtils.getBoolean("YOUTUBEIFY_VIRTUAL_THREADS", false);
+
+        if (requested && OF_VIRTUAL == null) {
+            log.warn("Virtual threads were requested but are not supported by this Java runtime, using platform threads");
+        } else if (requested) {
+            log.info("Running resolution work on virtual threads");
+        }
+
+        ENABLED = requested && OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return True if virtual threads are requested and supported by the runtime
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for every task.
+     *
+     * @param prefix Prefix of the thread names
+     * @return Virtual thread executor, or null if virtual threads are not enabled
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        if (!ENABLED) {
+            return null;
+        }
+
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Could not create virtual thread executor {}, using platform threads", prefix, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.youtubeify.util.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stream of a JSON object that is assigned to a JavaScript variable somewhere in an HTML page, such as
+ * {@code var ytInitialPlayerResponse = {...};}.
+ *
+ * The page is scanned byte by byte for the assignment, and the bytes of the object are then passed through
+ * while tracking nesting and string literals, so braces inside strings do not end the object early. The stream
+ * ends right after the closing brace of the object, and the page is not read past the read that contained it.
+ * Only ASCII bytes are significant to the scan, so UTF-8 content passes through untouched.
+ */
+public class EmbeddedJsonInputStream extends InputStream {
+
+    private final InputStream in;
+    private final byte[] variable;
+    private final int[] failure;
+    private final byte[] buffer = new byte[8192];
+    private final byte[] single = new byte[1];
+    private int pos;
+    private int limit;
+    private boolean found;
+    private boolean finished;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+
+    /**
+     * @param in Page content
+     * @param variableName Name of the variable the object is assigned to
+     */
+    public EmbeddedJsonInputStream(InputStream in, String variableName) {
+        this.in = in;
+        this.variable = variableName.getBytes(StandardCharsets.US_ASCII);
+        this.failure = buildFailureTable(variable);
+    }
+
+    /**
+     * Read the page up to the opening brace of the object assigned to the variable.
+     *
+     * @return True if the assignment was found and the stream is positioned at the object, false if the page
+     * ended without one
+     * @throws IOException if reading the page failed
+     */
+    public boolean find() throws IOException {
+        if (found || finished) {
+            return found;
+        }
+
+        int matched = 0;
+        int c;
+
+        while ((c = nextByte()) != -1) {
+            // Knuth-Morris-Pratt matching, so a partial match never makes the scan go back
+            while (matched > 0 && c != variable[matched]) {
+                matched = failure[matched - 1];
+            }
+
+            if (c == variable[matched]) {
+                matched++;
+            }
+
+            if (matched == variable.length) {
+                matched = 0;
+
+                if (isAssignmentOfObject()) {
+                    found = true;
+                    return true;
+                }
+            }
+        }
+
+        finished = true;
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+        if (!find() || finished) {
+            return -1;
+        } else if (length == 0) {
+            return 0;
+        }
+
+        if (pos == limit && !fill()) {
+            finished = true;
+            return -1;
+        }
+
+        int count = 0;
+
+        while (count < length && pos < limit) {
+            byte b = buffer[pos++];
+            target[offset + count++] = b;
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    finished = true;
+                    break;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Closing only marks the stream as finished; the page stream is left to its owner, which decides
+     * whether the rest of the page is read or the connection is dropped.
+     */
+    @Override
+    public void close() {
+        finished = true;
+    }
+
+    private boolean isAssignmentOfObject() throws IOException {
+        int c = nextNonWhitespace();
+
+        if (c != '=') {
+            pushBack(c);
+            return false;
+        }
+
+        c = nextNonWhitespace();
+
+        if (c != '{') {
+            pushBack(c);
+            return false;
+        }
+
+        // Hand the opening brace to the reader of the object
+        pos--;
+        return true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+
+        do {
+            c = nextByte();
+        } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+
+        return c;
+    }
+
+    private void pushBack(int c) {
+        // The byte may start the next occurrence of the variable name, so scan it again
+        if (c != -1) {
+            pos--;
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+
+        return buffer[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+
+        if (read <= 0) {
+            return false;
+        }
+
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
+    private static int[] buildFailureTable(byte[] pattern) {
+        int[] table = new int[pattern.length];
+        int matched = 0;
+
+        for (int i = 1; i < pattern.length; i++) {
+            while (matched > 0 && pattern[i] != pattern[matched]) {
+                matched = table[matched - 1];
+            }
+
+            if (pattern[i] == pattern[matched]) {
+                matched++;
+            }
+
+            table[i] = matched;
+        }
+
+        return table;
+    }
+}
@@ -0,0 +1,569 @@
+package com.github.youtubeify.util.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Pull parser that reads a JSON document token by token from a stream.
+ *
+ * Nothing is materialized unless the caller asks for it: values that are skipped are scanned without building
+ * strings or objects, so a caller that only needs a few fields of a large response allocates little more than
+ * those fields. Member names can be matched against a fixed set of names without allocating them either.
+ */
+public class JsonReader implements Closeable {
+
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private final StringBuilder scratch = new StringBuilder();
+    private int pos;
+    private int limit;
+    private int[] stack = new int[32];
+    private int stackSize = 1;
+    private JsonToken peeked;
+
+    /**
+     * @param in Reader of the document
+     */
+    public JsonReader(Reader in) {
+        this.in = in;
+        this.stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @param in UTF-8 encoded document
+     */
+    public JsonReader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Kind of the next token, without consuming it
+     * @throws IOException if reading failed or the document is malformed
+     */
+    public JsonToken peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+
+        return peeked;
+    }
+
+    /**
+     * @return True if the current array or object has another element
+     * @throws IOException if reading failed or the document is malformed
+     */
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    /**
+     * @return Nesting depth of the reader, 0 outside of the top-level value
+     */
+    public int getDepth() {
+        return stackSize - 1;
+    }
+
+    /**
+     * Consume the start of an object.
+     *
+     * @throws IOException if the next token is not the start of an object
+     */
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+        peeked = null;
+    }
+
+    /**
+     * Consume the end of the current object.
+     *
+     * @throws IOException if the next token is not the end of an object
+     */
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        stackSize--;
+        peeked = null;
+    }
+
+    /**
+     * Consume the start of an array.
+     *
+     * @throws IOException if the next token is not the start of an array
+     */
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+        peeked = null;
+    }
+
+    /**
+     * Consume the end of the current array.
+     *
+     * @throws IOException if the next token is not the end of an array
+     */
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        stackSize--;
+        peeked = null;
+    }
+
+    /**
+     * @return Name of the next member of the current object
+     * @throws IOException if the next token is not a name
+     */
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        readString();
+        peeked = null;
+        return scratch.toString();
+    }
+
+    /**
+     * Consume the name of the next member and look it up in the given names, without allocating it.
+     *
+     * @param names Names to match
+     * @return Index of the name in the array, or -1 if it is not one of them
+     * @throws IOException if the next token is not a name
+     */
+    public int selectName(String[] names) throws IOException {
+        expect(JsonToken.NAME);
+        readString();
+        peeked = null;
+
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].contentEquals(scratch)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Skip members of the current object until the one with the given name.
+     *
+     * @param name Member name
+     * @return True if the reader is now positioned at the value of the member, false if the object has no
+     * further member of that name, in which case the reader is positioned at the end of the object
+     * @throws IOException if reading failed or the document is malformed
+     */
+    public boolean seekName(String name) throws IOException {
+        while (hasNext()) {
+            expect(JsonToken.NAME);
+            readString();
+            peeked = null;
+
+            if (name.contentEquals(scratch)) {
+                return true;
+            }
+
+            skipValue();
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Text of the next value; numbers and booleans are returned as written, null as null
+     * @throws IOException if the next value is not a primitive
+     */
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+
+        if (token == JsonToken.STRING) {
+            readString();
+        } else if (token == JsonToken.NUMBER || token == JsonToken.BOOLEAN) {
+            readLiteral();
+        } else if (token == JsonToken.NULL) {
+            skipLiteral();
+            peeked = null;
+            return null;
+        } else {
+            throw syntaxError("Expected a string but was " + token);
+        }
+
+        peeked = null;
+        return scratch.toString();
+    }
+
+    /**
+     * @return Next value as a number; numbers written as strings are accepted
+     * @throws IOException if the next value is not a number
+     */
+    public long nextLong() throws IOException {
+        JsonToken token = peek();
+
+        if (token == JsonToken.NUMBER) {
+            readLiteral();
+        } else if (token == JsonToken.STRING) {
+            readString();
+        } else {
+            throw syntaxError("Expected a number but was " + token);
+        }
+
+        peeked = null;
+
+        try {
+            return Long.parseLong(scratch, 0, scratch.length(), 10);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(scratch.toString());
+            } catch (NumberFormatException ignored) {
+                throw syntaxError("Expected a number but was " + scratch);
+            }
+        }
+    }
+
+    /**
+     * @return Next value as a number; numbers written as strings are accepted
+     * @throws IOException if the next value is not a number or does not fit an int
+     */
+    public int nextInt() throws IOException {
+        long value = nextLong();
+
+        if ((int) value != value) {
+            throw syntaxError("Number " + value + " does not fit an int");
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * @return Next value as a boolean
+     * @throws IOException if the next value is not a boolean
+     */
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        readLiteral();
+        peeked = null;
+        return "true".contentEquals(scratch);
+    }
+
+    /**
+     * Skip the next value, including everything nested in it, without materializing any of it.
+     *
+     * @throws IOException if reading failed or the document is malformed
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                case STRING:
+                    skipString();
+                    peeked = null;
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    skipLiteral();
+                    peeked = null;
+                    break;
+                default:
+                    throw syntaxError("Unexpected end of document");
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Skip the rest of every array and object nested deeper than the given depth, so a caller that descended
+     * into a value can return to an enclosing one.
+     *
+     * @param depth Depth to return to, as returned by {@link #getDepth()}
+     * @throws IOException if reading failed or the document is malformed
+     */
+    public void exitTo(int depth) throws IOException {
+        while (getDepth() > depth) {
+            JsonToken token = peek();
+
+            if (token == JsonToken.END_OBJECT) {
+                endObject();
+            } else if (token == JsonToken.END_ARRAY) {
+                endArray();
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private JsonToken doPeek() throws IOException {
+        int scope = stack[stackSize - 1];
+
+        if (scope == EMPTY_ARRAY) {
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == NONEMPTY_ARRAY) {
+            int c = nextNonWhitespace();
+
+            if (c == ']') {
+                return JsonToken.END_ARRAY;
+            } else if (c != ',') {
+                throw syntaxError("Unterminated array");
+            }
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = DANGLING_NAME;
+
+            if (scope == NONEMPTY_OBJECT) {
+                int c = nextNonWhitespace();
+
+                if (c == '}') {
+                    return JsonToken.END_OBJECT;
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated object");
+                }
+            }
+
+            int c = nextNonWhitespace();
+
+            if (c == '"') {
+                return JsonToken.NAME;
+            } else if (c == '}' && scope == EMPTY_OBJECT) {
+                return JsonToken.END_OBJECT;
+            }
+
+            throw syntaxError("Expected a name");
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+
+            if (nextNonWhitespace() != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        } else if (scope == NONEMPTY_DOCUMENT) {
+            if (nextNonWhitespace() == -1) {
+                return JsonToken.END_DOCUMENT;
+            }
+
+            throw syntaxError("Unexpected content after the document");
+        }
+
+        int c = nextNonWhitespace();
+
+        switch (c) {
+            case '{':
+                return JsonToken.BEGIN_OBJECT;
+            case '[':
+                return JsonToken.BEGIN_ARRAY;
+            case '"':
+                return JsonToken.STRING;
+            case ']':
+                if (scope == EMPTY_ARRAY) {
+                    return JsonToken.END_ARRAY;
+                }
+
+                throw syntaxError("Expected a value");
+            case 't':
+            case 'f':
+                pos--;
+                return JsonToken.BOOLEAN;
+            case 'n':
+                pos--;
+                return JsonToken.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return JsonToken.NUMBER;
+                }
+
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void expect(JsonToken expected) throws IOException {
+        JsonToken token = peek();
+
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+
+        stack[stackSize++] = scope;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos++];
+
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+
+        if (read <= 0) {
+            return false;
+        }
+
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
+    private char nextChar() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unterminated string");
+        }
+
+        return buffer[pos++];
+    }
+
+    /**
+     * Read a string whose opening quote was consumed into the scratch buffer.
+     */
+    private void readString() throws IOException {
+        scratch.setLength(0);
+
+        while (true) {
+            int start = pos;
+
+            while (pos < limit) {
+                char c = buffer[pos];
+
+                if (c == '"') {
+                    scratch.append(buffer, start, pos - start);
+                    pos++;
+                    return;
+                } else if (c == '\\') {
+                    scratch.append(buffer, start, pos - start);
+                    pos++;
+                    scratch.append(readEscape());
+                    start = pos;
+                } else {
+                    pos++;
+                }
+            }
+
+            scratch.append(buffer, start, pos - start);
+
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = nextChar();
+
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextChar(), 16);
+
+                    if (digit < 0) {
+                        throw syntaxError("Malformed unicode escape");
+                    }
+
+                    value = (value << 4) | digit;
+                }
+
+                return (char) value;
+            default:
+                return c;
+        }
+    }
+
+    /**
+     * Skip a string whose opening quote was consumed.
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            char c = nextChar();
+
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                // The escaped character can not end the string, and neither can the hex digits of \\u
+                nextChar();
+            }
+        }
+    }
+
+    private void readLiteral() throws IOException {
+        scratch.setLength(0);
+
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+
+            if (isLiteralEnd(c)) {
+                break;
+            }
+
+            scratch.append(c);
+            pos++;
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        while ((pos < limit || fill()) && !isLiteralEnd(buffer[pos])) {
+            pos++;
+        }
+    }
+
+    private static boolean isLiteralEnd(char c) {
+        return c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.youtubeify;
+
+import com.github.youtubeify.cache.MirrorMappingStore;
+import com.github.youtubeify.util.HttpTransport;
+import com.github.youtubeify.util.ResolutionEngine;
+import org.apache.http.HttpRequestInterceptor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that building the plugin makes no network calls and measures how long it takes.
+ */
+class YouTubeifyPluginTest {
+
+    private static final int ROUNDS = 20;
+
+    @Test
+    void constructionMakesNoNetworkCalls() throws IOException, InterruptedException {
+        AtomicInteger requests = new AtomicInteger();
+        long totalNanos = 0;
+        long firstNanos = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            HttpTransport transport = new HttpTransport(32, 128, 60, 30, 30, 32);
+            Path dataDir = Files.createTempDirectory("youtubeify-plugin-test");
+            ResolutionEngine resolutionEngine = new ResolutionEngine(8, 30_000);
+            MirrorMappingStore mappingStore = MirrorMappingStore.open(dataDir, TimeUnit.HOURS.toMillis(1));
+
+            // With a builder hook installed, asynchronous calls also go through the pooled clients and are counted
+            transport.configureBuilder(builder -> builder.addInterceptorFirst((HttpRequestInterceptor) (request, context) -> {
+                requests.incrementAndGet();
+                throw new IOException("Network call during plugin construction: " + request.getRequestLine());
+            }));
+
+            try {
+                long start = System.nanoTime();
+                new YouTubeifyPlugin(transport, resolutionEngine, mappingStore);
+                long elapsed = System.nanoTime() - start;
+
+                totalNanos += elapsed;
+                firstNanos = round == 0 ? elapsed : firstNanos;
+            } finally {
+                // Give background work started by the constructors the chance to send a request
+                Thread.sleep(round == 0 ? 500 : 0);
+                resolutionEngine.shutdown();
+                mappingStore.close();
+                transport.close();
+                deleteDirectory(dataDir);
+            }
+        }
+
+        assertEquals(0, requests.get(), "requests sent while building the plugin");
+        System.out.printf("Plugin construction took %.1f ms the first time and %.2f ms on average over %d rounds%n",
+                firstNanos / 1e6, totalNanos / 1e6 / ROUNDS, ROUNDS);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.github.youtubeify.auth;
+
+import com.github.youtubeify.util.json.TrickleInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Feeds InnerTube responses of the recorded shapes through the streaming parser, a few bytes at a time.
+ *
+ * The bodies keep the structure of real responses, with the sections the parser skips shortened and padded
+ * with names and strings that look like the wanted ones.
+ */
+class InnertubeParserTest {
+
+    private static final String PLAYER_FORMATS = "'streamingData':{'expiresInSeconds':'21540',"
+            + "'formats':[{'itag':18,'url':'https://rr1---sn-4g5e6nzz.googlevideo.com/videoplayback?expire=1718000000&itag=18&mime=video%2Fmp4',"
+            + "'mimeType':'video/mp4; codecs=\\'avc1.42001E, mp4a.40.2\\'','bitrate':503000,'width':640,'height':360,"
+            + "'contentLength':'13274681','quality':'medium','approxDurationMs':'212091','audioQuality':'AUDIO_QUALITY_LOW'}],"
+            + "'adaptiveFormats':[{'itag':140,'url':'https://rr1---sn-4g5e6nzz.googlevideo.com/videoplayback?itag=140&mime=audio%2Fmp4',"
+            + "'mimeType':'audio/mp4; codecs=\\'mp4a.40.2\\'','bitrate':130904,'initRange':{'start':'0','end':'631'},"
+            + "'indexRange':{'start':'632','end':'927'},'contentLength':'3433514','averageBitrate':129508,"
+            + "'approxDurationMs':'212091','audioSampleRate':'44100','audioChannels':2},"
+            + "{'itag':249,'signatureCipher':'s=AOq0QJ8wRAIg&sp=sig&url=https://rr1---sn-4g5e6nzz.googlevideo.com/videoplayback',"
+            + "'mimeType':'audio/webm; codecs=\\'opus\\'','bitrate':58000},"
+            + "{'itag':251,'url':'https://rr1---sn-4g5e6nzz.googlevideo.com/videoplayback?itag=251&mime=audio%2Fwebm',"
+            + "'mimeType':'audio/webm; codecs=\\'opus\\'','bitrate':135620,'contentLength':'3437753',"
+            + "'approxDurationMs':'212061','loudnessDb':-7.12,'xtags':'{\\'lang\\':\\'en\\'}'}]}";
+    private static final String VIDEO_DETAILS = "'videoDetails':{'videoId':'dQw4w9WgXcQ',"
+            + "'title':'Rick Astley - Never Gonna Give You Up (Official Music Video)','lengthSeconds':'212',"
+            + "'keywords':['rick astley','Never Gonna Give You Up'],'channelId':'UCuAXFkgsw1L7xaCfnd5JJOw',"
+            + "'shortDescription':'The official video for \\u201cNever Gonna Give You Up\\u201d {\\'videoId\\':\\'fake\\'}\\n',"
+            + "'thumbnail':{'thumbnails':[{'url':'https://i.ytimg.com/vi/dQw4w9WgXcQ/default.jpg','width':120,'height':90}]},"
+            + "'author':'Rick Astley','isLiveContent':false}";
+
+    @Test
+    void playerResponseFieldsAreExtracted() throws IOException {
+        String body = json("{" + padding("responseContext", 40) + ",'playabilityStatus':{'status':'OK','playableInEmbed':true},"
+                + PLAYER_FORMATS + "," + padding("playbackTracking", 20) + "," + VIDEO_DETAILS + "," + padding("microformat", 200) + "}");
+
+        for (int maxRead = 1; maxRead <= 9; maxRead += 4) {
+            InnertubeParser.PlayerResponse player = InnertubeParser.parsePlayer(new TrickleInputStream(body, maxRead));
+
+            assertEquals("dQw4w9WgXcQ", player.video.videoId);
+            assertEquals("Rick Astley - Never Gonna Give You Up (Official Music Video)", player.video.title);
+            assertEquals("Rick Astley", player.video.author);
+            assertEquals(212, player.video.lengthSeconds);
+
+            assertEquals(1, player.formats.size());
+            assertEquals(18, player.formats.get(0).getItag());
+            assertEquals("video/mp4; codecs=\"avc1.42001E, mp4a.40.2\"", player.formats.get(0).getMimeType());
+
+            // The ciphered format has no URL and is left out
+            assertEquals(2, player.adaptiveFormats.size());
+            StreamFormat aac = player.adaptiveFormats.get(0);
+            assertEquals(140, aac.getItag());
+            assertEquals("https://rr1---sn-4g5e6nzz.googlevideo.com/videoplayback?itag=140&mime=audio%2Fmp4", aac.getUrl());
+            assertEquals(130904, aac.getBitrate());
+            assertEquals(3433514, aac.getContentLength());
+            assertEquals(212091, aac.getApproxDurationMs());
+            StreamFormat opus = player.adaptiveFormats.get(1);
+            assertEquals(251, opus.getItag());
+            assertTrue(opus.isOpus());
+            assertTrue(opus.isAudioOnly());
+        }
+    }
+
+    @Test
+    void playerParseStopsOnceBothSectionsWereRead() throws IOException {
+        String body = json("{'responseContext':{},'playabilityStatus':{'status':'OK'}," + VIDEO_DETAILS + ","
+                + PLAYER_FORMATS + "," + padding("microformat", 2000) + "}");
+        TrickleInputStream in = new TrickleInputStream(body, 7);
+
+        InnertubeParser.PlayerResponse player = InnertubeParser.parsePlayer(in);
+
+        assertEquals("dQw4w9WgXcQ", player.video.videoId);
+        assertEquals(2, player.adaptiveFormats.size());
+        assertTrue(in.getBytesRead() < body.indexOf("\"microformat\"") + 64,
+                "read " + in.getBytesRead() + " of " + body.length() + " bytes");
+    }
+
+    @Test
+    void playerWithoutStreamingDataHasNoFormats() throws IOException {
+        String body = json("{'playabilityStatus':{'status':'LOGIN_REQUIRED','reason':'Sign in to confirm your age'},"
+                + VIDEO_DETAILS + "}");
+
+        InnertubeParser.PlayerResponse player = InnertubeParser.parsePlayer(new TrickleInputStream(body, 3));
+
+        assertEquals("dQw4w9WgXcQ", player.video.videoId);
+        assertTrue(player.formats.isEmpty());
+        assertTrue(player.adaptiveFormats.isEmpty());
+        assertNull(InnertubeParser.parsePlayer(new TrickleInputStream(json("{'playabilityStatus':{'status':'ERROR'}}"), 3)).video);
+    }
+
+    @Test
+    void searchResultsAreExtracted() throws IOException {
+        String body = json("{" + padding("responseContext", 10) + ",'estimatedResults':'1234',"
+                + "'contents':{'twoColumnSearchResultsRenderer':{'primaryContents':{'sectionListRenderer':{'contents':["
+                + "{'itemSectionRenderer':{'contents':["
+                + "{'adSlotRenderer':{'videoId':'adVideo0001','title':{'simpleText':'Ad'}}},"
+                + "{'videoRenderer':{'videoId':'dQw4w9WgXcQ','thumbnail':{'thumbnails':[]},"
+                + "'title':{'runs':[{'text':'Rick Astley - Never Gonna Give You Up'},{'text':' (Official Video)'}],"
+                + "'accessibility':{'accessibilityData':{'label':'Rick Astley'}}},"
+                + "'longBylineText':{'runs':[{'text':'Long byline'}]},'lengthText':{'accessibility':{},'simpleText':'3:33'},"
+                + "'ownerText':{'runs':[{'text':'Rick Astley','navigationEndpoint':{'browseEndpoint':{'browseId':'UCu'}}}]}}},"
+                + "{'shelfRenderer':{'title':{'simpleText':'People also watched'},'content':{'verticalListRenderer':{'items':["
+                + "{'videoRenderer':{'videoId':'shelfVideo1'}}]}}}},"
+                + "{'videoRenderer':{'videoId':'live0000001','title':{'simpleText':'Live radio'},"
+                + "'shortBylineText':{'runs':[{'text':'Radio Channel'}]},'badges':[{'metadataBadgeRenderer':{'label':'LIVE'}}]}},"
+                + "{'videoRenderer':{'videoId':'long0000001','title':{'simpleText':'Long mix'},"
+                + "'ownerText':{'runs':[{'text':'DJ'}]},'lengthText':{'simpleText':'1:02:03'}}},"
+                + "{'videoRenderer':{'title':{'simpleText':'Renderer without an ID'}}}"
+                + "]}},{'continuationItemRenderer':{'continuationEndpoint':{'continuationCommand':{'token':'EqsDEgZyaWNr'}}}}]}}}},"
+                + padding("refinements", 10) + "}");
+
+        List<InnertubeParser.Video> videos = InnertubeParser.parseSearch(new TrickleInputStream(body, 5));
+
+        assertEquals(3, videos.size());
+        assertEquals("dQw4w9WgXcQ", videos.get(0).videoId);
+        assertEquals("Rick Astley - Never Gonna Give You Up", videos.get(0).title);
+        assertEquals("Rick Astley", videos.get(0).author);
+        assertEquals(213, videos.get(0).lengthSeconds);
+        assertEquals("live0000001", videos.get(1).videoId);
+        assertEquals("Radio Channel", videos.get(1).author);
+        assertEquals(0, videos.get(1).lengthSeconds);
+        assertEquals("long0000001", videos.get(2).videoId);
+        assertEquals(3723, videos.get(2).lengthSeconds);
+    }
+
+    @Test
+    void searchOfAnotherShapeHasNoResults() throws IOException {
+        String body = json("{'contents':{'twoColumnSearchResultsRenderer':{'primaryContents':{'richGridRenderer':{'contents':["
+                + "{'videoRenderer':{'videoId':'dQw4w9WgXcQ'}}]}}}},'trailing':{'videoRenderer':{'videoId':'x'}}}");
+
+        assertTrue(InnertubeParser.parseSearch(new TrickleInputStream(body, 4)).isEmpty());
+    }
+
+    @Test
+    void browsePageIsExtracted() throws IOException {
+        String body = json("{" + padding("responseContext", 10) + ","
+                + "'contents':{'twoColumnBrowseResultsRenderer':{'tabs':[{'tabRenderer':{'selected':true,'content':{"
+                + "'sectionListRenderer':{'contents':[{'itemSectionRenderer':{'contents':[{'playlistVideoListRenderer':{"
+                + "'contents':[" + playlistItem("video000001", "First song", "Artist One", "4:05") + ","
+                + "{'playlistVideoRenderer':{'videoId':'video000002','title':{'runs':[{'text':'Second song'}]},"
+                + "'shortBylineText':{'runs':[{'text':'Artist Two'}]},'isPlayable':false}},"
+                + "{'playlistVideoRenderer':{'title':{'runs':[{'text':'[Deleted video]'}]}}},"
+                + continuationItem("4qmFsgKbARIkVkxQTA") + "],'playlistId':'PL123','isEditable':false}}]}}],"
+                + "'targetId':'browse-feed'}}}},{'tabRenderer':{'title':'Second tab'}}]}},"
+                + "'header':{'playlistHeaderRenderer':{'playlistId':'PL123','title':{'simpleText':'My playlist'},"
+                + "'numVideosText':{'runs':[{'text':'3'},{'text':' videos'}]}}},"
+                + padding("sidebar", 30) + "}");
+
+        InnertubeParser.BrowsePage page = InnertubeParser.parseBrowse(new TrickleInputStream(body, 6));
+
+        assertEquals("My playlist", page.title);
+        assertEquals(2, page.videos.size());
+        assertEquals("video000001", page.videos.get(0).videoId);
+        assertEquals("First song", page.videos.get(0).title);
+        assertEquals("Artist One", page.videos.get(0).author);
+        assertEquals(245, page.videos.get(0).lengthSeconds);
+        assertEquals("Artist Two", page.videos.get(1).author);
+        assertEquals("4qmFsgKbARIkVkxQTA", page.continuation);
+    }
+
+    @Test
+    void browseRecoversFromContentsOfAnotherShape() throws IOException {
+        // The path ends early at an empty section list, the reader has to find its way back to the header
+        String body = json("{'contents':{'twoColumnBrowseResultsRenderer':{'tabs':[{'tabRenderer':{'content':{"
+                + "'sectionListRenderer':{'contents':[],'trackingParams':'abc'}}}}]},'extra':[1,2,3]},"
+                + "'header':{'playlistHeaderRenderer':{'title':{'runs':[{'text':'Title from runs'}]}}}}");
+
+        InnertubeParser.BrowsePage page = InnertubeParser.parseBrowse(new TrickleInputStream(body, 2));
+
+        assertEquals("Title from runs", page.title);
+        assertNull(page.videos);
+        assertNull(page.continuation);
+    }
+
+    @Test
+    void continuationPageIsExtracted() throws IOException {
+        String body = json("{" + padding("responseContext", 10) + ",'trackingParams':'CAAQhGciEwi',"
+                + "'onResponseReceivedActions':[{'clickTrackingParams':'CBkQ7zsYAC','appendContinuationItemsAction':{"
+                + "'continuationItems':[" + playlistItem("video000101", "Page two song", "Artist", "2:00") + ","
+                + playlistItem("video000102", "Another song", "Artist", "59") + "," + continuationItem("nextPageToken")
+                + "],'targetId':'VLPL123'}}]}");
+
+        InnertubeParser.BrowsePage page = InnertubeParser.parseBrowse(new TrickleInputStream(body, 3));
+
+        assertNull(page.title);
+        assertEquals(2, page.videos.size());
+        assertEquals("video000101", page.videos.get(0).videoId);
+        assertEquals(120, page.videos.get(0).lengthSeconds);
+        assertEquals(59, page.videos.get(1).lengthSeconds);
+        assertEquals("nextPageToken", page.continuation);
+
+        String lastPage = json("{'onResponseReceivedActions':[{'appendContinuationItemsAction':{'continuationItems':["
+                + playlistItem("video000201", "Last song", "Artist", "1:00") + "]}}]}");
+        InnertubeParser.BrowsePage last = InnertubeParser.parseBrowse(new TrickleInputStream(lastPage, 3));
+
+        assertEquals(1, last.videos.size());
+        assertNull(last.continuation);
+    }
+
+    @Test
+    void playerParseAllocatesLessThanReadingTheBody() throws IOException {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+        byte[] body = json("{" + padding("responseContext", 500) + ",'playabilityStatus':{'status':'OK'}," + PLAYER_FORMATS + ","
+                + padding("playbackTracking", 2000) + "," + VIDEO_DETAILS + "," + padding("microformat", 2000) + "}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        // Warm up both paths, so class loading is not measured
+        for (int i = 0; i < 5; i++) {
+            InnertubeParser.parsePlayer(new ByteArrayInputStream(body));
+            readFully(new ByteArrayInputStream(body));
+        }
+
+        long start = allocations.getThreadAllocatedBytes(threadId);
+        InnertubeParser.parsePlayer(new ByteArrayInputStream(body));
+        long parsed = allocations.getThreadAllocatedBytes(threadId) - start;
+
+        start = allocations.getThreadAllocatedBytes(threadId);
+        readFully(new ByteArrayInputStream(body));
+        long read = allocations.getThreadAllocatedBytes(threadId) - start;
+
+        System.out.printf("Player response of %d KiB: streaming parse allocated %d KiB, reading it into a string %d KiB%n",
+                body.length / 1024, parsed / 1024, read / 1024);
+        assertTrue(parsed * 4 < read, "streaming parse allocated " + parsed + " bytes, reading the body " + read);
+    }
+
+    /**
+     * What any parser building a tree has to allocate at least: the body as a string.
+     */
+    private static String readFully(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static String playlistItem(String videoId, String title, String author, String length) {
+        return "{'playlistVideoRenderer':{'videoId':'" + videoId + "','thumbnail':{'thumbnails':[{'url':'x'}]},"
+                + "'title':{'runs':[{'text':'" + title + "'}],'accessibility':{'accessibilityData':{'label':'" + title + "'}}},"
+                + "'index':{'simpleText':'1'},'shortBylineText':{'runs':[{'text':'" + author + "',"
+                + "'navigationEndpoint':{'browseEndpoint':{'browseId':'UC1'}}}]},"
+                + "'lengthText':{'accessibility':{'accessibilityData':{'label':'minutes'}},'simpleText':'" + length + "'},"
+                + "'lengthSeconds':'0','isPlayable':true}}";
+    }
+
+    private static String continuationItem(String token) {
+        return "{'continuationItemRenderer':{'trigger':'CONTINUATION_TRIGGER_ON_ITEM_SHOWN','continuationEndpoint':{"
+                + "'clickTrackingParams':'CCAQ7zs','commandMetadata':{'webCommandMetadata':{'sendPost':true,"
+                + "'apiUrl':'/youtubei/v1/browse'}},'continuationCommand':{'token':'" + token + "',"
+                + "'request':'CONTINUATION_REQUEST_TYPE_BROWSE'}}}}";
+    }
+
+    /**
+     * A member of the given name whose value is a section the parser skips, with decoy names inside.
+     */
+    private static String padding(String name, int entries) {
+        StringBuilder builder = new StringBuilder("'").append(name).append("':{'serviceTrackingParams':[");
+
+        for (int i = 0; i < entries; i++) {
+            builder.append(i > 0 ? "," : "")
+                    .append("{'service':'GFEEDBACK','params':[{'key':'videoId','value':'decoy").append(i).append("'},")
+                    .append("{'key':'e','value':'23804281,23946420,{\\'streamingData\\':[]}'}],")
+                    .append("'videoDetails':{'videoId':'decoy").append(i).append("','title':'Decoy','author':'x'},")
+                    .append("'token':'").append("\\u00e9\\\\\\'").append(i).append("','n':").append(i * 1.5).append("}");
+        }
+
+        return builder.append("],'maxAgeSeconds':0}").toString();
+    }
+
+    private static String json(String singleQuoted) {
+        return singleQuoted.replace('\'', '"');
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.youtubeify.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks which calls share a leader and that followers receive the leader's exception type.
+ */
+class SingleFlightTest {
+
+    @Test
+    void blockingCallDoesNotWaitForAsynchronousLeader() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> leader = new CompletableFuture<>();
+        CompletableFuture<String> asyncResult = flight.executeAsync("key", () -> leader);
+
+        // The loader declares no checked exception, so it must not receive the leader's
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> flight.execute("key", () -> "blocking"));
+
+        assertEquals("blocking", result.get(1, TimeUnit.SECONDS));
+        leader.completeExceptionally(new Exception("checked"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> asyncResult.get(1, TimeUnit.SECONDS));
+        assertEquals("checked", e.getCause().getMessage());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void asynchronousCallJoinsBlockingLeader() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<CompletableFuture<String>> follower = new CompletableFuture<>();
+
+        String result = flight.execute("key", () -> {
+            follower.complete(flight.executeAsync("key", () -> CompletableFuture.completedFuture("async")));
+            return "blocking";
+        });
+
+        assertEquals("blocking", result);
+        assertEquals("blocking", follower.get().get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void blockingFollowerReceivesLeaderException() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<Void> leaderStarted = new CompletableFuture<>();
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        IOException failure = new IOException("failed");
+
+        Thread leader = new Thread(() -> {
+            try {
+                flight.execute("key", () -> {
+                    leaderStarted.complete(null);
+                    release.join();
+                    throw failure;
+                });
+            } catch (IOException ignored) {
+                // Expected
+            }
+        });
+        leader.start();
+        leaderStarted.get(1, TimeUnit.SECONDS);
+
+        CompletableFuture<IOException> followerFailure = CompletableFuture.supplyAsync(() -> {
+            try {
+                flight.execute("key", () -> {
+                    throw new IOException("follower ran its own loader");
+                });
+                return null;
+            } catch (IOException e) {
+                return e;
+            }
+        });
+
+        // Give the follower time to join before the leader fails
+        Thread.sleep(100);
+        release.complete(null);
+        leader.join(1000);
+
+        assertSame(failure, followerFailure.get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.youtubeify.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that admission to the main segment is all or nothing.
+ */
+class TinyLfuCacheTest {
+
+    private static final long TTL_MS = 60_000;
+
+    @Test
+    void rejectedCandidateEvictsNothing() {
+        TinyLfuCache<String, Integer> cache = newCache();
+        cache.put("cold", 490);
+        cache.put("hot", 490);
+        requestTimes(cache, "hot", 6);
+        requestTimes(cache, "candidate", 3);
+
+        // Needs the room of both entries, but the hot one is more popular
+        cache.put("candidate", 510);
+        CacheStats stats = cache.getStats();
+
+        assertEquals(0, stats.getEvictionCount());
+        assertEquals(1, stats.getRejectionCount());
+        assertNotNull(cache.get("cold"));
+        assertNotNull(cache.get("hot"));
+        assertNull(cache.get("candidate"));
+    }
+
+    @Test
+    void admittedCandidateEvictsLessPopularEntries() {
+        TinyLfuCache<String, Integer> cache = newCache();
+        cache.put("cold", 490);
+        cache.put("warm", 490);
+        requestTimes(cache, "warm", 2);
+        requestTimes(cache, "candidate", 4);
+
+        cache.put("candidate", 510);
+        CacheStats stats = cache.getStats();
+
+        assertEquals(2, stats.getEvictionCount());
+        assertEquals(0, stats.getRejectionCount());
+        assertNull(cache.get("cold"));
+        assertNull(cache.get("warm"));
+        assertNotNull(cache.get("candidate"));
+    }
+
+    @Test
+    void entryLargerThanTheMainSegmentIsRejected() {
+        TinyLfuCache<String, Integer> cache = newCache();
+        cache.put("huge", 995);
+
+        assertEquals(1, cache.getStats().getRejectionCount());
+        assertNull(cache.get("huge"));
+    }
+
+    /**
+     * Cache of weight 1000 whose window holds 10, so every put below passes straight to the main segment.
+     */
+    private static TinyLfuCache<String, Integer> newCache() {
+        return new TinyLfuCache<>(1000, 64, TTL_MS, (key, weight) -> weight);
+    }
+
+    private static void requestTimes(TinyLfuCache<String, Integer> cache, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            cache.get(key);
+        }
+    }
+}
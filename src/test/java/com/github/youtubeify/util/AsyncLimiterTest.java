@@ -0,0 +1,64 @@
+package com.github.youtubeify.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the limiter never starts more calls than allowed and completes every call.
+ */
+class AsyncLimiterTest {
+
+    @Test
+    void startsQueuedCallsInOrderWithinTheLimit() {
+        AsyncLimiter limiter = new AsyncLimiter(2, Runnable::run);
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        AtomicInteger started = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            results.add(limiter.submit(() -> {
+                started.incrementAndGet();
+                CompletableFuture<Integer> call = new CompletableFuture<>();
+                calls.add(call);
+                return call;
+            }));
+        }
+
+        assertEquals(2, started.get());
+
+        for (int i = 0; i < 5; i++) {
+            calls.get(i).complete(i);
+            assertEquals(Math.min(5, i + 3), started.get());
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), results.get(i).join());
+        }
+    }
+
+    @Test
+    void failedCallsReleaseTheirSlot() {
+        AsyncLimiter limiter = new AsyncLimiter(1, Runnable::run);
+
+        CompletableFuture<Object> failed = limiter.submit(() -> {
+            throw new IllegalStateException("failed to start");
+        });
+        CompletableFuture<Object> rejected = limiter.submit(() -> {
+            CompletableFuture<Object> call = new CompletableFuture<>();
+            call.completeExceptionally(new IllegalStateException("failed"));
+            return call;
+        });
+        CompletableFuture<String> next = limiter.submit(() -> CompletableFuture.completedFuture("done"));
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertTrue(rejected.isCompletedExceptionally());
+        assertEquals("done", next.join());
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.youtubeify.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the bit-parallel and banded edit distance against a plain dynamic program.
+ */
+class EditDistanceTest {
+
+    private static final String ALPHABET = "aabbcde -()\u00E9\u4E2D\uD83C\uDFB5";
+    private static final int RANDOM_PAIRS = 30_000;
+
+    @Test
+    void emptyStrings() {
+        assertEquals(0, EditDistance.distance("", ""));
+        assertEquals(3, EditDistance.distance("", "abc"));
+        assertEquals(3, EditDistance.distance("abc", ""));
+        assertEquals(2, EditDistance.distance("", "abc", 1));
+        assertEquals(0.0, TrackUtils.compareNormalizedTitles("", "abc"), 0.0);
+        assertEquals(0.0, TrackUtils.compareNormalizedTitles("abc", ""), 0.0);
+        assertEquals(1.0, TrackUtils.compareNormalizedTitles("", ""), 0.0);
+    }
+
+    @Test
+    void knownDistances() {
+        assertEquals(3, EditDistance.distance("kitten", "sitting"));
+        assertEquals(2, EditDistance.distance("flaw", "lawn"));
+        assertEquals(0, EditDistance.distance("same", "same"));
+        assertEquals(65, EditDistance.distance(repeat('a', 65), repeat('b', 65)));
+    }
+
+    @Test
+    void randomPairsMatchDynamicProgram() {
+        Random random = new Random(20240612L);
+
+        for (int i = 0; i < RANDOM_PAIRS; i++) {
+            // Lengths on both sides of the 64 character limit of the bit-parallel algorithm
+            String a = randomString(random, random.nextInt(i % 10 == 0 ? 160 : 70));
+            String b = i % 4 == 0 ? mutate(random, a) : randomString(random, random.nextInt(i % 10 == 0 ? 160 : 70));
+            int expected = referenceDistance(a, b);
+            String pair = "\"" + a + "\" / \"" + b + "\"";
+
+            assertEquals(expected, EditDistance.distance(a, b), pair);
+            assertEquals(expected, EditDistance.distance(b, a), pair);
+
+            int maxDistance = random.nextInt(Math.max(a.length(), b.length()) + 2);
+            assertEquals(Math.min(expected, maxDistance + 1), EditDistance.distance(a, b, maxDistance), pair + " within " + maxDistance);
+        }
+    }
+
+    @Test
+    void similarityCutoffOnlyDropsScoresBelowIt() {
+        Random random = new Random(20240613L);
+
+        for (int i = 0; i < RANDOM_PAIRS / 10; i++) {
+            String a = randomString(random, random.nextInt(90));
+            String b = random.nextBoolean() ? mutate(random, a) : randomString(random, random.nextInt(90));
+            double minSimilarity = random.nextInt(11) / 10.0;
+            double similarity = TrackUtils.compareNormalizedTitles(a, b);
+            double expected = similarity >= minSimilarity ? similarity : 0.0;
+
+            assertEquals(expected, TrackUtils.compareNormalizedTitles(a, b, minSimilarity), 0.0,
+                    "\"" + a + "\" / \"" + b + "\" at " + minSimilarity);
+        }
+    }
+
+    private static int referenceDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[b.length()];
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+
+        return builder.toString();
+    }
+
+    private static String mutate(Random random, String source) {
+        StringBuilder builder = new StringBuilder(source);
+        int edits = random.nextInt(6);
+
+        for (int i = 0; i < edits; i++) {
+            int position = builder.length() == 0 ? 0 : random.nextInt(builder.length());
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+
+            switch (random.nextInt(3)) {
+                case 0:
+                    builder.insert(position, c);
+                    break;
+                case 1:
+                    if (builder.length() > 0) {
+                        builder.deleteCharAt(position);
+                    }
+                    break;
+                default:
+                    if (builder.length() > 0) {
+                        builder.setCharAt(position, c);
+                    }
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+}
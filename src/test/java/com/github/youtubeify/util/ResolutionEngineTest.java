@@ -0,0 +1,92 @@
+package com.github.youtubeify.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a batch collects results in index order and runs nothing once its deadline has passed.
+ */
+class ResolutionEngineTest {
+
+    @Test
+    void resultsAreOrderedByIndex() {
+        ResolutionEngine engine = new ResolutionEngine(4, 10_000);
+
+        try {
+            ResolutionEngine.Batch<String> batch = engine.newBatch();
+            batch.submit(2, () -> "c");
+            batch.submit(0, () -> "a");
+            batch.submit(3, () -> null);
+            batch.add(1, "b");
+            batch.spawn(() -> batch.submit(4, () -> "d"));
+
+            assertEquals(Arrays.asList("a", "b", "c", "d"), batch.await());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    void tasksSpawnedAfterTheDeadlineDoNotRun() throws InterruptedException {
+        ResolutionEngine engine = new ResolutionEngine(2, 200);
+        CountDownLatch awaited = new CountDownLatch(1);
+        CountDownLatch spawnedFinished = new CountDownLatch(1);
+        AtomicInteger lateTasks = new AtomicInteger();
+
+        try {
+            ResolutionEngine.Batch<String> batch = engine.newBatch();
+            batch.submit(0, () -> "first");
+
+            // Like a page fetch blocked in socket I/O, the task does not react to the interrupt of the cancel
+            batch.spawn(() -> {
+                awaitUninterruptibly(awaited);
+
+                for (int i = 1; i <= 5; i++) {
+                    batch.submit(i, () -> {
+                        lateTasks.incrementAndGet();
+                        return "late";
+                    });
+                }
+
+                batch.add(6, "late");
+                spawnedFinished.countDown();
+            });
+
+            List<String> results = batch.await();
+            awaited.countDown();
+
+            assertTrue(spawnedFinished.await(5, TimeUnit.SECONDS), "spawned task did not finish");
+            Thread.sleep(300);
+
+            assertEquals(Arrays.asList("first"), results);
+            assertEquals(0, lateTasks.get(), "tasks submitted after the deadline ran");
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.youtubeify.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the streaming title cleanup produces exactly the output of the regex cleanup it replaced.
+ */
+class TitleNormalizerTest {
+
+    private static final String[] CORPUS = {
+            "",
+            " ",
+            "Song",
+            "Rick Astley - Never Gonna Give You Up (Official Music Video)",
+            "Rick Astley - Never Gonna Give You Up (Official Video) [4K Remaster]",
+            "Queen - Bohemian Rhapsody (Official Video Remastered)",
+            "Daft Punk - Get Lucky (Official Audio) ft. Pharrell Williams, Nile Rodgers",
+            "Adele - Hello (Lyrics)",
+            "Adele - Hello (Lyric Video)",
+            "Adele - Hello [Lyrics]",
+            "Adele - Hello with lyrics",
+            "Adele - Hello WITH LYRICS",
+            "Coldplay - Yellow (Official Video) (Official Audio)",
+            "Artist - Song (Radio Version)",
+            "Artist - Song (Extended Version) (Official Video)",
+            "Artist - Song (Acoustic)",
+            "Artist - Song (Live at Wembley)",
+            "Artist - Song (feat. Other Artist) [Official Music Video]",
+            "Artist - Song [HD] [HQ]",
+            "Artist - Song [Official Video",
+            "Artist - Song (Official Video",
+            "Artist - Song (Official)) video)",
+            "Artist - Song ((nested) video)",
+            "Artist - Song [[nested]] audio",
+            "Artist - Song (Video) (video) (VIDEO)",
+            "Artist - Song official video official audio",
+            "Artist - Song OFFICIAL VIDEO",
+            "Artist - Song Official Music Video",
+            "Artist - Song official music video",
+            "Artist - Song official  video",
+            "Artist - Song lyric videos",
+            "Artist - Song officialofficial video",
+            "   Artist   -   Song   ",
+            "Artist\t-\tSong\n(Official Video)",
+            "Artist - Song (Official Video)\u00A0",
+            "Beyonc\u00E9 - Halo (Official Video)",
+            "Sigur R\u00F3s - Hopp\u00EDpolla (Official Audio)",
+            "Mot\u00F6rhead - Ace of Spades (Official Video)",
+            "M\u00C5NESKIN - ZITTI E BUONI (Official Video)",
+            "\u0130stanbul (Official Audio)",
+            "TARKAN - \u015EIMARIK (Official Video)",
+            "\u7C73\u6D25\u7384\u5E2B - Lemon (Official Video)",
+            "BTS (\uBC29\uD0C4\uC18C\uB144\uB2E8) 'Dynamite' Official MV",
+            "\uD83C\uDFB5 Song \uD83C\uDFB5 (Official Video)",
+            "Artist - Song (Official Video) - Topic",
+            "Artist - Song (2011 Remaster version)",
+            "Artist - Song [Official Music Video] (Lyrics)",
+            "\u039F\u0394\u039F\u03A3 \u03A3\u039F\u03A6\u0399\u0391\u03A3 (Official Video)",
+    };
+
+    private static final String[] FRAGMENTS = {
+            "(", ")", "[", "]", " ", "  ", "\t", "\n", "-", "a", "B", "song",
+            "version", "Version", "video", "VIDEO", "audio", "official", "Official", "lyrics", "Lyrics",
+            "official video", "Official Audio", "official music video", "lyric video", "With Lyrics",
+            "music", "lyric", "with", "\u00E9", "\u00C9", "\u0130", "\u00DF", "\u00FF",
+            "\u03A3", "\u03C3", "\u0391"
+    };
+
+    private static final int RANDOM_TITLES = 100_000;
+
+    @Test
+    void cleanupTitleMatchesRegexCleanupOnCorpus() {
+        for (String title : CORPUS) {
+            assertEquals(legacyCleanupTitle(title), TrackUtils.cleanupTitle(title), title);
+        }
+    }
+
+    @Test
+    void comparisonNormalizationMatchesRegexCleanupOnCorpus() {
+        for (String title : CORPUS) {
+            assertEquals(legacyComparisonTitle(title), TrackUtils.normalizeTitleForComparison(title), title);
+        }
+    }
+
+    @Test
+    void batchNormalizationMatchesSingleTitles() {
+        List<String> titles = Arrays.asList(CORPUS);
+        List<String> expected = new ArrayList<>();
+
+        for (String title : titles) {
+            expected.add(legacyComparisonTitle(title));
+        }
+
+        assertEquals(expected, TrackUtils.normalizeTitlesForComparison(titles));
+    }
+
+    @Test
+    void randomTitlesMatchRegexCleanup() {
+        Random random = new Random(20240611L);
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < RANDOM_TITLES; i++) {
+            builder.setLength(0);
+            int fragments = random.nextInt(12);
+
+            for (int j = 0; j < fragments; j++) {
+                builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+
+            String title = builder.toString();
+            assertEquals(legacyCleanupTitle(title), TrackUtils.cleanupTitle(title), title);
+            assertEquals(legacyComparisonTitle(title), TrackUtils.normalizeTitleForComparison(title), title);
+        }
+    }
+
+    private static String legacyComparisonTitle(String title) {
+        return legacyCleanupTitle(title.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The regex cleanup TitleNormalizer replaced, kept as the reference.
+     */
+    private static String legacyCleanupTitle(String title) {
+        title = title.replaceAll("\\([^)]*version\\)", "")
+                .replaceAll("\\([^)]*video\\)", "")
+                .replaceAll("\\([^)]*audio\\)", "")
+                .replaceAll("\\([^)]*official\\)", "")
+                .replaceAll("\\([^)]*lyrics\\)", "")
+                .replaceAll("\\[.*?\\]", "")
+                .replaceAll("(?i)official video", "")
+                .replaceAll("(?i)official audio", "")
+                .replaceAll("(?i)official music video", "")
+                .replaceAll("(?i)lyric video", "")
+                .replaceAll("(?i)with lyrics", "");
+
+        return title.trim().replaceAll("\\s+", " ");
+    }
+}
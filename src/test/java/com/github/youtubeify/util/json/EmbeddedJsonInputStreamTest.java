@@ -0,0 +1,136 @@
+package com.github.youtubeify.util.json;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the object assigned to a variable of a page is cut out exactly, wherever the reads of the
+ * page happen to split it.
+ */
+class EmbeddedJsonInputStreamTest {
+
+    private static final String VARIABLE = "ytInitialPlayerResponse";
+    private static final String OBJECT = "{\"videoDetails\":{\"videoId\":\"dQw4w9WgXcQ\",\"title\":\"Braces } { ] [ in a string\"},"
+            + "\"quoted\":\"say \\\"}\\\" and \\\\\",\"backslash\":\"\\\\\",\"nested\":[{\"a\":[[],{}]},\"]\"],"
+            + "\"text\":\"Caf\u00E9 \u4E2D \uD83C\uDFB5\"}";
+    private static final String AFTER = ";var meta = {\"videoId\":\"other\"};</script><script>var ytInitialData = {};</script>";
+
+    @Test
+    void extractsTheObjectAndStopsAtItsClosingBrace() throws IOException {
+        String page = "<html><script>var " + VARIABLE + " = " + OBJECT + AFTER;
+
+        for (int maxRead = 1; maxRead <= 16; maxRead++) {
+            TrickleInputStream in = new TrickleInputStream(bytes(page), maxRead, maxRead);
+            EmbeddedJsonInputStream embedded = new EmbeddedJsonInputStream(in, VARIABLE);
+
+            assertTrue(embedded.find());
+            assertEquals(OBJECT, readAll(embedded, maxRead));
+            assertEquals(-1, embedded.read());
+
+            // At most the rest of the last read of the page may lie beyond the object
+            long objectEnd = bytes(page.substring(0, page.indexOf(AFTER))).length;
+            assertTrue(in.getBytesRead() <= objectEnd + maxRead - 1, "read " + in.getBytesRead() + " bytes of the page");
+        }
+    }
+
+    @Test
+    void variableNameSplitAcrossBufferRefills() throws IOException {
+        // The internal buffer holds 8192 bytes, put the name across its boundary at every offset
+        for (int split = 1; split < VARIABLE.length(); split++) {
+            String page = pad(8192 - split) + VARIABLE + "=" + OBJECT + AFTER;
+            EmbeddedJsonInputStream embedded = new EmbeddedJsonInputStream(new ByteArrayInputStream(bytes(page)), VARIABLE);
+
+            assertEquals(OBJECT, readAll(embedded, 8192), "name split after " + split + " bytes");
+        }
+    }
+
+    @Test
+    void skipsAssignmentsThatAreNotObjects() throws IOException {
+        String page = "<script>if (window." + VARIABLE + ") {} var " + VARIABLE + " = null;"
+                + " var " + VARIABLE + "Copy = {\"wrong\":1}; " + VARIABLE + "\n=\t\"{\"; "
+                + VARIABLE + " =\r\n " + OBJECT + AFTER;
+
+        for (int maxRead = 1; maxRead <= 9; maxRead += 2) {
+            EmbeddedJsonInputStream embedded = new EmbeddedJsonInputStream(new TrickleInputStream(bytes(page), maxRead, 1), VARIABLE);
+            assertEquals(OBJECT, readAll(embedded, 7));
+        }
+    }
+
+    @Test
+    void findsTheNameAfterAPartialMatch() throws IOException {
+        // A repeated prefix that a naive restart of the match would skip over
+        String page = "ytInitialPlayerytInitialPlayerResponse = " + OBJECT;
+        EmbeddedJsonInputStream embedded = new EmbeddedJsonInputStream(new TrickleInputStream(bytes(page), 3, 2), VARIABLE);
+
+        assertEquals(OBJECT, readAll(embedded, 5));
+
+        // The pushed back byte after a rejected match can start the next match
+        String adjacent = VARIABLE + VARIABLE + "={\"a\":1}";
+        embedded = new EmbeddedJsonInputStream(new ByteArrayInputStream(bytes(adjacent)), VARIABLE);
+
+        assertEquals("{\"a\":1}", readAll(embedded, 64));
+    }
+
+    @Test
+    void pageWithoutTheAssignmentIsEmpty() throws IOException {
+        String page = "<html>var " + VARIABLE + " = null; var other = {\"a\":1};</html>";
+        EmbeddedJsonInputStream embedded = new EmbeddedJsonInputStream(new TrickleInputStream(bytes(page), 4, 3), VARIABLE);
+
+        assertFalse(embedded.find());
+        assertEquals(-1, embedded.read());
+        assertEquals(-1, embedded.read(new byte[16], 0, 16));
+    }
+
+    @Test
+    void objectCanBeParsedStraightFromThePage() throws IOException {
+        String page = "<script>var " + VARIABLE + " = " + OBJECT + AFTER;
+        JsonReader reader = new JsonReader(new EmbeddedJsonInputStream(new TrickleInputStream(bytes(page), 5, 4), VARIABLE));
+
+        reader.beginObject();
+        assertTrue(reader.seekName("videoDetails"));
+        reader.beginObject();
+        assertTrue(reader.seekName("videoId"));
+        assertEquals("dQw4w9WgXcQ", reader.nextString());
+        reader.exitTo(1);
+        assertTrue(reader.seekName("text"));
+        assertEquals("Caf\u00E9 \u4E2D \uD83C\uDFB5", reader.nextString());
+        reader.endObject();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    private static String readAll(InputStream in, int chunk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[chunk];
+        int read;
+
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String pad(int length) {
+        StringBuilder builder = new StringBuilder(length);
+
+        while (builder.length() < length) {
+            builder.append("<div class=\"x\">ytInitial</div>\n");
+        }
+
+        builder.setLength(length);
+        return builder.toString();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
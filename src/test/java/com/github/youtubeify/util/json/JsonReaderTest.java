@@ -0,0 +1,287 @@
+package com.github.youtubeify.util.json;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the pull parser on documents that arrive a few bytes at a time.
+ */
+class JsonReaderTest {
+
+    private static final int RANDOM_DOCUMENTS = 2_000;
+    private static final String[] STRING_PARTS = {
+            "a", "video", " ", "\\\"", "\\\\", "\\n", "\\u00e9", "\\u4E2D", "\\uD83C\\uDFB5", "\u00E9", "\u4E2D",
+            "\uD83C\uDFB5", "{", "}", "[", "]", ",", ":"
+    };
+    private static final String[] DECODED_PARTS = {
+            "a", "video", " ", "\"", "\\", "\n", "\u00E9", "\u4E2D", "\uD83C\uDFB5", "\u00E9", "\u4E2D",
+            "\uD83C\uDFB5", "{", "}", "[", "]", ",", ":"
+    };
+
+    @Test
+    void readsEveryKindOfValue() throws IOException {
+        JsonReader reader = reader("{'text':'Caf\u00E9 \\'live\\' \\\\ \\n\\u0041', 'negative':-12, 'exponent':2.5e3,"
+                + " 'quoted':'1234567890123', 't':true, 'f':false, 'nothing':null, 'nested':[1,[2,3],{'a':{}}], 'empty':{}}");
+
+        reader.beginObject();
+        assertEquals("text", reader.nextName());
+        assertEquals("Caf\u00E9 \"live\" \\ \nA", reader.nextString());
+        assertEquals("negative", reader.nextName());
+        assertEquals(-12, reader.nextInt());
+        assertEquals("exponent", reader.nextName());
+        assertEquals(2500, reader.nextLong());
+        assertEquals("quoted", reader.nextName());
+        assertEquals(1234567890123L, reader.nextLong());
+        assertEquals("t", reader.nextName());
+        assertTrue(reader.nextBoolean());
+        assertEquals("f", reader.nextName());
+        assertEquals("false", reader.nextString());
+        assertEquals("nothing", reader.nextName());
+        assertEquals(JsonToken.NULL, reader.peek());
+        assertNull(reader.nextString());
+        assertEquals("nested", reader.nextName());
+        reader.skipValue();
+        assertEquals("empty", reader.nextName());
+        reader.beginObject();
+        assertFalse(reader.hasNext());
+        reader.endObject();
+        reader.endObject();
+        assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    void selectsAndSeeksNames() throws IOException {
+        String[] names = {"title", "videoId"};
+        JsonReader reader = reader("{'other':{'videoId':'nested'},'videoId':'abc','title':'Song','last':1}");
+
+        reader.beginObject();
+        assertEquals(-1, reader.selectName(names));
+        reader.skipValue();
+        assertEquals(1, reader.selectName(names));
+        assertEquals("abc", reader.nextString());
+        assertTrue(reader.seekName("last"));
+        assertEquals(1, reader.nextInt());
+        assertFalse(reader.seekName("missing"));
+        assertEquals(JsonToken.END_OBJECT, reader.peek());
+        reader.endObject();
+    }
+
+    @Test
+    void seekNameStopsAtTheEndOfTheObject() throws IOException {
+        JsonReader reader = reader("{'a':{'b':1,'c':[2]},'d':3}");
+
+        reader.beginObject();
+        assertTrue(reader.seekName("a"));
+        reader.beginObject();
+        assertFalse(reader.seekName("missing"));
+        reader.endObject();
+        assertEquals("d", reader.nextName());
+        assertEquals(3, reader.nextInt());
+    }
+
+    @Test
+    void exitToReturnsToAnEnclosingValue() throws IOException {
+        JsonReader reader = reader("{'a':{'b':[{'c':{'d':[1,2,{'e':'x'}]}},4],'f':'g'},'next':'value'}");
+
+        reader.beginObject();
+        assertEquals(1, reader.getDepth());
+        assertTrue(reader.seekName("a"));
+        reader.beginObject();
+        assertTrue(reader.seekName("b"));
+        reader.beginArray();
+        reader.beginObject();
+        assertTrue(reader.seekName("c"));
+        reader.beginObject();
+        assertEquals(5, reader.getDepth());
+
+        reader.exitTo(1);
+        assertEquals(1, reader.getDepth());
+        assertEquals("next", reader.nextName());
+        assertEquals("value", reader.nextString());
+        reader.endObject();
+        assertEquals(0, reader.getDepth());
+    }
+
+    @Test
+    void exitToAfterAPeekedValue() throws IOException {
+        JsonReader reader = reader("[{'a':[1,2,3]},'after']");
+
+        reader.beginArray();
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        assertEquals(JsonToken.BEGIN_ARRAY, reader.peek());
+
+        reader.exitTo(1);
+        assertEquals("after", reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    void rejectsMalformedDocuments() {
+        assertThrows(IOException.class, () -> readValue(reader("{'a' 1}")));
+        assertThrows(IOException.class, () -> readValue(reader("{'a':1")));
+        assertThrows(IOException.class, () -> readValue(reader("['unterminated")));
+        assertThrows(IOException.class, () -> readValue(reader("[1 2]")));
+        assertThrows(IOException.class, () -> readValue(reader("['\\u12G4']")));
+        assertThrows(IOException.class, () -> {
+            JsonReader reader = reader("{} {}");
+            readValue(reader);
+            reader.peek();
+        });
+        assertThrows(IOException.class, () -> reader("{'a':'b'}").nextString());
+    }
+
+    @Test
+    void randomDocumentsMatchWhenReadInSmallPieces() throws IOException {
+        Random random = new Random(20240614L);
+
+        for (int i = 0; i < RANDOM_DOCUMENTS; i++) {
+            StringBuilder json = new StringBuilder();
+            Object expected = randomValue(random, json, 0);
+            String document = json.toString();
+
+            JsonReader reader = new JsonReader(new TrickleInputStream(document, 1 + random.nextInt(8)));
+            assertEquals(expected, readValue(reader), document);
+            assertEquals(JsonToken.END_DOCUMENT, reader.peek(), document);
+
+            // The same document through a reader of characters rather than bytes
+            assertEquals(expected, readValue(new JsonReader(new StringReader(document))), document);
+        }
+    }
+
+    @Test
+    void skippedValuesLeaveTheReaderAtTheNextMember() throws IOException {
+        Random random = new Random(20240615L);
+
+        for (int i = 0; i < RANDOM_DOCUMENTS / 4; i++) {
+            StringBuilder json = new StringBuilder("{\"skipped\":");
+            randomValue(random, json, 0);
+            json.append(",\"kept\":\"value\"}");
+
+            JsonReader reader = new JsonReader(new TrickleInputStream(json.toString(), 1 + random.nextInt(8)));
+            reader.beginObject();
+            assertTrue(reader.seekName("kept"), json.toString());
+            assertEquals("value", reader.nextString());
+            reader.endObject();
+        }
+    }
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(new TrickleInputStream(json.replace('\'', '"'), 3));
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new LinkedHashMap<>();
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    object.put(name, readValue(reader));
+                }
+
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                List<Object> array = new ArrayList<>();
+                reader.beginArray();
+
+                while (reader.hasNext()) {
+                    array.add(readValue(reader));
+                }
+
+                reader.endArray();
+                return array;
+            case NUMBER:
+                return reader.nextLong();
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                return reader.nextString();
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static Object randomValue(Random random, StringBuilder json, int depth) {
+        int kind = random.nextInt(depth > 4 ? 4 : 6);
+        String space = random.nextInt(4) == 0 ? " \n\t" : "";
+
+        switch (kind) {
+            case 0:
+                long number = random.nextInt(3) == 0 ? random.nextLong() : random.nextInt(1000) - 500;
+                json.append(number);
+                return number;
+            case 1:
+                return randomString(random, json);
+            case 2:
+                boolean value = random.nextBoolean();
+                json.append(value);
+                return value;
+            case 3:
+                json.append("null");
+                return null;
+            case 4:
+                List<Object> array = new ArrayList<>();
+                json.append('[').append(space);
+
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    array.add(randomValue(random, json, depth + 1));
+                    json.append(i > 1 ? "," + space : space);
+                }
+
+                json.append(']');
+                return array;
+            default:
+                Map<String, Object> object = new LinkedHashMap<>();
+                json.append('{').append(space);
+
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    StringBuilder name = new StringBuilder();
+                    String decodedName = randomString(random, name);
+
+                    // Repeated names would collapse in the expected map
+                    if (object.containsKey(decodedName)) {
+                        decodedName = decodedName + object.size();
+                        name.setLength(name.length() - 1);
+                        name.append(object.size()).append('"');
+                    }
+
+                    json.append(name).append(space).append(':').append(space);
+                    object.put(decodedName, randomValue(random, json, depth + 1));
+                    json.append(i > 1 ? "," + space : space);
+                }
+
+                json.append('}');
+                return object;
+        }
+    }
+
+    private static String randomString(Random random, StringBuilder json) {
+        StringBuilder decoded = new StringBuilder();
+        json.append('"');
+
+        for (int i = random.nextInt(6); i > 0; i--) {
+            int part = random.nextInt(STRING_PARTS.length);
+            json.append(STRING_PARTS[part]);
+            decoded.append(DECODED_PARTS[part]);
+        }
+
+        json.append('"');
+        return decoded.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.youtubeify.util.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Stream that returns a few bytes per read, like a response arriving in small packets, and counts how many
+ * bytes were read from it.
+ */
+public class TrickleInputStream extends InputStream {
+
+    private final ByteArrayInputStream in;
+    private final Random random;
+    private final int maxRead;
+    private long bytesRead;
+
+    /**
+     * @param data Content of the stream
+     * @param maxRead Maximum number of bytes returned by a read
+     * @param seed Seed of the read sizes
+     */
+    public TrickleInputStream(byte[] data, int maxRead, long seed) {
+        this.in = new ByteArrayInputStream(data);
+        this.random = new Random(seed);
+        this.maxRead = maxRead;
+    }
+
+    /**
+     * @param text Content of the stream, encoded as UTF-8
+     * @param maxRead Maximum number of bytes returned by a read
+     */
+    public TrickleInputStream(String text, int maxRead) {
+        this(text.getBytes(StandardCharsets.UTF_8), maxRead, text.length());
+    }
+
+    @Override
+    public int read() {
+        int value = in.read();
+        bytesRead += value >= 0 ? 1 : 0;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        int read = in.read(buffer, offset, Math.min(length, 1 + random.nextInt(maxRead)));
+        bytesRead += Math.max(0, read);
+        return read;
+    }
+
+    /**
+     * @return Nothing is ever available without blocking, so readers can not read ahead
+     */
+    @Override
+    public int available() {
+        return 0;
+    }
+
+    /**
+     * @return Number of bytes read so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}